@@ -0,0 +1,143 @@
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency seen by a well-behaved client while another user floods the server, with and without
+ * admission control.
+ *
+ * The well-behaved client places a bid or reads an item every two milliseconds over RMI. The flooding
+ * user runs botThreads threads that call listItems on the whole catalogue back to back, and simply
+ * try again when refused. Each run reports the well-behaved client's latency and refusals, and how
+ * many of the flood's calls were served and refused:
+ *
+ * quiet          the well-behaved client alone
+ * flood          no limits
+ * rate limited   listItems limited to 5 calls/s per user (burst 10)
+ * concurrency    at most two calls running at once, nothing else
+ *
+ * Usage: java -cp CryptoAuction/bin AdmissionBenchmark [botThreads] [secondsPerRun] [catalogue]
+ * secondsPerRun is capped at 8 so every run finishes inside the token lifetime.
+ */
+public class AdmissionBenchmark {
+
+    private static final long PACE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Server server;
+    private final UtilityClass.Auction rmi;
+    private final KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+    private final int userID;
+    private final int botID;
+    private final int itemID;
+    private int price = 1;
+
+    AdmissionBenchmark(Server server, int catalogue) throws Exception {
+        this.server = server;
+        this.rmi = (UtilityClass.Auction) RemoteObject.toStub(server);
+        this.userID = rmi.register("patient@example.com", keys.getPublic());
+        this.botID = rmi.register("flood@example.com", keys.getPublic());
+        String token = login(userID);
+        UtilityClass.AuctionSaleItem[] items = new UtilityClass.AuctionSaleItem[catalogue];
+        for (int i = 0; i < catalogue; i++) {
+            items[i] = new UtilityClass.AuctionSaleItem("Catalogue item " + i, "Listed for AdmissionBenchmark", 0);
+        }
+        this.itemID = rmi.newAuctionBatch(userID, items, token)[0];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int botThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = Math.min(8, args.length > 1 ? Integer.parseInt(args[1]) : 5);
+        int catalogue = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        Server server = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        try {
+            AdmissionBenchmark benchmark = new AdmissionBenchmark(server, catalogue);
+            Map<ServerMetrics.Operation, AdmissionControl.Limit> listLimit = new EnumMap<>(ServerMetrics.Operation.class);
+            listLimit.put(ServerMetrics.Operation.LIST_ITEMS, new AdmissionControl.Limit(5, 10));
+            System.out.printf("%d flooding threads, %,d items, %ds per run, %d CPUs%n", botThreads, catalogue, seconds,
+                Runtime.getRuntime().availableProcessors());
+            System.out.printf("%-14s %9s %9s %9s %9s %9s %12s %12s%n", "", "p50 us", "p99 us", "p99.9 us", "max us",
+                "refused", "flood ok/s", "refused/s");
+            // Run twice so the second round reports warmed-up numbers
+            for (int round = 1; round <= 2; round++) {
+                System.out.println("Round " + round);
+                benchmark.run("quiet", 0, seconds, new AdmissionControl(Map.of(), 0, server.getMetrics()));
+                benchmark.run("flood", botThreads, seconds, new AdmissionControl(Map.of(), 0, server.getMetrics()));
+                benchmark.run("rate limited", botThreads, seconds, new AdmissionControl(listLimit, 0, server.getMetrics()));
+                benchmark.run("concurrency", botThreads, seconds, new AdmissionControl(Map.of(), 2, server.getMetrics()));
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    private String login(int user) throws Exception {
+        UtilityClass.ChallengeInfo challenge = rmi.challenge(user, "admission-challenge");
+        return rmi.authenticate(user, UtilityClass.SecurityUtils.sign(challenge.getServerChallenge(), keys.getPrivate())).getToken();
+    }
+
+    private void run(String name, int botThreads, int seconds, AdmissionControl admission) throws Exception {
+        server.setAdmissionControl(new AdmissionControl(Map.of(), 0, server.getMetrics()));
+        String token = login(userID);
+        String botToken = login(botID);
+        server.setAdmissionControl(admission);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        LongAdder served = new LongAdder();
+        LongAdder refused = new LongAdder();
+        List<Thread> bots = new ArrayList<>();
+        for (int t = 0; t < botThreads; t++) {
+            Thread bot = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        rmi.listItems(botID, botToken);
+                        served.increment();
+                    } catch (RemoteException e) {
+                        refused.increment();
+                    }
+                }
+            });
+            bot.setDaemon(true);
+            bots.add(bot);
+            bot.start();
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long turned = 0;
+        long next = System.nanoTime();
+        for (int call = 0; System.nanoTime() < deadline; call++) {
+            // Paced calls, timed from when each was due so a stalled call also counts against the ones queued behind it
+            next += PACE_NANOS;
+            long due = next;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            try {
+                if (call % 2 == 0) {
+                    rmi.bid(userID, itemID, ++price, token);
+                } else {
+                    rmi.getSpec(userID, itemID, token);
+                }
+            } catch (RemoteException e) {
+                turned++;
+            }
+            latency.record(System.nanoTime() - due);
+        }
+        for (Thread bot : bots) {
+            bot.join();
+        }
+        System.out.printf("%-14s %9.0f %9.0f %9.0f %9.0f %9d %,12.0f %,12.0f%n", name,
+            latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+            latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3, turned,
+            served.sum() / (double) seconds, refused.sum() / (double) seconds);
+    }
+}
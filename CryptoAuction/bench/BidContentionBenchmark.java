@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hammers a single hot item from a growing number of threads and compares the
+ * CAS-based AuctionItem.offerBid against the previous synchronized update path.
+ *
+ * Usage: java -cp CryptoAuction/bin BidContentionBenchmark [maxThreads] [secondsPerRun]
+ */
+public class BidContentionBenchmark {
+
+    /**
+     * The bid path as it was before the CAS engine: a racy price pre-check followed by a monitor.
+     */
+    static class SynchronizedItem {
+        private int highestBid;
+        private int highestBidderID;
+
+        // A plain field read, as AuctionItem.getHighestBid was; only the update took the monitor
+        int getHighestBid() { return highestBid; }
+
+        boolean bid(int bidderID, int price) {
+            if (price <= getHighestBid()) {
+                return false;
+            }
+            synchronized (this) {
+                if (price > highestBid) {
+                    highestBid = price;
+                    highestBidderID = bidderID;
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    interface BidTarget {
+        int highestBid();
+        boolean bid(int bidderID, int price);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        System.out.printf("%-8s %18s %18s %10s%n", "threads", "synchronized ops/s", "cas ops/s", "speedup");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SynchronizedItem legacy = new SynchronizedItem();
+            double legacyRate = run(threads, seconds, new BidTarget() {
+                public int highestBid() { return legacy.getHighestBid(); }
+                public boolean bid(int bidderID, int price) { return legacy.bid(bidderID, price); }
+            });
+
+            UtilityClass.AuctionItem item = new UtilityClass.AuctionItem(1, "Hot item", "Contended lot");
+            double casRate = run(threads, seconds, new BidTarget() {
+                public int highestBid() { return item.getHighestBid(); }
+                public boolean bid(int bidderID, int price) { return item.offerBid(bidderID, price); }
+            });
+
+            System.out.printf("%-8d %18.0f %18.0f %9.2fx%n", threads, legacyRate, casRate, casRate / legacyRate);
+        }
+    }
+
+    /**
+     * Each thread repeatedly outbids the current leader by one; returns bid attempts per second.
+     */
+    private static double run(int threads, int seconds, BidTarget target) throws InterruptedException {
+        LongAdder attempts = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + (seconds + 1) * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int bidderID = t + 1;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long local = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1024; i++) {
+                        target.bid(bidderID, target.highestBid() + 1);
+                    }
+                    local += 1024;
+                }
+                attempts.add(local);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return attempts.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
@@ -0,0 +1,146 @@
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of recording every accepted bid, and of reading the history back.
+ *
+ *  - bid path: accepted bids per second on the store with and without appending to the item's BidLog,
+ *    for one hot item and for bids spread over many items, at a growing number of threads;
+ *  - footprint: heap per recorded bid once a large number of bids are spread over many items;
+ *  - queries: mean latency of an index range, a time range and top-k bidders on one item with a long history.
+ *
+ * Usage: java -cp CryptoAuction/bin BidHistoryBenchmark [maxThreads] [secondsPerRun] [historyLength]
+ */
+public class BidHistoryBenchmark {
+
+    private static final int SPREAD_ITEMS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int historyLength = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+
+        System.out.printf("%-8s %-6s %16s %16s %9s%n", "threads", "items", "no history /s", "history /s", "overhead");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int items : new int[] {1, SPREAD_ITEMS}) {
+                double without = bidRate(threads, seconds, items, false);
+                double with = bidRate(threads, seconds, items, true);
+                System.out.printf("%-8d %-6d %,16.0f %,16.0f %8.1f%%%n", threads, items, without, with,
+                    100.0 * (without - with) / without);
+            }
+        }
+        footprint(historyLength);
+        queries(historyLength);
+    }
+
+    private static AuctionStore storeWithItems(int items) {
+        AuctionStore store = new AuctionStore();
+        for (int itemID = 1; itemID <= items; itemID++) {
+            store.create(itemID, 1, "Item " + itemID, "BidHistoryBenchmark", 0, 0, 0);
+        }
+        return store;
+    }
+
+    /**
+     * Each thread repeatedly outbids the current price of a random item, as Server.recordBid does.
+     */
+    private static double bidRate(int threads, int seconds, int items, boolean record) throws Exception {
+        AuctionStore store = storeWithItems(items);
+        LongAdder accepted = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] window = new long[2];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int bidderID = t + 1;
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while (System.nanoTime() < window[1]) {
+                    int itemID = items == 1 ? 1 : 1 + ThreadLocalRandom.current().nextInt(items);
+                    int price = store.highestBid(itemID) + 1;
+                    if (store.offerBidDisplacing(itemID, bidderID, price) >= 0) {
+                        if (record) {
+                            store.recordBid(itemID, bidderID, price, System.currentTimeMillis());
+                        }
+                        count++;
+                    }
+                }
+                accepted.add(count);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        ready.await();
+        window[0] = System.nanoTime();
+        window[1] = window[0] + TimeUnit.SECONDS.toNanos(seconds);
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return accepted.sum() / (double) seconds;
+    }
+
+    private static void footprint(int bids) {
+        long before = usedAfterGc();
+        AuctionStore store = storeWithItems(SPREAD_ITEMS);
+        long withItems = usedAfterGc();
+        for (int i = 0; i < bids; i++) {
+            int itemID = 1 + i % SPREAD_ITEMS;
+            int price = store.highestBid(itemID) + 1;
+            store.offerBidDisplacing(itemID, 1 + i % 1000, price);
+            store.recordBid(itemID, 1 + i % 1000, price, System.currentTimeMillis());
+        }
+        long withBids = usedAfterGc();
+        System.out.printf("footprint: %,d bids over %,d items add %,d MB (%.1f bytes/bid; items alone %,d MB)%n",
+            bids, SPREAD_ITEMS, (withBids - withItems) >> 20, (withBids - withItems) / (double) bids,
+            (withItems - before) >> 20);
+        Reference.reachabilityFence(store);
+    }
+
+    private static void queries(int historyLength) {
+        BidLog log = new BidLog();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < historyLength; i++) {
+            // A thousand bidders, ten bids per millisecond
+            log.append(1 + ThreadLocalRandom.current().nextInt(1000), i + 1, start + i / 10);
+        }
+        int iterations = 20_000;
+        long middle = start + historyLength / 20;
+        long[] sink = new long[1];
+        report("index range (100 from the middle)", iterations, () -> sink[0] += log.range(1, historyLength / 2, 100).size());
+        report("time range (first 100 from the middle)", iterations,
+            () -> sink[0] += log.between(1, middle, Long.MAX_VALUE, 100).size());
+        report("top 10 bidders", iterations, () -> sink[0] += log.topBidders(1, 10).size());
+        report("top 100 bidders", iterations, () -> sink[0] += log.topBidders(1, 100).size());
+        System.out.printf("(history of %,d bids; %d results)%n", historyLength, sink[0]);
+    }
+
+    private static void report(String name, int iterations, Runnable query) {
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+        System.out.printf("%-40s %8.2f us%n", name, (System.nanoTime() - start) / 1e3 / iterations);
+    }
+
+    private static long usedAfterGc() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
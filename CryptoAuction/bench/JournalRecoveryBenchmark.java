@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Measures journal append throughput, recovery time from a journal of millions of events,
+ * recovery time from a snapshot, and how many SYNC appends share each fsync under concurrency.
+ *
+ * Usage: java -cp CryptoAuction/bin JournalRecoveryBenchmark [events] [syncThreads]
+ */
+public class JournalRecoveryBenchmark {
+
+    private static final int USERS = 1_000;
+    private static final int ITEMS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int syncThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path dir = Files.createTempDirectory("auction-journal-bench");
+        try {
+            long start = System.nanoTime();
+            try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.ASYNC)) {
+                AuctionJournal.Events out = journal.appender();
+                for (int u = 1; u <= USERS; u++) {
+                    out.register(u, "user" + u + "@example.com", keyPair.getPublic());
+                }
+                for (int i = 1; i <= ITEMS; i++) {
+                    out.newAuction(i, 1 + i % USERS, "Item " + i, "Benchmark lot " + i, 100);
+                }
+                for (int e = USERS + ITEMS; e < events; e++) {
+                    out.bid(1 + e % ITEMS, 1 + e % USERS, e);
+                }
+            }
+            report("append (ASYNC)", events, start);
+
+            start = System.nanoTime();
+            Server server;
+            try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.ASYNC)) {
+                server = new Server(keyPair.getPrivate(), journal);
+                report("recover from journal", events, start);
+
+                start = System.nanoTime();
+                journal.snapshot(server::exportState);
+                report("write snapshot", USERS + 2 * ITEMS, start);
+            }
+            UnicastRemoteObject.unexportObject(server, true);
+
+            start = System.nanoTime();
+            try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.ASYNC)) {
+                server = new Server(keyPair.getPrivate(), journal);
+                report("recover from snapshot", USERS + 2 * ITEMS, start);
+            }
+            UnicastRemoteObject.unexportObject(server, true);
+
+            groupCommit(dir.resolve("sync"), syncThreads);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Many threads appending and waiting for durability; reports how many events each fsync covered.
+     */
+    private static void groupCommit(Path dir, int threads) throws Exception {
+        try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.SYNC)) {
+            LongAdder appended = new LongAdder();
+            long deadline = System.nanoTime() + 3_000_000_000L;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int bidderID = t + 1;
+                Thread worker = new Thread(() -> {
+                    AuctionJournal.Events out = journal.appender();
+                    try {
+                        for (int price = 1; System.nanoTime() < deadline; price++) {
+                            out.bid(1, bidderID, price);
+                            out.sync();
+                            appended.increment();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                workers.add(worker);
+            }
+            long start = System.nanoTime();
+            workers.forEach(Thread::start);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long forces = Math.max(1, journal.getForceCount());
+            report("SYNC append, " + threads + " threads", appended.sum(), start);
+            System.out.printf("  %d forces, %.1f events per fsync%n", forces, appended.sum() / (double) forces);
+        }
+    }
+
+    private static void report(String phase, long events, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%-28s %,12d events %9.3f s %,14.0f events/s%n", phase, events, seconds, events / seconds);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives many concurrent authenticated sessions against a Server with a configurable operation mix
+ * and reports throughput and latency percentiles per operation.
+ *
+ * In closed-loop mode every session issues its next request as soon as the previous one returns.
+ * In open-loop mode requests are scheduled at a fixed arrival rate and latency is measured from the
+ * intended start time, so a stalled server shows up as queueing delay instead of being hidden by
+ * fewer requests (coordinated omission).
+ *
+ * Each operation times only its own request. Token renewals, and the item a close needs when the session
+ * has none of its own, happen before the request is scheduled and are counted separately.
+ *
+ * Usage: java -cp CryptoAuction/bin LoadGenerator [key=value ...]
+ *   target=inprocess | rmi://localhost:1099/Auction   (default inprocess)
+ *   mode=closed | open                                 (default closed)
+ *   sessions=32        concurrent sessions (one thread each)
+ *   rate=5000          open-loop arrivals per second across all sessions
+ *   duration=30        measured seconds
+ *   warmup=5           unmeasured seconds before that
+ *   items=1000         catalogue size created before the run
+ *   mix=register:1,auth:1,list:5,create:3,bid:87,close:3
+ *   scheme=RSA | ECDSA_P256 | ED25519                  (default RSA)
+ *   refresh=true       renew tokens with refreshSession; false logs in again each time
+ */
+public class LoadGenerator {
+
+    enum Op { REGISTER, AUTH, LIST, CREATE, BID, CLOSE }
+
+    private final UtilityClass.Auction server;
+    private final Map<String, String> options;
+    private final UtilityClass.SignatureScheme scheme;
+    private final boolean refresh;
+    private final KeyPair sharedKeys;
+    private final Op[] mixTable;
+    private final int[] catalogue;
+    private final AtomicInteger price = new AtomicInteger(1000);
+    private final Map<Op, LatencyHistogram> histograms = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> errors = new EnumMap<>(Op.class);
+    private final LongAdder renewals = new LongAdder();
+    private final LongAdder closeItems = new LongAdder();
+    private volatile long measureFromNanos;
+    private volatile long stopAtNanos;
+
+    LoadGenerator(UtilityClass.Auction server, Map<String, String> options) throws Exception {
+        this.server = server;
+        this.options = options;
+        this.scheme = UtilityClass.SignatureScheme.valueOf(options.getOrDefault("scheme", "RSA"));
+        this.refresh = Boolean.parseBoolean(options.getOrDefault("refresh", "true"));
+        this.sharedKeys = scheme.generateKeyPair();
+        this.mixTable = parseMix(options.getOrDefault("mix", "register:1,auth:1,list:5,create:3,bid:87,close:3"));
+        for (Op op : Op.values()) {
+            histograms.put(op, new LatencyHistogram());
+            errors.put(op, new LongAdder());
+        }
+        Session seller = new Session();
+        catalogue = new int[intOption("items", 1000)];
+        for (int i = 0; i < catalogue.length; i++) {
+            seller.ensureToken();
+            catalogue[i] = server.newAuction(seller.userID,
+                new UtilityClass.AuctionSaleItem("Load item " + i, "Created by LoadGenerator", 10), seller.token);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "");
+        }
+        String target = options.getOrDefault("target", "inprocess");
+        Server local = null;
+        UtilityClass.Auction server;
+        if (target.equals("inprocess")) {
+            local = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+            server = local;
+        } else {
+            server = (UtilityClass.Auction) Naming.lookup(target);
+        }
+        try {
+            new LoadGenerator(server, options).run();
+        } finally {
+            if (local != null) {
+                UnicastRemoteObject.unexportObject(local, true);
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        int sessions = intOption("sessions", 32);
+        boolean openLoop = options.getOrDefault("mode", "closed").equals("open");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "5000"));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", 5));
+        long durationNanos = TimeUnit.SECONDS.toNanos(intOption("duration", 30));
+        long intervalNanos = (long) (1e9 / rate);
+
+        System.out.printf("%s-loop run: %d sessions%s, %ds warmup, %ds measured, %d items, %s keys%n",
+            openLoop ? "Open" : "Closed", sessions, openLoop ? ", " + rate + " req/s" : "",
+            TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+            catalogue.length, scheme);
+
+        long start = System.nanoTime();
+        measureFromNanos = start + warmupNanos;
+        stopAtNanos = measureFromNanos + durationNanos;
+        AtomicLong nextArrival = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            Thread worker = new Thread(() -> {
+                Session session;
+                try {
+                    session = new Session();
+                } catch (Exception e) {
+                    System.err.println("Session setup failed: " + e.getMessage());
+                    return;
+                }
+                while (true) {
+                    Op op = mixTable[ThreadLocalRandom.current().nextInt(mixTable.length)];
+                    session.prepare(op, System.nanoTime() >= measureFromNanos);
+                    long intended;
+                    if (openLoop) {
+                        intended = start + nextArrival.getAndIncrement() * intervalNanos;
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        intended = System.nanoTime();
+                    }
+                    if (intended >= stopAtNanos) {
+                        return;
+                    }
+                    boolean ok = session.execute(op);
+                    if (intended >= measureFromNanos) {
+                        histograms.get(op).record(System.nanoTime() - intended);
+                        if (!ok) errors.get(op).increment();
+                    }
+                }
+            }, "load-session-" + s);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(durationNanos / 1e9);
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%-9s %10s %8s %12s %10s %10s %10s %10s%n",
+            "op", "count", "errors", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        long total = 0;
+        for (Op op : Op.values()) {
+            LatencyHistogram h = histograms.get(op);
+            long count = h.getTotalCount();
+            total += count;
+            if (count == 0) continue;
+            System.out.printf("%-9s %10d %8d %12.0f %10.1f %10.1f %10.1f %10.1f%n", op.name().toLowerCase(), count,
+                errors.get(op).sum(), count / seconds, h.getValueAtPercentile(50) / 1e3,
+                h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3, h.getMax() / 1e3);
+        }
+        System.out.printf("%-9s %10d %8s %12.0f%n", "total", total, "", total / seconds);
+        System.out.printf("Untimed: %d token renewals, %d items created for closes%n", renewals.sum(), closeItems.sum());
+    }
+
+    /**
+     * One simulated client: a registered user with a token, refreshing it (or, once it can no longer be
+     * refreshed, re-authenticating) halfway through its lifetime.
+     */
+    private class Session {
+        private final ArrayDeque<Integer> ownItems = new ArrayDeque<>();
+        private int userID;
+        private String token;
+        private long tokenRenewAt;
+        private byte[] refreshKey;
+        private long refreshableUntil;
+        private long refreshCount;
+
+        Session() throws Exception {
+            register();
+            authenticate();
+        }
+
+        /**
+         * Renews the token if due and gives a close an item to close, outside the timed request.
+         */
+        void prepare(Op op, boolean measured) {
+            try {
+                if (ensureToken() && measured) {
+                    renewals.increment();
+                }
+                if (op == Op.CLOSE && ownItems.isEmpty()) {
+                    ownItems.add(server.newAuction(userID,
+                        new UtilityClass.AuctionSaleItem("Session item", "Created by LoadGenerator", 10), token));
+                    if (measured) {
+                        closeItems.increment();
+                    }
+                }
+            } catch (Exception e) {
+                // The request then fails and is counted as an error of its operation
+            }
+        }
+
+        boolean execute(Op op) {
+            try {
+                switch (op) {
+                    case REGISTER:
+                        server.register("load" + ThreadLocalRandom.current().nextLong() + "@example.com", sharedKeys.getPublic());
+                        return true;
+                    case AUTH:
+                        authenticate();
+                        return true;
+                    case LIST:
+                        server.listItemsPage(userID, 0, 100, token);
+                        return true;
+                    case CREATE:
+                        ownItems.add(server.newAuction(userID,
+                            new UtilityClass.AuctionSaleItem("Session item", "Created by LoadGenerator", 10), token));
+                        return true;
+                    case BID:
+                        int itemID = catalogue[ThreadLocalRandom.current().nextInt(catalogue.length)];
+                        return server.bid(userID, itemID, price.incrementAndGet(), token);
+                    case CLOSE:
+                        Integer own = ownItems.poll();
+                        if (own == null) {
+                            return false;
+                        }
+                        server.closeAuction(userID, own, token);
+                        return true;
+                    default:
+                        throw new IllegalStateException(op.name());
+                }
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /**
+         * Renews the token if it is halfway through its lifetime; true if it did.
+         */
+        boolean ensureToken() throws Exception {
+            long now = System.currentTimeMillis();
+            if (now < tokenRenewAt) {
+                return false;
+            }
+            if (refresh && now < refreshableUntil) {
+                try {
+                    UtilityClass.TokenInfo refreshed = server.refreshSession(userID, token, refreshCount + 1,
+                        UtilityClass.TokenManager.refreshProof(refreshKey, userID, token, refreshCount + 1));
+                    refreshCount = refreshed.getRefreshCount();
+                    renewHalfwayTo(refreshed.getExpiryTime());
+                    return true;
+                } catch (RemoteException e) {
+                    // fall back to a full handshake
+                }
+            }
+            authenticate();
+            return true;
+        }
+
+        private void register() throws RemoteException {
+            userID = server.register("load" + ThreadLocalRandom.current().nextLong() + "@example.com", sharedKeys.getPublic(), scheme);
+        }
+
+        private void authenticate() throws Exception {
+            UtilityClass.ChallengeInfo challenge = server.challenge(userID, "load-challenge");
+            byte[] signature = scheme.sign(challenge.getServerChallenge().getBytes(), sharedKeys.getPrivate());
+            UtilityClass.TokenInfo tokenInfo = server.authenticate(userID, signature);
+            token = tokenInfo.getToken();
+            refreshKey = tokenInfo.getRefreshKey();
+            refreshableUntil = tokenInfo.getRefreshableUntil();
+            refreshCount = 0;
+            renewHalfwayTo(tokenInfo.getExpiryTime());
+        }
+
+        private void renewHalfwayTo(long expiryTime) {
+            long now = System.currentTimeMillis();
+            tokenRenewAt = now + (expiryTime - now) / 2;
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Expands "op:weight,..." into a 100-entry lookup table so picking an operation is one random index.
+     */
+    private static Op[] parseMix(String mix) {
+        Map<Op, Integer> weights = new EnumMap<>(Op.class);
+        int total = 0;
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int weight = Integer.parseInt(kv[1]);
+            weights.put(Op.valueOf(kv[0].toUpperCase()), weight);
+            total += weight;
+        }
+        List<Op> table = new ArrayList<>();
+        for (Map.Entry<Op, Integer> entry : weights.entrySet()) {
+            long slots = Math.max(entry.getValue() > 0 ? 1 : 0, Math.round(entry.getValue() * 100.0 / total));
+            for (int i = 0; i < slots; i++) {
+                table.add(entry.getKey());
+            }
+        }
+        return table.toArray(new Op[0]);
+    }
+}
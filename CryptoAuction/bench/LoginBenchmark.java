@@ -0,0 +1,93 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the challenge/authenticate handshake against an in-process Server for each signature scheme
+ * and reports server-side logins per second per core, measured from thread CPU time spent inside
+ * challenge() and authenticate() (client-side signing is excluded). Then does the same for
+ * refreshSession, and works out the asymmetric operations a client needs per hour to stay logged in
+ * with and without refreshes, at the server's default expiry and refresh windows.
+ *
+ * Usage: java -cp CryptoAuction/bin LoginBenchmark [secondsPerScheme]
+ */
+public class LoginBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Server server = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        try {
+            System.out.printf("%-12s %12s %22s%n", "scheme", "logins", "server logins/s/core");
+            for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+                KeyPair client = scheme.generateKeyPair();
+                int userID = server.register(scheme + "@bench", client.getPublic(), scheme);
+                login(server, userID, client, scheme, TimeUnit.SECONDS.toNanos(1), threads); // warm-up
+                long[] result = login(server, userID, client, scheme, TimeUnit.SECONDS.toNanos(seconds), threads);
+                System.out.printf("%-12s %12d %22.0f%n", scheme, result[0], result[0] / (result[1] / 1e9));
+            }
+            KeyPair client = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+            int userID = server.register("refresh@bench", client.getPublic());
+            refresh(server, userID, client, TimeUnit.SECONDS.toNanos(1), threads); // warm-up
+            long[] result = refresh(server, userID, client, TimeUnit.SECONDS.toNanos(seconds), threads);
+            System.out.printf("%-12s %12d %22.0f%n", "refresh", result[0], result[0] / (result[1] / 1e9));
+
+            // Clients renew halfway through the token's life; a login is a server sign, a client sign and a server verify
+            long renewalsPerHour = TimeUnit.HOURS.toMillis(1) / (server.getTokenExpiryMillis() / 2);
+            long loginsPerHour = (TimeUnit.HOURS.toMillis(1) + server.getRefreshWindowMillis() - 1) / server.getRefreshWindowMillis();
+            System.out.printf("asymmetric operations per client-hour (expiry %d s, refresh window %d s): %,d logging in"
+                    + " again, %,d with refresh%n", server.getTokenExpiryMillis() / 1000, server.getRefreshWindowMillis() / 1000,
+                renewalsPerHour * 3, loginsPerHour * 3);
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    /**
+     * Logs in once and then refreshes the session until durationNanos is up, or the session can no longer
+     * be refreshed. Returns {refreshes, server CPU nanoseconds}; the client's HMAC is excluded.
+     */
+    private static long[] refresh(Server server, int userID, KeyPair client, long durationNanos,
+                                  ThreadMXBean threads) throws Exception {
+        UtilityClass.ChallengeInfo challenge = server.challenge(userID, "client-challenge");
+        UtilityClass.TokenInfo tokenInfo = server.authenticate(userID,
+            UtilityClass.SecurityUtils.sign(challenge.getServerChallenge(), client.getPrivate()));
+        long refreshes = 0;
+        long serverCpu = 0;
+        long deadline = System.nanoTime() + durationNanos;
+        while (System.nanoTime() < deadline) {
+            byte[] proof = UtilityClass.TokenManager.refreshProof(tokenInfo.getRefreshKey(), userID,
+                tokenInfo.getToken(), refreshes + 1);
+            long cpu = threads.getCurrentThreadCpuTime();
+            server.refreshSession(userID, tokenInfo.getToken(), refreshes + 1, proof);
+            serverCpu += threads.getCurrentThreadCpuTime() - cpu;
+            refreshes++;
+        }
+        return new long[] { refreshes, serverCpu };
+    }
+
+    /**
+     * Returns {logins, server CPU nanoseconds}.
+     */
+    private static long[] login(Server server, int userID, KeyPair client, UtilityClass.SignatureScheme scheme,
+                                long durationNanos, ThreadMXBean threads) throws Exception {
+        long logins = 0;
+        long serverCpu = 0;
+        long deadline = System.nanoTime() + durationNanos;
+        while (System.nanoTime() < deadline) {
+            long cpu = threads.getCurrentThreadCpuTime();
+            UtilityClass.ChallengeInfo challenge = server.challenge(userID, "client-challenge");
+            serverCpu += threads.getCurrentThreadCpuTime() - cpu;
+
+            byte[] signature = scheme.sign(challenge.getServerChallenge().getBytes(), client.getPrivate());
+
+            cpu = threads.getCurrentThreadCpuTime();
+            server.authenticate(userID, signature);
+            serverCpu += threads.getCurrentThreadCpuTime() - cpu;
+            logins++;
+        }
+        return new long[] { logins, serverCpu };
+    }
+}
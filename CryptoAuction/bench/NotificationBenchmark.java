@@ -0,0 +1,104 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what push notifications cost the bid path. Bidder threads bid on a set of items that every
+ * subscriber watches; one of the subscribers is slow, sleeping on every batch. Runs once without
+ * subscribers as a baseline, then with them, and reports bid throughput next to the dispatcher's
+ * delivered, coalesced and dropped counts.
+ *
+ * Usage: java -cp CryptoAuction/bin NotificationBenchmark [subscribers] [bidderThreads] [seconds] [slowMillis]
+ */
+public class NotificationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int subscriberCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = Math.min(8, args.length > 2 ? Integer.parseInt(args[2]) : 5);
+        long slowMillis = args.length > 3 ? Long.parseLong(args[3]) : 50;
+
+        KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server server = new Server(keys.getPrivate());
+        try {
+            System.out.println("Baseline: no subscribers");
+            run(server, keys, 0, threads, seconds, slowMillis);
+            System.out.println(subscriberCount + " subscribers watching every item, one sleeping " + slowMillis + " ms per batch");
+            run(server, keys, subscriberCount, threads, seconds, slowMillis);
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    private static void run(Server server, KeyPair keys, int subscriberCount, int threads, int seconds, long slowMillis) throws Exception {
+        String[] tokens = new String[threads];
+        int[] bidders = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            bidders[t] = server.register("bidder" + ThreadLocalRandom.current().nextLong() + "@example.com", keys.getPublic());
+            tokens[t] = login(server, keys, bidders[t]);
+        }
+        int[] items = new int[64];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = server.newAuction(bidders[0], new UtilityClass.AuctionSaleItem("Watched item " + i, "Notification target", 0), tokens[0]);
+        }
+        for (int s = 0; s < subscriberCount; s++) {
+            int userID = server.register("watcher" + ThreadLocalRandom.current().nextLong() + "@example.com", keys.getPublic());
+            String token = login(server, keys, userID);
+            boolean slow = s == 0;
+            server.subscribe(userID, events -> {
+                if (slow) {
+                    try {
+                        Thread.sleep(slowMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, token);
+            for (int itemID : items) {
+                server.watchItem(userID, itemID, token);
+            }
+        }
+
+        ServerMetrics metrics = server.getMetrics();
+        long deliveredBefore = metrics.getNotificationsDelivered();
+        long coalescedBefore = metrics.getNotificationsCoalesced();
+        long droppedBefore = metrics.getNotificationsDropped();
+        AtomicInteger price = new AtomicInteger(1_000_000 * (subscriberCount + 1));
+        LongAdder bids = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    try {
+                        server.placeBid(bidders[thread], items[random.nextInt(items.length)], price.incrementAndGet());
+                        bids.increment();
+                    } catch (Exception e) {
+                        // lost the race to a higher concurrent bid
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("  %,12.0f bids/s %,12d delivered %,12d coalesced %,8d dropped%n",
+            bids.sum() / (double) seconds, metrics.getNotificationsDelivered() - deliveredBefore,
+            metrics.getNotificationsCoalesced() - coalescedBefore, metrics.getNotificationsDropped() - droppedBefore);
+    }
+
+    private static String login(Server server, KeyPair keys, int userID) throws Exception {
+        UtilityClass.ChallengeInfo challenge = server.challenge(userID, "notification-challenge");
+        byte[] signature = UtilityClass.SecurityUtils.sign(challenge.getServerChallenge(), keys.getPrivate());
+        return server.authenticate(userID, signature).getToken();
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.File;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replication lag, read scaling and failover time across separate server JVMs on this machine.
+ *
+ * Starts a primary and the given number of backups as child processes, then measures:
+ *  - visibility lag: time from a bid returning on the primary until each backup serves the new price;
+ *  - lag under load: backups' reported lag and sequence gap, sampled while a writer bids flat out;
+ *  - read throughput: getSpec calls per second spread over the primary plus 0..backups backups;
+ *  - failover: time from killing the primary until a write succeeds on the promoted backup.
+ *
+ * Child output goes to replication-bench-*.log in the temp directory.
+ *
+ * Usage: java -cp CryptoAuction/bin ReplicationBenchmark [backups] [probes] [loadSeconds] [readSeconds] [readers]
+ */
+public class ReplicationBenchmark {
+
+    private static final int REGISTRY_BASE = 21099;
+    private static final int REPLICATION_BASE = 21199;
+    private static final int ITEMS = 1000;
+
+    private final KeyPair clientKeys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+    private final List<Process> processes = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    private final List<UtilityClass.Auction> servers = new ArrayList<>();
+    private UtilityClass.Auction primary;
+    private int userID;
+    private String token;
+    private long tokenAt;
+    private int[] items;
+
+    ReplicationBenchmark() throws Exception {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int backups = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int probes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int loadSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int readSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int readers = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        ReplicationBenchmark benchmark = new ReplicationBenchmark();
+        try {
+            benchmark.start(backups);
+            System.out.printf("primary + %d backups, %d CPUs%n", backups, Runtime.getRuntime().availableProcessors());
+            benchmark.visibilityLag(probes);
+            benchmark.lagUnderLoad(loadSeconds);
+            for (int used = 0; used <= backups; used++) {
+                benchmark.readThroughput(used, readSeconds, readers);
+            }
+            if (backups > 0) {
+                benchmark.failover();
+            }
+        } finally {
+            benchmark.stop();
+        }
+    }
+
+    private void start(int backups) throws Exception {
+        StringBuilder peers = new StringBuilder();
+        for (int i = 0; i <= backups; i++) {
+            peers.append(i > 0 ? "," : "").append("localhost:").append(REPLICATION_BASE + i);
+        }
+        for (int i = 0; i <= backups; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-Dauction.registry.port=" + (REGISTRY_BASE + i));
+            command.add("-Dauction.replication.port=" + (REPLICATION_BASE + i));
+            if (i > 0) {
+                command.add("-Dauction.replication.primary=localhost:" + REPLICATION_BASE);
+                command.add("-Dauction.replication.peers=" + peers);
+                command.add("-Dauction.replication.failover.millis=1000");
+            }
+            command.add("Server");
+            File log = new File(System.getProperty("java.io.tmpdir"), "replication-bench-" + i + ".log");
+            processes.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+            String url = "rmi://localhost:" + (REGISTRY_BASE + i) + "/Auction";
+            urls.add(url);
+            servers.add(lookup(url));
+        }
+        primary = servers.get(0);
+
+        userID = primary.register("replication-bench@example.com", clientKeys.getPublic());
+        UtilityClass.AuctionSaleItem[] sale = new UtilityClass.AuctionSaleItem[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            sale[i] = new UtilityClass.AuctionSaleItem("Replicated item " + i, "ReplicationBenchmark", 0);
+        }
+        items = primary.newAuctionBatch(userID, sale, token());
+        // Wait until every backup has the catalogue and the session
+        for (UtilityClass.Auction backup : servers.subList(1, servers.size())) {
+            awaitPrice(backup, items[ITEMS - 1], 0, TimeUnit.SECONDS.toNanos(30));
+        }
+    }
+
+    private static UtilityClass.Auction lookup(String url) throws Exception {
+        long giveUp = System.currentTimeMillis() + 30_000;
+        while (true) {
+            try {
+                return (UtilityClass.Auction) Naming.lookup(url);
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > giveUp) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Tokens live ten seconds; re-authenticate on the primary well before that.
+     */
+    private synchronized String token() throws Exception {
+        if (token == null || System.currentTimeMillis() - tokenAt > 5000) {
+            UtilityClass.ChallengeInfo challenge = primary.challenge(userID, "bench");
+            byte[] signature = UtilityClass.SecurityUtils.sign(challenge.getServerChallenge(), clientKeys.getPrivate());
+            token = primary.authenticate(userID, signature).getToken();
+            tokenAt = System.currentTimeMillis();
+        }
+        return token;
+    }
+
+    /**
+     * Polls server until itemID shows price; returns the nanoseconds that took, or -1 on timeout.
+     */
+    private long awaitPrice(UtilityClass.Auction server, int itemID, int price, long timeoutNanos) throws Exception {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < timeoutNanos) {
+            try {
+                if (server.getSpec(userID, itemID, token()).getHighestBid() >= price) {
+                    return System.nanoTime() - start;
+                }
+            } catch (RemoteException e) {
+                // not replicated yet, or the session is not there yet
+            }
+        }
+        return -1;
+    }
+
+    private void visibilityLag(int probes) throws Exception {
+        for (int b = 1; b < servers.size(); b++) {
+            LatencyHistogram lag = new LatencyHistogram();
+            int timeouts = 0;
+            for (int i = 0; i < probes; i++) {
+                int itemID = items[ThreadLocalRandom.current().nextInt(ITEMS)];
+                int price = primary.getSpec(userID, itemID, token()).getHighestBid() + 1;
+                primary.bid(userID, itemID, price, token());
+                long nanos = awaitPrice(servers.get(b), itemID, price, TimeUnit.SECONDS.toNanos(5));
+                if (nanos < 0) {
+                    timeouts++;
+                } else {
+                    lag.record(nanos);
+                }
+            }
+            System.out.printf("visibility lag, backup %d: p50 %.2f ms  p99 %.2f ms  max %.2f ms  (%d probes, %d timeouts)%n",
+                b, lag.getValueAtPercentile(50) / 1e6, lag.getValueAtPercentile(99) / 1e6, lag.getMax() / 1e6,
+                probes, timeouts);
+        }
+    }
+
+    private void lagUnderLoad(int seconds) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder bids = new LongAdder();
+        Thread writer = new Thread(() -> {
+            int[] batch = new int[100];
+            int[] prices = new int[100];
+            int price = 1_000_000;
+            try {
+                while (running.get()) {
+                    price++;
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = items[ThreadLocalRandom.current().nextInt(ITEMS)];
+                        prices[i] = price;
+                    }
+                    primary.bidBatch(userID, batch, prices, token());
+                    bids.add(batch.length);
+                }
+            } catch (Exception e) {
+                System.err.println("Writer failed: " + e);
+            }
+        }, "writer");
+        writer.start();
+
+        LatencyHistogram reportedLag = new LatencyHistogram();
+        long maxGap = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            long published = primary.getReplicationStatus().getSequence();
+            for (UtilityClass.Auction backup : servers.subList(1, servers.size())) {
+                UtilityClass.ReplicationStatus status = backup.getReplicationStatus();
+                reportedLag.record(status.getLagMillis());
+                maxGap = Math.max(maxGap, published - status.getSequence());
+            }
+            Thread.sleep(50);
+        }
+        running.set(false);
+        writer.join();
+        System.out.printf("under load (%,.0f bids/s on the primary): sampled backup lag p50 %d ms  p99 %d ms  max %d ms,"
+                + " max events behind %,d%n", bids.sum() / (double) seconds, reportedLag.getValueAtPercentile(50),
+            reportedLag.getValueAtPercentile(99), reportedLag.getMax(), maxGap);
+    }
+
+    private void readThroughput(int backups, int seconds, int readers) throws Exception {
+        UtilityClass.Auction group = FailoverAuction.connect(urls.subList(0, backups + 1), true, 5000);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        LongAdder reads = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        group.getSpec(userID, items[ThreadLocalRandom.current().nextInt(ITEMS)], token());
+                        if (measuring.get()) {
+                            reads.increment();
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("Reader failed: " + e);
+                }
+            }, "reader-" + r);
+            reader.start();
+            threads.add(reader);
+        }
+        Thread.sleep(1000);
+        measuring.set(true);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        measuring.set(false);
+        running.set(false);
+        for (Thread reader : threads) {
+            reader.join();
+        }
+        System.out.printf("reads over primary + %d backups: %,.0f getSpec/s with %d readers%n",
+            backups, reads.sum() / (double) seconds, readers);
+    }
+
+    private void failover() throws Exception {
+        UtilityClass.Auction group = FailoverAuction.connect(urls, false, 15_000);
+        int itemID = items[0];
+        int price = group.getSpec(userID, itemID, token()).getHighestBid() + 1;
+        String session = token();
+        long start = System.nanoTime();
+        processes.get(0).destroyForcibly().waitFor();
+        // The session was replicated, so the same token works on the new primary
+        group.bid(userID, itemID, price, session);
+        long nanos = System.nanoTime() - start;
+        UtilityClass.ReplicationStatus status = group.getReplicationStatus();
+        System.out.printf("failover: primary killed, bid accepted by the new primary (epoch %d) after %,d ms%n",
+            status.getEpoch(), TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private void stop() {
+        for (Process process : processes) {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of the search index over a large live catalogue.
+ *
+ * Builds a catalogue of generated listings ("Refurbished Acme laptop 16GB ..."), bids on a share of them
+ * so prices spread out, then runs each query shape repeatedly for one page and reports mean and p99 latency.
+ *
+ * Usage: java -cp CryptoAuction/bin SearchBenchmark [items] [iterations] [pageSize]
+ */
+public class SearchBenchmark {
+
+    private static final String[] CONDITIONS = {"New", "Used", "Refurbished", "Vintage", "Boxed", "Mint"};
+    private static final String[] BRANDS = {"Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark", "Wayne",
+        "Tyrell", "Cyberdyne", "Aperture", "Soylent", "Oscorp", "Wonka", "Gringotts", "Monarch", "Vandelay"};
+    private static final String[] PRODUCTS = {"laptop", "phone", "camera", "watch", "bicycle", "guitar", "lamp",
+        "desk", "chair", "monitor", "keyboard", "headphones", "speaker", "tablet", "console", "drone", "printer",
+        "projector", "router", "lens", "tripod", "amplifier", "turntable", "microwave", "kettle", "blender"};
+    private static final String[] DETAILS = {"16GB", "32GB", "black", "silver", "white", "gaming", "wireless",
+        "portable", "compact", "professional", "limited", "edition", "warranty", "original", "spare", "charger",
+        "leather", "steel", "carbon", "bundle"};
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server server = new Server(keys.getPrivate());
+        try {
+            int sellerID = server.register("seller@example.com", keys.getPublic());
+            int bidderID = server.register("bidder@example.com", keys.getPublic());
+            Random random = new Random(42);
+            long start = System.nanoTime();
+            int batch = 10_000;
+            for (int created = 0; created < items; created += batch) {
+                UtilityClass.AuctionSaleItem[] sale = new UtilityClass.AuctionSaleItem[Math.min(batch, items - created)];
+                for (int i = 0; i < sale.length; i++) {
+                    String name = pick(random, CONDITIONS) + " " + pick(random, BRANDS) + " " + pick(random, PRODUCTS);
+                    String description = pick(random, DETAILS) + " " + pick(random, DETAILS) + " " + pick(random, DETAILS)
+                        + " lot " + (created + i);
+                    sale[i] = new UtilityClass.AuctionSaleItem(name, description, 0);
+                }
+                int[] itemIDs = server.openAuctions(sellerID, sale);
+                for (int itemID : itemIDs) {
+                    // Two thirds of the catalogue has a bid somewhere between 1 and 5000
+                    if (random.nextInt(3) != 0) {
+                        server.placeBid(bidderID, itemID, 1 + random.nextInt(5000));
+                    }
+                }
+            }
+            System.out.printf("%,d items indexed and bid on in %,d ms, page size %d%n",
+                items, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), pageSize);
+
+            System.out.printf("%-34s %10s %10s %8s%n", "query", "mean us", "p99 us", "hits");
+            run(server, "word: laptop", new UtilityClass.SearchQuery("laptop"), iterations, pageSize);
+            run(server, "words: gaming laptop acme", new UtilityClass.SearchQuery("gaming laptop acme"), iterations, pageSize);
+            run(server, "rare word: lot 123456", new UtilityClass.SearchQuery("lot 123456"), iterations, pageSize);
+            run(server, "prefix: head", new UtilityClass.SearchQuery(null, "head", 0, Integer.MAX_VALUE), iterations, pageSize);
+            run(server, "prefix: c", new UtilityClass.SearchQuery(null, "c", 0, Integer.MAX_VALUE), iterations, pageSize);
+            run(server, "laptop under 1500", new UtilityClass.SearchQuery("laptop", null, 1, 1500), iterations, pageSize);
+            run(server, "price 2000-2010", new UtilityClass.SearchQuery(null, null, 2000, 2010), iterations, pageSize);
+            run(server, "price 1-5000", new UtilityClass.SearchQuery(null, null, 1, 5000), iterations, pageSize);
+            run(server, "vintage wayne drone 4000-5000", new UtilityClass.SearchQuery("vintage wayne drone", null, 4000, 5000),
+                iterations, pageSize);
+            run(server, "no match: laptop kettle", new UtilityClass.SearchQuery("laptop kettle"), iterations, pageSize);
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    private static void run(Server server, String label, UtilityClass.SearchQuery query, int iterations, int pageSize)
+            throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            server.searchPage(query, 0, pageSize);
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            hits = server.searchPage(query, 0, pageSize).getItems().length;
+            latency.record(System.nanoTime() - start);
+        }
+        System.out.printf("%-34s %10.1f %10.1f %8d%n", label, latency.getMean() / 1000,
+            latency.getValueAtPercentile(99) / 1000.0, hits);
+    }
+
+    private static String pick(Random random, String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+}
@@ -0,0 +1,73 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares bid throughput with item mutations applied inline on the calling threads against the
+ * sharded single-writer engine, for a growing number of bidding threads.
+ *
+ * Usage: java -cp CryptoAuction/bin ShardedEngineBenchmark [shards] [maxThreads] [secondsPerRun] [items]
+ */
+public class ShardedEngineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int shards = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = Math.min(8, args.length > 2 ? Integer.parseInt(args[2]) : 3);
+        int items = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        System.out.printf("%d items, %d shards, %d cores%n", items, shards, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %16s %16s%n", "threads", "inline bids/s", "sharded bids/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double inline = run(0, threads, seconds, items);
+            double sharded = run(shards, threads, seconds, items);
+            System.out.printf("%-8d %,16.0f %,16.0f%n", threads, inline, sharded);
+        }
+    }
+
+    private static double run(int shards, int threads, int seconds, int itemCount) throws Exception {
+        KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server server = new Server(keys.getPrivate(), null, shards);
+        try {
+            int sellerID = server.register("seller@example.com", keys.getPublic());
+            UtilityClass.AuctionSaleItem[] sale = new UtilityClass.AuctionSaleItem[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                sale[i] = new UtilityClass.AuctionSaleItem("Item " + i, "Sharding benchmark", 0);
+            }
+            int[] itemIDs = server.openAuctions(sellerID, sale);
+            int[] prices = new int[itemCount];
+
+            LongAdder bids = new LongAdder();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int bidderID = server.register("bidder" + t + "@example.com", keys.getPublic());
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        int index = random.nextInt(itemCount);
+                        try {
+                            // Racy price guess: losing bids are rejected, which is part of the workload
+                            server.placeBid(bidderID, itemIDs[index], ++prices[index] + random.nextInt(4));
+                        } catch (Exception e) {
+                            // outbid by a concurrent bidder
+                        }
+                        bids.increment();
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return bids.sum() / (double) seconds;
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+}
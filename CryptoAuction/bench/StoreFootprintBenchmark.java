@@ -0,0 +1,263 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Heap footprint and GC pauses of the item and user store against the boxed maps it replaced.
+ *
+ * Each run is a fresh JVM (same -Xmx for both layouts) that builds the given number of live items, one
+ * user per ten items, and bids on two thirds of the items; it then reports the heap left after a full
+ * collection and how long that collection took. A steady phase follows for the given seconds: single
+ * item reads, bids, and churn that closes the oldest item and opens a new one, with every GC pause
+ * recorded. "maps" is the previous layout in Server: a ConcurrentHashMap of AuctionItem objects, a map
+ * of owners and a ConcurrentSkipListSet of IDs, plus a map of users.
+ *
+ * Usage: java -cp CryptoAuction/bin StoreFootprintBenchmark [items,...] [seconds] [heap]
+ */
+public class StoreFootprintBenchmark {
+
+    private static final String[] BRANDS = {"Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark", "Wayne",
+        "Tyrell", "Cyberdyne", "Aperture", "Soylent", "Oscorp", "Wonka", "Monarch", "Vandelay"};
+    private static final String[] PRODUCTS = {"laptop", "phone", "camera", "watch", "bicycle", "guitar", "lamp",
+        "desk", "chair", "monitor", "keyboard", "headphones", "speaker", "tablet", "console", "drone"};
+    private static final String[] DETAILS = {"16GB", "black", "silver", "wireless", "portable", "boxed",
+        "original charger", "light scratches", "barely used", "with warranty", "collection only", "spare parts"};
+
+    static volatile long consumed;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        String sizes = args.length > 0 ? args[0] : "1000000,10000000";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String heap = args.length > 2 ? args[2] : "4500m";
+        System.out.printf("-Xmx%s, %s, %d CPUs%n", heap, gcNames(), Runtime.getRuntime().availableProcessors());
+        for (String size : sizes.split(",")) {
+            for (String layout : new String[] {"maps", "store"}) {
+                fork(heap, layout, size, seconds);
+            }
+        }
+    }
+
+    private static void fork(String heap, String layout, String items, int seconds) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + heap);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StoreFootprintBenchmark.class.getName());
+        command.add("run");
+        command.add(layout);
+        command.add(items);
+        command.add(Integer.toString(seconds));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = out.readLine()) != null; ) {
+                System.out.println(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            System.out.printf("%-5s %,d items: failed (exit %d)%n", layout, Long.parseLong(items), process.exitValue());
+        }
+    }
+
+    private static void run(String layout, int items, int seconds) throws Exception {
+        Layout store = layout.equals("maps") ? new Maps() : new Store();
+        PublicKey key = UtilityClass.SignatureScheme.RSA.generateKeyPair().getPublic();
+        LatencyHistogram pauses = new LatencyHistogram();
+        listenForPauses(pauses);
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        int users = Math.max(1, items / 10);
+        for (int userID = 1; userID <= users; userID++) {
+            store.putUser(new UtilityClass.User(userID, "user" + userID + "@example.com", key));
+        }
+        for (int itemID = 1; itemID <= items; itemID++) {
+            store.create(itemID, 1 + random.nextInt(users), name(random), description(random), random.nextInt(100));
+            if (itemID % 3 != 0) {
+                store.bid(itemID, 1 + random.nextInt(users), 1 + random.nextInt(10_000));
+            }
+        }
+        long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long buildPauses = pauses.getTotalCount() == 0 ? 0 : Math.round(pauses.getMean() * pauses.getTotalCount());
+        long buildMaxPause = pauses.getMax();
+
+        System.gc();
+        long gcStart = System.nanoTime();
+        System.gc();
+        long fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - gcStart);
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%-5s %,11d items: build %,6d ms (GC pauses %,d ms, max %,d ms), heap after GC %,6d MB"
+                + " (%d bytes/item), full GC %,d ms%n",
+            layout, items, buildMillis, buildPauses, buildMaxPause, heapUsed >> 20, heapUsed / items, fullGcMillis);
+
+        pauses.reset();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long operations = 0;
+        int oldest = 1;
+        int next = items + 1;
+        long sink = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) {
+                int itemID = oldest + random.nextInt(next - oldest);
+                int op = random.nextInt(100);
+                if (op < 80) {
+                    sink += store.read(itemID);
+                } else if (op < 95) {
+                    store.bid(itemID, 1 + random.nextInt(users), 1 + random.nextInt(1_000_000));
+                } else {
+                    store.remove(oldest++);
+                    store.create(next++, 1 + random.nextInt(users), name(random), description(random), 0);
+                }
+            }
+            operations += 1000;
+        }
+        System.out.printf("%-5s %,11d items: steady %,.0f ops/s, %d GCs taking %,d ms: pause p50 %d ms  p99 %d ms"
+                + "  max %,d ms%n",
+            layout, items, operations / (double) seconds, gcCount() - gcCount, gcTime() - gcTime,
+            pauses.getValueAtPercentile(50), pauses.getValueAtPercentile(99), pauses.getMax());
+        consumed = sink;
+    }
+
+    private static String name(Random random) {
+        return BRANDS[random.nextInt(BRANDS.length)] + " " + PRODUCTS[random.nextInt(PRODUCTS.length)] + " "
+            + random.nextInt(1000);
+    }
+
+    private static String description(Random random) {
+        return DETAILS[random.nextInt(DETAILS.length)] + ", " + DETAILS[random.nextInt(DETAILS.length)]
+            + ", listed by seller " + random.nextInt(100_000);
+    }
+
+    /**
+     * Records each collection's pause in milliseconds.
+     */
+    private static void listenForPauses(LatencyHistogram pauses) {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    synchronized (pauses) {
+                        pauses.record(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += collector.getCollectionTime();
+        }
+        return time;
+    }
+
+    private static String gcNames() {
+        List<String> names = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            names.add(collector.getName());
+        }
+        return String.join("/", names);
+    }
+
+    private interface Layout {
+        void putUser(UtilityClass.User user);
+
+        void create(int itemID, int ownerID, String name, String description, int reservePrice);
+
+        void bid(int itemID, int bidderID, int price);
+
+        int read(int itemID);
+
+        void remove(int itemID);
+    }
+
+    private static final class Maps implements Layout {
+        private final Map<Integer, UtilityClass.User> users = new ConcurrentHashMap<>();
+        private final Map<Integer, UtilityClass.AuctionItem> auctionItems = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> auctionOwners = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<Integer> itemOrder = new ConcurrentSkipListSet<>();
+
+        public void putUser(UtilityClass.User user) {
+            users.put(user.getUserID(), user);
+        }
+
+        public void create(int itemID, int ownerID, String name, String description, int reservePrice) {
+            auctionItems.put(itemID, new UtilityClass.AuctionItem(itemID, name, description, reservePrice));
+            auctionOwners.put(itemID, ownerID);
+            itemOrder.add(itemID);
+        }
+
+        public void bid(int itemID, int bidderID, int price) {
+            UtilityClass.AuctionItem item = auctionItems.get(itemID);
+            if (item != null) {
+                item.offerBid(bidderID, price);
+            }
+        }
+
+        public int read(int itemID) {
+            UtilityClass.AuctionItem item = auctionItems.get(itemID);
+            return item == null ? 0 : item.getHighestBid() + item.getName().length();
+        }
+
+        public void remove(int itemID) {
+            auctionItems.remove(itemID);
+            auctionOwners.remove(itemID);
+            itemOrder.remove(itemID);
+        }
+    }
+
+    private static final class Store implements Layout {
+        private final AuctionStore store = new AuctionStore();
+
+        public void putUser(UtilityClass.User user) {
+            store.putUser(user);
+        }
+
+        public void create(int itemID, int ownerID, String name, String description, int reservePrice) {
+            store.create(itemID, ownerID, name, description, reservePrice, 0, 0);
+        }
+
+        public void bid(int itemID, int bidderID, int price) {
+            store.offerBidDisplacing(itemID, bidderID, price);
+        }
+
+        public int read(int itemID) {
+            // The same copy Server.getSpec hands out
+            UtilityClass.AuctionItem item = store.get(itemID);
+            return item == null ? 0 : item.getHighestBid() + item.getName().length();
+        }
+
+        public void remove(int itemID) {
+            store.remove(itemID);
+        }
+    }
+}
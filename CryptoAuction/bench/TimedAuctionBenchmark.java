@@ -0,0 +1,59 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how late timed auctions close when many deadlines fall in the same few seconds.
+ *
+ * Opens the given number of timed items with end times spread evenly over a window starting a little
+ * after scheduling finishes, waits for all of them to settle and reports the close-event lag (time from
+ * an item's end time to its settlement) from the server's own histogram.
+ *
+ * Usage: java -cp CryptoAuction/bin TimedAuctionBenchmark [items] [windowSeconds] [shards]
+ */
+public class TimedAuctionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int windowSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server server = new Server(keys.getPrivate(), null, shards);
+        try {
+            int sellerID = server.register("seller@example.com", keys.getPublic());
+            // Leave enough time to create every item before the first deadline
+            long firstDeadline = System.currentTimeMillis() + 2000 + items / 500;
+            long window = TimeUnit.SECONDS.toMillis(windowSeconds);
+            UtilityClass.AuctionSaleItem[] sale = new UtilityClass.AuctionSaleItem[items];
+            for (int i = 0; i < items; i++) {
+                sale[i] = new UtilityClass.AuctionSaleItem("Item " + i, "Deadline benchmark", 0,
+                    firstDeadline + window * i / items, 0);
+            }
+
+            long start = System.nanoTime();
+            server.openAuctions(sellerID, sale);
+            long scheduleNanos = System.nanoTime() - start;
+            if (System.currentTimeMillis() >= firstDeadline) {
+                System.out.println("Warning: scheduling overran the first deadline; lag includes the backlog");
+            }
+
+            LatencyHistogram lag = server.getMetrics().autoCloseLag();
+            long giveUp = firstDeadline + window + TimeUnit.SECONDS.toMillis(30);
+            while (lag.getTotalCount() < items && System.currentTimeMillis() < giveUp) {
+                Thread.sleep(100);
+            }
+            long closed = lag.getTotalCount();
+
+            System.out.printf("%,d timed items over %d s, %d shards%n", items, windowSeconds, shards);
+            System.out.printf("opened and scheduled in %,d ms (%,.0f items/s)%n",
+                TimeUnit.NANOSECONDS.toMillis(scheduleNanos), items / (scheduleNanos / 1e9));
+            System.out.printf("closed %,d (%,.0f closes/s at the deadline rate)%n", closed, closed / (double) windowSeconds);
+            System.out.printf("close lag ms: p50 %d  p99 %d  p99.9 %d  max %d  mean %.1f%n",
+                lag.getValueAtPercentile(50), lag.getValueAtPercentile(99), lag.getValueAtPercentile(99.9),
+                lag.getMax(), lag.getMean());
+        } finally {
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+}
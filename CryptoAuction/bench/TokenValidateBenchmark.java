@@ -0,0 +1,88 @@
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares TokenManager.validate with the previous map-of-UUID-strings implementation:
+ * validations per second and bytes allocated per validation.
+ *
+ * Usage: java -cp CryptoAuction/bin TokenValidateBenchmark [sessions] [secondsPerRun]
+ * secondsPerRun is capped at 4 so both runs of a round finish inside the token lifetime.
+ */
+public class TokenValidateBenchmark {
+
+    /**
+     * The token manager as it was before the timing-wheel store.
+     */
+    static class LegacyTokenManager {
+        private final Map<Integer, UtilityClass.TokenInfo> tokens = new ConcurrentHashMap<>();
+        private static final long TOKEN_EXPIRY_DURATION = TimeUnit.SECONDS.toMillis(10);
+
+        public boolean validate(int userID, String token) throws RemoteException {
+            UtilityClass.TokenInfo tokenInfo = tokens.get(userID);
+            if (tokenInfo == null || !Objects.equals(tokenInfo.getToken(), token) || tokenInfo.isExpired()) {
+                tokens.remove(userID);
+                throw new RemoteException("Token validation failed: Invalid or expired token for user ID: " + userID);
+            }
+            return true;
+        }
+
+        public UtilityClass.TokenInfo generateToken(int userID) {
+            String token = UUID.randomUUID().toString();
+            UtilityClass.TokenInfo tokenInfo = new UtilityClass.TokenInfo(token, System.currentTimeMillis() + TOKEN_EXPIRY_DURATION);
+            tokens.put(userID, tokenInfo);
+            return tokenInfo;
+        }
+    }
+
+    interface Validator {
+        boolean validate(int userID, String token) throws RemoteException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = Math.min(4, args.length > 1 ? Integer.parseInt(args[1]) : 3);
+
+        LegacyTokenManager legacy = new LegacyTokenManager();
+        UtilityClass.TokenManager current = new UtilityClass.TokenManager();
+        String[] legacyTokens = new String[sessions + 1];
+        String[] currentTokens = new String[sessions + 1];
+
+        // Run twice so the second round reports warmed-up numbers; tokens are reissued so none expire mid-run
+        for (int round = 1; round <= 2; round++) {
+            for (int userID = 1; userID <= sessions; userID++) {
+                legacyTokens[userID] = legacy.generateToken(userID).getToken();
+                currentTokens[userID] = current.generateToken(userID).getToken();
+            }
+            System.out.println("Round " + round + " (" + sessions + " sessions)");
+            run("legacy UUID map", legacy::validate, legacyTokens, seconds);
+            run("timing-wheel store", current::validate, currentTokens, seconds);
+        }
+    }
+
+    private static void run(String name, Validator validator, String[] tokens, int seconds) throws RemoteException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadID = Thread.currentThread().getId();
+        int sessions = tokens.length - 1;
+        long operations = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadID);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        int userID = 1;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 4096; i++) {
+                validator.validate(userID, tokens[userID]);
+                userID = userID == sessions ? 1 : userID + 1;
+            }
+            operations += 4096;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadID) - allocatedBefore;
+        System.out.printf("  %-20s %,14.0f validations/s %8.2f bytes/validation%n",
+            name, operations / elapsed, allocated / (double) operations);
+    }
+}
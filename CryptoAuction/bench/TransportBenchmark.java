@@ -0,0 +1,145 @@
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares bid throughput and latency over RMI and over the binary transport, both talking to the
+ * same in-process Server through loopback sockets.
+ *
+ * rmi          blocking calls through the Server's RMI stub
+ * binary       blocking calls over one shared BinaryAuctionClient connection
+ * pipelined    the same connection with up to depth requests in flight per thread
+ *
+ * Usage: java -cp CryptoAuction/bin TransportBenchmark [threads] [secondsPerRun] [depth]
+ * secondsPerRun is capped at 8 so every run finishes inside the token lifetime.
+ */
+public class TransportBenchmark {
+
+    interface Bidder {
+        void run(int thread, long deadline) throws Exception;
+    }
+
+    private final UtilityClass.Auction rmi;
+    private final BinaryAuctionClient binary;
+    private final AtomicInteger price = new AtomicInteger(1);
+    private final int[] userIDs;
+    private final String[] tokens;
+    private final int[] itemIDs;
+    private final KeyPair keys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+    private final LongAdder operations = new LongAdder();
+    private LatencyHistogram latency;
+
+    TransportBenchmark(Server server, BinaryAuctionClient binary, int threads) throws Exception {
+        this.rmi = (UtilityClass.Auction) RemoteObject.toStub(server);
+        this.binary = binary;
+        this.userIDs = new int[threads];
+        this.tokens = new String[threads];
+        this.itemIDs = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            userIDs[t] = rmi.register("transport" + t + "@example.com", keys.getPublic());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = Math.min(8, args.length > 1 ? Integer.parseInt(args[1]) : 5);
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+
+        Server server = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        BinaryAuctionServer binaryServer = BinaryAuctionServer.start(server, 0, Runtime.getRuntime().availableProcessors());
+        try (BinaryAuctionClient client = new BinaryAuctionClient("localhost", binaryServer.getPort())) {
+            TransportBenchmark benchmark = new TransportBenchmark(server, client, threads);
+            System.out.println(threads + " threads, " + seconds + "s per run, pipeline depth " + depth);
+            // Run twice so the second round reports warmed-up numbers
+            for (int round = 1; round <= 2; round++) {
+                System.out.println("Round " + round);
+                benchmark.measure("rmi", threads, seconds, benchmark::rmiBids);
+                benchmark.measure("binary", threads, seconds, benchmark::binaryBids);
+                benchmark.measure("pipelined", threads, seconds, (t, deadline) -> benchmark.pipelinedBids(t, deadline, depth));
+            }
+        } finally {
+            binaryServer.close();
+            UnicastRemoteObject.unexportObject(server, true);
+        }
+    }
+
+    private void measure(String name, int threads, int seconds, Bidder bidder) throws Exception {
+        for (int t = 0; t < threads; t++) {
+            UtilityClass.ChallengeInfo challenge = rmi.challenge(userIDs[t], "transport-challenge");
+            byte[] signature = UtilityClass.SecurityUtils.sign(challenge.getServerChallenge(), keys.getPrivate());
+            tokens[t] = rmi.authenticate(userIDs[t], signature).getToken();
+            itemIDs[t] = rmi.newAuction(userIDs[t], new UtilityClass.AuctionSaleItem("Transport item", "Bid target", 0), tokens[t]);
+        }
+        latency = new LatencyHistogram();
+        operations.reset();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    bidder.run(thread, deadline);
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        System.out.printf("  %-10s %,12.0f bids/s %10.1f p50 us %10.1f p99 us %10.1f p99.9 us%n", name,
+            operations.sum() / (double) seconds, latency.getValueAtPercentile(50) / 1e3,
+            latency.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(99.9) / 1e3);
+    }
+
+    private void rmiBids(int thread, long deadline) throws RemoteException {
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            rmi.bid(userIDs[thread], itemIDs[thread], price.incrementAndGet(), tokens[thread]);
+            latency.record(System.nanoTime() - start);
+            operations.increment();
+        }
+    }
+
+    private void binaryBids(int thread, long deadline) throws RemoteException {
+        BinaryAuctionClient.Session session = new BinaryAuctionClient.Session(userIDs[thread], tokens[thread]);
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            binary.bid(session, itemIDs[thread], price.incrementAndGet());
+            latency.record(System.nanoTime() - start);
+            operations.increment();
+        }
+    }
+
+    private void pipelinedBids(int thread, long deadline, int depth) throws Exception {
+        BinaryAuctionClient.Session session = new BinaryAuctionClient.Session(userIDs[thread], tokens[thread]);
+        ArrayDeque<CompletableFuture<Boolean>> inFlight = new ArrayDeque<>();
+        ArrayDeque<Long> startTimes = new ArrayDeque<>();
+        while (System.nanoTime() < deadline || !inFlight.isEmpty()) {
+            if (inFlight.size() < depth && System.nanoTime() < deadline) {
+                startTimes.add(System.nanoTime());
+                inFlight.add(binary.bidAsync(session, itemIDs[thread], price.incrementAndGet()));
+                continue;
+            }
+            inFlight.poll().get();
+            latency.record(System.nanoTime() - startTimes.poll());
+            operations.increment();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cryptoauction.bench;
+
+import cryptoauction.UtilityClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server.challenge on its own, and the complete challenge/sign/authenticate handshake, per scheme.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AuthBenchmark {
+
+    @Param({"RSA", "ECDSA_P256", "ED25519"})
+    public UtilityClass.SignatureScheme scheme;
+
+    private ServerFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = ServerFixture.start(scheme);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.stop();
+    }
+
+    @Benchmark
+    public UtilityClass.ChallengeInfo challenge() throws RemoteException {
+        return fixture.server.challenge(fixture.userID, "bench-challenge");
+    }
+
+    @Benchmark
+    public String handshake() throws Exception {
+        fixture.authenticate();
+        return fixture.token;
+    }
+}
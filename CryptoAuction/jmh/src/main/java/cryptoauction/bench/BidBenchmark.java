@@ -0,0 +1,88 @@
+package cryptoauction.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server.bid and Server.bidBatch under contention. Fewer items means more threads racing on the
+ * same lot; vary the thread count with -t (e.g. -t 1, -t 8, -t max).
+ *
+ * Prices come from one shared counter so almost every bid beats the current price; the few that lose
+ * a race are rejected the same way the server rejects them for real clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(4)
+public class BidBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"1", "64", "4096"})
+    public int items;
+
+    private ServerFixture fixture;
+    private int[] itemIDs;
+    private final AtomicInteger price = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = ServerFixture.start();
+        itemIDs = fixture.createItems(items);
+    }
+
+    @Setup(Level.Iteration)
+    public void refreshToken() throws Exception {
+        fixture.authenticate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.stop();
+    }
+
+    @Benchmark
+    public boolean bid() {
+        int itemID = itemIDs[ThreadLocalRandom.current().nextInt(items)];
+        try {
+            return fixture.server.bid(fixture.userID, itemID, price.incrementAndGet(), fixture.token);
+        } catch (RemoteException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean[] bidBatch() throws RemoteException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] ids = new int[BATCH_SIZE];
+        int[] prices = new int[BATCH_SIZE];
+        int base = price.getAndAdd(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ids[i] = itemIDs[random.nextInt(items)];
+            prices[i] = base + i + 1;
+        }
+        return fixture.server.bidBatch(fixture.userID, ids, prices, fixture.token);
+    }
+}
@@ -0,0 +1,69 @@
+package cryptoauction.bench;
+
+import cryptoauction.UtilityClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full catalogue listing against paged and delta listing at different catalogue sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ListItemsBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int catalogueSize;
+
+    private ServerFixture fixture;
+    private long version;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = ServerFixture.start();
+        fixture.createItems(catalogueSize);
+    }
+
+    @Setup(Level.Iteration)
+    public void refreshToken() throws Exception {
+        fixture.authenticate();
+        version = fixture.server.listChanges(fixture.userID, 0, fixture.token).getVersion();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.stop();
+    }
+
+    @Benchmark
+    public UtilityClass.AuctionItem[] listItems() throws RemoteException {
+        return fixture.server.listItems(fixture.userID, fixture.token);
+    }
+
+    @Benchmark
+    public UtilityClass.ItemPage listItemsPage() throws RemoteException {
+        return fixture.server.listItemsPage(fixture.userID, catalogueSize / 2, 100, fixture.token);
+    }
+
+    @Benchmark
+    public UtilityClass.ItemDelta listChangesNoChanges() throws RemoteException {
+        return fixture.server.listChanges(fixture.userID, version, fixture.token);
+    }
+}
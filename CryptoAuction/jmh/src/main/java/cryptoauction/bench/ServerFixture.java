@@ -0,0 +1,58 @@
+package cryptoauction.bench;
+
+import cryptoauction.Server;
+import cryptoauction.UtilityClass;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+
+/**
+ * An in-process Server with one registered, authenticated user. Calls go straight to the Server
+ * object, so no registry or RMI transport is involved.
+ */
+final class ServerFixture {
+    final Server server;
+    final UtilityClass.SignatureScheme scheme;
+    final KeyPair clientKeys;
+    final int userID;
+    volatile String token;
+
+    private ServerFixture(UtilityClass.SignatureScheme scheme) throws Exception {
+        this.server = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        this.scheme = scheme;
+        this.clientKeys = scheme.generateKeyPair();
+        this.userID = server.register("bench@example.com", clientKeys.getPublic(), scheme);
+        authenticate();
+    }
+
+    static ServerFixture start() throws Exception {
+        return new ServerFixture(UtilityClass.SignatureScheme.RSA);
+    }
+
+    static ServerFixture start(UtilityClass.SignatureScheme scheme) throws Exception {
+        return new ServerFixture(scheme);
+    }
+
+    /**
+     * Runs a full challenge/authenticate handshake and stores the new token. Tokens expire after
+     * TokenManager.getTokenExpiryDuration(), so benchmarks call this once per iteration.
+     */
+    void authenticate() throws Exception {
+        UtilityClass.ChallengeInfo challenge = server.challenge(userID, "bench-challenge");
+        byte[] signature = scheme.sign(challenge.getServerChallenge().getBytes(), clientKeys.getPrivate());
+        token = server.authenticate(userID, signature).getToken();
+    }
+
+    int[] createItems(int count) throws Exception {
+        int[] itemIDs = new int[count];
+        for (int i = 0; i < count; i++) {
+            itemIDs[i] = server.newAuction(userID,
+                new UtilityClass.AuctionSaleItem("Item " + i, "Benchmark lot number " + i, 10), token);
+        }
+        return itemIDs;
+    }
+
+    void stop() throws Exception {
+        UnicastRemoteObject.unexportObject(server, true);
+    }
+}
@@ -0,0 +1,51 @@
+package cryptoauction.bench;
+
+import cryptoauction.UtilityClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TokenManager.validate over a population of live sessions. Run with -prof gc to track allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TokenBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int sessions;
+
+    private final UtilityClass.TokenManager tokenManager = new UtilityClass.TokenManager();
+    private String[] tokens;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void issueTokens() {
+        tokens = new String[sessions + 1];
+        for (int userID = 1; userID <= sessions; userID++) {
+            tokens[userID] = tokenManager.generateToken(userID).getToken();
+        }
+    }
+
+    @Benchmark
+    public boolean validate() throws RemoteException {
+        int userID = next = next == sessions ? 1 : next + 1;
+        return tokenManager.validate(userID, tokens[userID]);
+    }
+}
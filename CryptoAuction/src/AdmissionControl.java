@@ -0,0 +1,207 @@
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides whether a call may run, before the server does any real work for it.
+ *
+ * Each limited operation has a token bucket per user. A bucket is a single long, the time at which it
+ * will be full again (the GCRA form of a token bucket): a call is admitted if charging it would not
+ * push that time further than the burst ahead of now, with one CAS and no lock. Buckets sit in chunks
+ * indexed by user ID, like TokenManager's sessions. Calls made before the caller is authenticated
+ * (register, challenge, authenticate, refreshSession) are charged to a bucket picked by hashing the
+ * client's host instead, so nobody can use up another user's login allowance by sending their ID.
+ * Batch calls draw on their single-call operation's bucket, one token per entry.
+ *
+ * Admitted calls then take one of a fixed number of concurrency slots. When every slot is taken the
+ * call is refused at once rather than queued, so the calls already running keep their usual latency
+ * and the caller can back off.
+ */
+public class AdmissionControl {
+
+    /**
+     * Released once the admitted call has finished.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A sustained rate with a burst allowance, written "rate" or "rate/burst" in calls per second.
+     */
+    public static final class Limit {
+        final double perSecond;
+        final int burst;
+
+        public Limit(double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Invalid limit " + perSecond + "/" + burst);
+            }
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+
+        public static Limit parse(String spec) {
+            String[] parts = spec.trim().split("/");
+            double perSecond = Double.parseDouble(parts[0]);
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1]) : (int) Math.max(1, Math.ceil(perSecond));
+            return new Limit(perSecond, burst);
+        }
+    }
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int HOST_BUCKETS = 4096;
+    private static final Map<ServerMetrics.Operation, ServerMetrics.Operation> SINGLE_OF = new EnumMap<>(Map.of(
+        ServerMetrics.Operation.BID_BATCH, ServerMetrics.Operation.BID,
+        ServerMetrics.Operation.GET_SPEC_BATCH, ServerMetrics.Operation.GET_SPEC,
+        ServerMetrics.Operation.NEW_AUCTION_BATCH, ServerMetrics.Operation.NEW_AUCTION));
+    private static final Permit NO_SLOT = () -> {};
+
+    private final int[] slotOf = new int[ServerMetrics.Operation.values().length];
+    private final long[] intervals;
+    private final long[] capacities;
+    private final int slots;
+    private final int maxConcurrent;
+    private final ServerMetrics metrics;
+    // Bucket times are relative to this, so a fresh bucket (0) is always full
+    private final long origin = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final Permit slot = running::decrementAndGet;
+    private final AtomicLongArray hosts;
+    private volatile AtomicLongArray[] users = new AtomicLongArray[16];
+
+    /**
+     * limits maps each limited operation to its per-caller limit; maxConcurrent 0 means no concurrency limit.
+     */
+    public AdmissionControl(Map<ServerMetrics.Operation, Limit> limits, int maxConcurrent, ServerMetrics metrics) {
+        Arrays.fill(slotOf, -1);
+        this.intervals = new long[limits.size()];
+        this.capacities = new long[limits.size()];
+        int next = 0;
+        for (Map.Entry<ServerMetrics.Operation, Limit> entry : limits.entrySet()) {
+            Limit limit = entry.getValue();
+            intervals[next] = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.perSecond));
+            capacities[next] = intervals[next] * limit.burst;
+            slotOf[entry.getKey().ordinal()] = next++;
+        }
+        for (Map.Entry<ServerMetrics.Operation, ServerMetrics.Operation> batch : SINGLE_OF.entrySet()) {
+            if (slotOf[batch.getKey().ordinal()] < 0) {
+                slotOf[batch.getKey().ordinal()] = slotOf[batch.getValue().ordinal()];
+            }
+        }
+        this.slots = next;
+        this.maxConcurrent = maxConcurrent;
+        this.metrics = metrics;
+        this.hosts = new AtomicLongArray(HOST_BUCKETS * slots);
+    }
+
+    /**
+     * Reads auction.limit.&lt;operation&gt; (e.g. auction.limit.bid=50/100) for each operation and
+     * auction.limit.concurrency for the concurrency limit.
+     */
+    public static AdmissionControl fromProperties(ServerMetrics metrics) {
+        Map<ServerMetrics.Operation, Limit> limits = new EnumMap<>(ServerMetrics.Operation.class);
+        for (ServerMetrics.Operation op : ServerMetrics.Operation.values()) {
+            String spec = System.getProperty("auction.limit." + op.name().toLowerCase(Locale.ROOT));
+            if (spec != null) {
+                limits.put(op, Limit.parse(spec));
+            }
+        }
+        return new AdmissionControl(limits, Integer.getInteger("auction.limit.concurrency", 0), metrics);
+    }
+
+    public boolean isLimited() {
+        return slots > 0 || maxConcurrent > 0;
+    }
+
+    /**
+     * Admits a call from an authenticated user that stands for cost calls of op.
+     */
+    public Permit admit(ServerMetrics.Operation op, int userID, int cost) throws RemoteException {
+        int bucket = slotOf[op.ordinal()];
+        if (bucket >= 0 && userID >= 0) {
+            charge(userChunk(userID), (userID & CHUNK_MASK) * slots + bucket, bucket, op, cost);
+        }
+        return enter(op);
+    }
+
+    /**
+     * Admits a call that is not yet tied to an authenticated user, charging the caller's host.
+     */
+    public Permit admitHost(ServerMetrics.Operation op, String host) throws RemoteException {
+        int bucket = slotOf[op.ordinal()];
+        if (bucket >= 0) {
+            charge(hosts, Math.floorMod(host.hashCode(), HOST_BUCKETS) * slots + bucket, bucket, op, 1);
+        }
+        return enter(op);
+    }
+
+    /**
+     * Calls currently holding a concurrency slot.
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    private void charge(AtomicLongArray buckets, int index, int bucket, ServerMetrics.Operation op, int cost)
+            throws RemoteException {
+        long charge = intervals[bucket] * Math.max(cost, 1);
+        long capacity = capacities[bucket];
+        if (charge > capacity) {
+            throw new RemoteException(cost + " calls of " + op + " exceed the burst allowed at once");
+        }
+        for (;;) {
+            long now = System.nanoTime() - origin;
+            long fullAt = buckets.get(index);
+            long next = Math.max(fullAt, now) + charge;
+            if (next - now > capacity) {
+                metrics.rateLimited();
+                long retryAfterMillis = TimeUnit.NANOSECONDS.toMillis(next - now - capacity) + 1;
+                throw new UtilityClass.RateLimitedException("Rate limit exceeded for " + op + "; retry after "
+                    + retryAfterMillis + " ms", retryAfterMillis);
+            }
+            if (buckets.compareAndSet(index, fullAt, next)) {
+                return;
+            }
+        }
+    }
+
+    private Permit enter(ServerMetrics.Operation op) throws RemoteException {
+        if (maxConcurrent <= 0) {
+            return NO_SLOT;
+        }
+        if (running.incrementAndGet() > maxConcurrent) {
+            running.decrementAndGet();
+            metrics.overloaded();
+            throw new UtilityClass.ServerBusyException("Server busy; " + op + " was not run");
+        }
+        return slot;
+    }
+
+    private AtomicLongArray userChunk(int userID) {
+        int chunkIndex = userID >>> CHUNK_BITS;
+        AtomicLongArray[] table = users;
+        if (chunkIndex < table.length && table[chunkIndex] != null) {
+            return table[chunkIndex];
+        }
+        synchronized (this) {
+            table = users;
+            if (chunkIndex >= table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, chunkIndex + 1));
+            }
+            if (table[chunkIndex] == null) {
+                table[chunkIndex] = new AtomicLongArray(CHUNK_SIZE * slots);
+            }
+            users = table;
+            return table[chunkIndex];
+        }
+    }
+}
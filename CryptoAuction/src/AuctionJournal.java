@@ -0,0 +1,780 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of auction state changes.
+ *
+ * Events are framed as [length][type + body][crc32] and appended to journal-N.log in fixed-size mapped
+ * segments. A single flusher thread forces the mapped pages to disk, so every caller that appended
+ * before a flush shares the same fsync (group commit). Periodic snapshots roll the journal to a new
+ * generation and write the live state as snapshot-N.snap, so recovery loads the newest snapshot and
+ * replays only journals from that generation on. Replay is idempotent, which lets a snapshot overlap
+ * the journal generation it was taken against.
+ */
+public class AuctionJournal implements Closeable {
+
+    public enum Durability {
+        /** Callers of sync() wait until their events are forced to disk; concurrent callers share one force. */
+        SYNC,
+        /** Events are forced in the background every flush interval; sync() returns immediately. */
+        ASYNC
+    }
+
+    /**
+     * The events recorded by the journal. The journal itself appends them, snapshots write them and
+     * the server applies them during recovery.
+     */
+    public interface Events {
+        void register(int userID, String email, PublicKey publicKey) throws IOException;
+        void newAuction(int itemID, int ownerID, String name, String description, int reservePrice) throws IOException;
+        void bid(int itemID, int bidderID, int price) throws IOException;
+        void close(int itemID) throws IOException;
+        void counters(int nextUserID, int nextItemID) throws IOException;
+
+        /** A newAuction that ends by itself at endTime, extended by bids in its last softCloseMillis. */
+        default void newTimedAuction(int itemID, int ownerID, String name, String description, int reservePrice,
+                                     long endTime, long softCloseMillis) throws IOException {
+            newAuction(itemID, ownerID, name, description, reservePrice);
+        }
+
+        /** A bid with the time it was placed, for the item's bid history. */
+        default void bidAt(int itemID, int bidderID, int price, long placedAt) throws IOException {
+            bid(itemID, bidderID, price);
+        }
+
+        /** A late bid moved a timed auction's end time. */
+        default void extend(int itemID, long endTime) throws IOException {}
+
+        /** A timed auction ended: the item is gone and its result is kept for the seller. */
+        default void settle(int itemID, int ownerID, String winningEmail, int winningPrice, long settledAt) throws IOException {
+            close(itemID);
+        }
+
+        /** A login token was issued. Replicated to backups but never written to disk. */
+        default void session(int userID, long tokenHigh, long tokenLow, long expiryTime) throws IOException {}
+
+        /** A login token that can be refreshed until refreshableUntil was issued or refreshed. */
+        default void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil,
+                             long refreshes) throws IOException {
+            session(userID, tokenHigh, tokenLow, expiryTime);
+        }
+
+        /** Waits until everything this thread appended is durable. Only meaningful for the journal. */
+        default void sync() throws IOException {}
+
+        /** End position of the last event this thread appended, for handing to syncTo on another thread. */
+        default long appendedPosition() { return 0; }
+
+        /** Waits until everything up to position, from any thread, is durable. */
+        default void syncTo(long position) throws IOException {}
+    }
+
+    /**
+     * Writes the complete live state into a snapshot.
+     */
+    public interface StateSource {
+        void exportState(Events sink) throws IOException;
+    }
+
+    public static final Events NONE = new Events() {
+        public void register(int userID, String email, PublicKey publicKey) {}
+        public void newAuction(int itemID, int ownerID, String name, String description, int reservePrice) {}
+        public void bid(int itemID, int bidderID, int price) {}
+        public void close(int itemID) {}
+        public void counters(int nextUserID, int nextItemID) {}
+    };
+
+    private static final byte REGISTER = 1;
+    private static final byte NEW_AUCTION = 2;
+    private static final byte BID = 3;
+    private static final byte CLOSE = 4;
+    private static final byte COUNTERS = 5;
+    private static final byte TIMED_AUCTION = 6;
+    private static final byte EXTEND = 7;
+    private static final byte SETTLE = 8;
+    private static final byte SESSION = 9;
+    private static final byte TIMED_BID = 10;
+    private static final byte REFRESHABLE_SESSION = 11;
+
+    private static final int SEGMENT_END = -1;
+    private static final int FRAME_OVERHEAD = 8;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final Pattern FILE_NAME = Pattern.compile("(journal|snapshot)-(\\d+)\\.(log|snap)");
+
+    private final Path directory;
+    private final Durability durability;
+    private final int segmentSize;
+    private final long flushIntervalNanos;
+    private final Appender appender = new Appender();
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+    private final Object durableMonitor = new Object();
+    private final Object snapshotLock = new Object();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Thread flusher;
+    private ScheduledExecutorService snapshotScheduler;
+
+    // Guarded by appendLock
+    private FileChannel channel;
+    private long generation;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private final List<MappedByteBuffer> filledSegments = new ArrayList<>();
+    private long appendedPosition;
+    private long eventCount;
+
+    private volatile long durablePosition;
+    private final AtomicLong forceCount = new AtomicLong();
+    private volatile boolean closed;
+
+    private AuctionJournal(Path directory, Durability durability, int segmentSize, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = durability == Durability.SYNC
+            ? TimeUnit.MILLISECONDS.toNanos(1) : TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        Files.createDirectories(directory);
+        TreeSet<Long> generations = generations("journal");
+        generations.addAll(generations("snapshot"));
+        openGeneration(generations.isEmpty() ? 1 : generations.last() + 1);
+        this.flusher = new Thread(this::flushLoop, "auction-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static AuctionJournal open(Path directory, Durability durability) throws IOException {
+        return new AuctionJournal(directory, durability, DEFAULT_SEGMENT_SIZE, 100);
+    }
+
+    public static AuctionJournal open(Path directory, Durability durability, int segmentSize, long flushIntervalMillis) throws IOException {
+        return new AuctionJournal(directory, durability, segmentSize, flushIntervalMillis);
+    }
+
+    /**
+     * Returns the journal's append side. Events appended through it are durable once sync() returns.
+     */
+    public Events appender() {
+        return appender;
+    }
+
+    /**
+     * Replays the newest snapshot followed by every older journal generation into target.
+     * Must be called before anything is appended to the current generation.
+     */
+    public void recover(Events target) throws IOException {
+        TreeSet<Long> snapshots = generations("snapshot");
+        long from = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (from > 0) {
+            replaySnapshot(snapshotPath(from), target);
+        }
+        for (long gen : generations("journal")) {
+            if (gen >= from && gen < generation) {
+                replayJournal(journalPath(gen), target);
+            }
+        }
+    }
+
+    /**
+     * Rolls the journal and writes the current state as a snapshot, then deletes what it supersedes.
+     */
+    public void snapshot(StateSource source) throws IOException {
+        synchronized (snapshotLock) {
+            long snapshotGeneration = roll();
+            Path tmp = directory.resolve("snapshot-" + snapshotGeneration + ".tmp");
+            try (SnapshotWriter writer = new SnapshotWriter(tmp)) {
+                source.exportState(writer);
+            }
+            Files.move(tmp, snapshotPath(snapshotGeneration), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long gen : generations("journal")) {
+                if (gen < snapshotGeneration) Files.deleteIfExists(journalPath(gen));
+            }
+            for (long gen : generations("snapshot")) {
+                if (gen < snapshotGeneration) Files.deleteIfExists(snapshotPath(gen));
+            }
+        }
+    }
+
+    public synchronized void scheduleSnapshots(StateSource source, long intervalMillis) {
+        if (snapshotScheduler != null) {
+            throw new IllegalStateException("Snapshots already scheduled");
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "auction-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(source);
+            } catch (Exception e) {
+                System.err.println("Journal snapshot failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getEventCount() {
+        appendLock.lock();
+        try {
+            return eventCount;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long getForceCount() {
+        return forceCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (snapshotScheduler != null) snapshotScheduler.shutdownNow();
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appendLock.lock();
+        try {
+            forceAll();
+            channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+        synchronized (durableMonitor) {
+            durableMonitor.notifyAll();
+        }
+    }
+
+    // ---- Appending ----
+
+    private class Appender extends Encoder {
+        @Override
+        protected void write(ByteBuffer body, int crc) throws IOException {
+            append(body, crc);
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime) {
+            // Tokens only live as long as the process
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil, long refreshes) {
+        }
+
+        public void sync() throws IOException {
+            awaitDurable(lastAppended.get()[0]);
+        }
+
+        public long appendedPosition() {
+            return lastAppended.get()[0];
+        }
+
+        public void syncTo(long position) throws IOException {
+            awaitDurable(position);
+        }
+    }
+
+    private void append(ByteBuffer body, int crc) throws IOException {
+        int length = body.remaining();
+        if (length + FRAME_OVERHEAD + 4 > segmentSize) {
+            throw new IOException("Journal record of " + length + " bytes exceeds segment size");
+        }
+        long end;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            if (segment.remaining() < length + FRAME_OVERHEAD + 4) {
+                nextSegment();
+            }
+            segment.putInt(length);
+            segment.put(body);
+            segment.putInt(crc);
+            appendedPosition += length + FRAME_OVERHEAD;
+            eventCount++;
+            end = appendedPosition;
+        } finally {
+            appendLock.unlock();
+        }
+        lastAppended.get()[0] = end;
+    }
+
+    private void awaitDurable(long position) throws IOException {
+        if (durability == Durability.ASYNC || durablePosition >= position) {
+            return;
+        }
+        LockSupport.unpark(flusher);
+        synchronized (durableMonitor) {
+            while (durablePosition < position) {
+                if (closed) {
+                    throw new IOException("Journal closed before events became durable");
+                }
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal sync");
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            boolean idle;
+            appendLock.lock();
+            try {
+                idle = appendedPosition == durablePosition;
+            } finally {
+                appendLock.unlock();
+            }
+            if (idle || durability == Durability.ASYNC) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                System.err.println("Journal flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forces every byte appended so far, outside the append lock so appenders keep going meanwhile.
+     */
+    private void flush() throws IOException {
+        List<MappedByteBuffer> filled;
+        MappedByteBuffer current;
+        int currentLength;
+        long target;
+        appendLock.lock();
+        try {
+            target = appendedPosition;
+            if (target == durablePosition) {
+                return;
+            }
+            filled = new ArrayList<>(filledSegments);
+            filledSegments.clear();
+            current = segment;
+            currentLength = segment.position();
+        } finally {
+            appendLock.unlock();
+        }
+        for (MappedByteBuffer buffer : filled) {
+            buffer.force();
+        }
+        current.force(0, currentLength);
+        forceCount.incrementAndGet();
+        publishDurable(target);
+    }
+
+    private void publishDurable(long position) {
+        synchronized (durableMonitor) {
+            if (position > durablePosition) {
+                durablePosition = position;
+            }
+            durableMonitor.notifyAll();
+        }
+    }
+
+    // Caller holds appendLock
+    private void nextSegment() throws IOException {
+        if (segment.remaining() >= 4) {
+            segment.putInt(SEGMENT_END);
+        }
+        filledSegments.add(segment);
+        segmentIndex++;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segmentIndex * segmentSize, segmentSize);
+    }
+
+    // Caller holds appendLock
+    private void forceAll() {
+        for (MappedByteBuffer buffer : filledSegments) {
+            buffer.force();
+        }
+        filledSegments.clear();
+        segment.force();
+        forceCount.incrementAndGet();
+        publishDurable(appendedPosition);
+    }
+
+    /**
+     * Switches appends to a new journal generation and returns its number.
+     */
+    private long roll() throws IOException {
+        appendLock.lock();
+        try {
+            forceAll();
+            channel.close();
+            openGeneration(generation + 1);
+            return generation;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void openGeneration(long gen) throws IOException {
+        generation = gen;
+        channel = FileChannel.open(journalPath(gen), StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentIndex = 0;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    // ---- Recovery ----
+
+    private void replayJournal(Path path, Events target) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long base = 0; base < size; base += segmentSize) {
+                ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, base, Math.min(segmentSize, size - base));
+                if (!replaySegment(buffer, target)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns false once the end of the journal (or a torn tail) is reached.
+     */
+    private boolean replaySegment(ByteBuffer buffer, Events target) throws IOException {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length == SEGMENT_END) {
+                return true;
+            }
+            if (length <= 0 || length + 4 > buffer.remaining()) {
+                return false;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            buffer.position(buffer.position() + length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt()) {
+                return false;
+            }
+            decode(body, target);
+        }
+        return true;
+    }
+
+    private void replaySnapshot(Path path, Events target) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] body = new byte[256];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            for (;;) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length > body.length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                in.readFully(body, 0, length);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != in.readInt()) {
+                    throw new IOException("Corrupt snapshot record in " + path);
+                }
+                decode(ByteBuffer.wrap(body, 0, length), target);
+            }
+        }
+    }
+
+    /**
+     * Applies one record body, [type + fields], to target.
+     */
+    static void decode(ByteBuffer body, Events target) throws IOException {
+        byte type = body.get();
+        switch (type) {
+            case REGISTER:
+                target.register(body.getInt(), getString(body), decodeKey(getString(body), getBytes(body)));
+                break;
+            case NEW_AUCTION:
+                target.newAuction(body.getInt(), body.getInt(), getString(body), getString(body), body.getInt());
+                break;
+            case BID:
+                target.bid(body.getInt(), body.getInt(), body.getInt());
+                break;
+            case CLOSE:
+                target.close(body.getInt());
+                break;
+            case COUNTERS:
+                target.counters(body.getInt(), body.getInt());
+                break;
+            case TIMED_AUCTION:
+                target.newTimedAuction(body.getInt(), body.getInt(), getString(body), getString(body), body.getInt(),
+                    body.getLong(), body.getLong());
+                break;
+            case EXTEND:
+                target.extend(body.getInt(), body.getLong());
+                break;
+            case SETTLE:
+                target.settle(body.getInt(), body.getInt(), getString(body), body.getInt(), body.getLong());
+                break;
+            case SESSION:
+                target.session(body.getInt(), body.getLong(), body.getLong(), body.getLong());
+                break;
+            case TIMED_BID:
+                target.bidAt(body.getInt(), body.getInt(), body.getInt(), body.getLong());
+                break;
+            case REFRESHABLE_SESSION:
+                target.session(body.getInt(), body.getLong(), body.getLong(), body.getLong(), body.getLong(), body.getLong());
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static PublicKey decodeKey(String algorithm, byte[] encoded) throws IOException {
+        try {
+            return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            throw new IOException("Cannot restore " + algorithm + " public key: " + e.getMessage(), e);
+        }
+    }
+
+    private static String getString(ByteBuffer body) {
+        byte[] bytes = getBytes(body);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return bytes;
+    }
+
+    // ---- Files ----
+
+    private TreeSet<Long> generations(String kind) throws IOException {
+        TreeSet<Long> generations = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && m.group(1).equals(kind)) {
+                    generations.add(Long.parseLong(m.group(2)));
+                }
+            });
+        }
+        return generations;
+    }
+
+    private Path journalPath(long gen) {
+        return directory.resolve("journal-" + gen + ".log");
+    }
+
+    private Path snapshotPath(long gen) {
+        return directory.resolve("snapshot-" + gen + ".snap");
+    }
+
+    /**
+     * Writes snapshot records with the same framing as the journal, fsyncing on close.
+     */
+    private class SnapshotWriter extends Encoder implements Closeable {
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+
+        SnapshotWriter(Path path) throws IOException {
+            this.file = new FileOutputStream(path.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+        }
+
+        @Override
+        protected void write(ByteBuffer body, int crc) throws IOException {
+            out.writeInt(body.remaining());
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            out.writeInt(crc);
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime) {
+            // Tokens only live as long as the process
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil, long refreshes) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            file.getFD().sync();
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes each event as one record body, [type + fields], and hands it with its CRC to write. The
+     * journal, snapshots and the replication stream all carry these records.
+     */
+    public abstract static class Encoder implements Events {
+        private static final ThreadLocal<RecordBuffer> SCRATCH = ThreadLocal.withInitial(RecordBuffer::new);
+
+        /**
+         * body is only valid for the duration of the call.
+         */
+        protected abstract void write(ByteBuffer body, int crc) throws IOException;
+
+        public void register(int userID, String email, PublicKey publicKey) throws IOException {
+            emit(SCRATCH.get().begin(REGISTER).putInt(userID).putString(email)
+                .putString(publicKey.getAlgorithm()).putBytes(publicKey.getEncoded()));
+        }
+
+        public void newAuction(int itemID, int ownerID, String name, String description, int reservePrice) throws IOException {
+            emit(SCRATCH.get().begin(NEW_AUCTION).putInt(itemID).putInt(ownerID)
+                .putString(name).putString(description).putInt(reservePrice));
+        }
+
+        public void bid(int itemID, int bidderID, int price) throws IOException {
+            emit(SCRATCH.get().begin(BID).putInt(itemID).putInt(bidderID).putInt(price));
+        }
+
+        public void bidAt(int itemID, int bidderID, int price, long placedAt) throws IOException {
+            emit(SCRATCH.get().begin(TIMED_BID).putInt(itemID).putInt(bidderID).putInt(price).putLong(placedAt));
+        }
+
+        public void close(int itemID) throws IOException {
+            emit(SCRATCH.get().begin(CLOSE).putInt(itemID));
+        }
+
+        public void counters(int nextUserID, int nextItemID) throws IOException {
+            emit(SCRATCH.get().begin(COUNTERS).putInt(nextUserID).putInt(nextItemID));
+        }
+
+        public void newTimedAuction(int itemID, int ownerID, String name, String description, int reservePrice,
+                                    long endTime, long softCloseMillis) throws IOException {
+            emit(SCRATCH.get().begin(TIMED_AUCTION).putInt(itemID).putInt(ownerID).putString(name)
+                .putString(description).putInt(reservePrice).putLong(endTime).putLong(softCloseMillis));
+        }
+
+        public void extend(int itemID, long endTime) throws IOException {
+            emit(SCRATCH.get().begin(EXTEND).putInt(itemID).putLong(endTime));
+        }
+
+        public void settle(int itemID, int ownerID, String winningEmail, int winningPrice, long settledAt) throws IOException {
+            emit(SCRATCH.get().begin(SETTLE).putInt(itemID).putInt(ownerID).putString(winningEmail)
+                .putInt(winningPrice).putLong(settledAt));
+        }
+
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime) throws IOException {
+            emit(SCRATCH.get().begin(SESSION).putInt(userID).putLong(tokenHigh).putLong(tokenLow).putLong(expiryTime));
+        }
+
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil,
+                            long refreshes) throws IOException {
+            emit(SCRATCH.get().begin(REFRESHABLE_SESSION).putInt(userID).putLong(tokenHigh).putLong(tokenLow)
+                .putLong(expiryTime).putLong(refreshableUntil).putLong(refreshes));
+        }
+
+        private void emit(RecordBuffer record) throws IOException {
+            ByteBuffer body = record.flip();
+            write(body, record.crc());
+        }
+    }
+
+    /**
+     * Per-thread growable buffer used to encode one record at a time.
+     */
+    private static class RecordBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+        private final CRC32 crc = new CRC32();
+
+        RecordBuffer begin(byte type) {
+            buffer.clear();
+            buffer.put(type);
+            return this;
+        }
+
+        RecordBuffer putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        RecordBuffer putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        RecordBuffer putString(String value) {
+            return putBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        RecordBuffer putBytes(byte[] value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            ensure(4 + value.length);
+            buffer.putInt(value.length);
+            buffer.put(value);
+            return this;
+        }
+
+        ByteBuffer flip() {
+            buffer.flip();
+            return buffer;
+        }
+
+        int crc() {
+            crc.reset();
+            crc.update(buffer.array(), 0, buffer.limit());
+            return (int) crc.getValue();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
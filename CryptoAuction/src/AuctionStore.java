@@ -0,0 +1,481 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Users and live auction items, stored by ID in primitive columns instead of boxed-key maps.
+ *
+ * User and item IDs are handed out densely by counters, so an ID is its own index into a table of
+ * CHUNK_SIZE-slot chunks. An item chunk holds one primitive array per field (owner, reserve, end time,
+ * soft close, and the highest bid packed with its bidder as in AuctionItem) and a byte area with each
+ * item's UTF-8 name and description, plus a BidLog for each item that has been bid on. A million items are then a few hundred arrays rather than ten
+ * million small objects, so the heap, and the work a full GC does, track the data rather than the
+ * object count.
+ *
+ * Reads never lock. A slot's fields are written before its live bit is set and read after the bit is
+ * checked, so readers never see a half-created item; bids and end times change by CAS exactly as on
+ * AuctionItem. get() builds an AuctionItem copy for callers that need the object. IDs are not reused,
+ * so a chunk whose every slot has been created and closed is dropped.
+ */
+public class AuctionStore {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_TEXT_BYTES = 1 << 12;
+
+    private volatile ItemChunk[] items = new ItemChunk[16];
+    private volatile AtomicReferenceArray<UtilityClass.User>[] users = newUserTable(16);
+    private final AtomicInteger userCount = new AtomicInteger();
+
+    // ---- Users ----
+
+    /**
+     * Stores user under its ID, replacing any previous entry.
+     */
+    public void putUser(UtilityClass.User user) {
+        int userID = user.getUserID();
+        if (userChunkFor(userID).getAndSet(userID & CHUNK_MASK, user) == null) {
+            userCount.incrementAndGet();
+        }
+    }
+
+    public UtilityClass.User user(int userID) {
+        AtomicReferenceArray<UtilityClass.User>[] table = users;
+        int chunkIndex = userID >>> CHUNK_BITS;
+        if (userID < 0 || chunkIndex >= table.length || table[chunkIndex] == null) {
+            return null;
+        }
+        return table[chunkIndex].get(userID & CHUNK_MASK);
+    }
+
+    public int userCount() {
+        return userCount.get();
+    }
+
+    // ---- Items ----
+
+    /**
+     * Creates a live item, or returns false if itemID is already live.
+     */
+    public boolean create(int itemID, int ownerID, String name, String description, int reservePrice,
+                          long endTime, long softCloseMillis) {
+        ItemChunk chunk = itemChunkFor(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk.isLive(slot)) {
+            return false;
+        }
+        chunk.owners[slot] = ownerID;
+        chunk.reservePrices[slot] = reservePrice;
+        chunk.softCloseMillis[slot] = softCloseMillis;
+        chunk.textOffsets[slot] = chunk.appendText(name, description);
+        chunk.bids.set(slot, 0);
+        chunk.histories.set(slot, null);
+        chunk.endTimes.set(slot, endTime);
+        if (!chunk.setBit(chunk.live, slot)) {
+            return false;
+        }
+        chunk.liveCount.incrementAndGet();
+        // Counted after liveCount, so a full chunk seen with no live items really has none left to create
+        if (chunk.setBit(chunk.used, slot) && chunk.usedCount.incrementAndGet() == CHUNK_SIZE) {
+            dropIfEmpty(itemID >>> CHUNK_BITS, chunk);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a live item; returns false if it was not live.
+     */
+    public boolean remove(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        if (chunk == null || !chunk.clearBit(chunk.live, itemID & CHUNK_MASK)) {
+            return false;
+        }
+        chunk.histories.set(itemID & CHUNK_MASK, null);
+        if (chunk.liveCount.decrementAndGet() == 0 && chunk.usedCount.get() == CHUNK_SIZE) {
+            dropIfEmpty(itemID >>> CHUNK_BITS, chunk);
+        }
+        return true;
+    }
+
+    public boolean isLive(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        return chunk != null && chunk.isLive(itemID & CHUNK_MASK);
+    }
+
+    /**
+     * A copy of the live item, or null.
+     */
+    public UtilityClass.AuctionItem get(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk == null || !chunk.isLive(slot)) {
+            return null;
+        }
+        byte[] text = chunk.text;
+        int offset = chunk.textOffsets[slot];
+        int nameLength = readInt(text, offset);
+        String name = decode(text, offset + 4, nameLength);
+        int descriptionOffset = offset + 4 + Math.max(nameLength, 0);
+        String description = decode(text, descriptionOffset + 4, readInt(text, descriptionOffset));
+        UtilityClass.AuctionItem item = new UtilityClass.AuctionItem(itemID, name, description, chunk.reservePrices[slot],
+            chunk.endTimes.get(slot), chunk.softCloseMillis[slot]);
+        long bid = chunk.bids.get(slot);
+        if (priceOf(bid) > 0) {
+            item.offerBid(bidderOf(bid), priceOf(bid));
+        }
+        return item;
+    }
+
+    /**
+     * Owner of a live item, or 0.
+     */
+    public int owner(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        return chunk != null && chunk.isLive(slot) ? chunk.owners[slot] : 0;
+    }
+
+    /**
+     * Current highest bid of a live item, or 0.
+     */
+    public int highestBid(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        return chunk != null && chunk.isLive(slot) ? priceOf(chunk.bids.get(slot)) : 0;
+    }
+
+    /**
+     * End time of a live item; 0 if it has none or is not live.
+     */
+    public long endTime(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        return chunk != null && chunk.isLive(slot) ? chunk.endTimes.get(slot) : 0;
+    }
+
+    public boolean hasEnded(int itemID, long now) {
+        ItemChunk chunk = itemChunk(itemID);
+        if (chunk == null) {
+            return false;
+        }
+        long end = chunk.endTimes.get(itemID & CHUNK_MASK);
+        return end > 0 && now >= end;
+    }
+
+    /**
+     * As AuctionItem.offerBidDisplacing: the displaced bidder (0 if none), or -1 if the bid is too low
+     * or the item is not live.
+     */
+    public int offerBidDisplacing(int itemID, int bidderID, int price) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk == null || !chunk.isLive(slot)) {
+            return -1;
+        }
+        long next = pack(price, bidderID);
+        for (;;) {
+            long current = chunk.bids.get(slot);
+            if (price <= priceOf(current)) {
+                return -1;
+            }
+            if (chunk.bids.compareAndSet(slot, current, next)) {
+                return bidderOf(current);
+            }
+        }
+    }
+
+    /**
+     * Appends an accepted bid to a live item's history.
+     */
+    public void recordBid(int itemID, int bidderID, int price, long placedAt) {
+        BidLog history = historyFor(itemID);
+        if (history != null) {
+            history.append(bidderID, price, placedAt);
+        }
+    }
+
+    /**
+     * Appends a recovered or replicated bid to a live item's history unless it is already there, whether
+     * or not it raised the highest bid.
+     */
+    public void replayBid(int itemID, int bidderID, int price, long placedAt) {
+        BidLog history = historyFor(itemID);
+        if (history != null) {
+            history.appendIfAbsent(bidderID, price, placedAt);
+        }
+    }
+
+    private BidLog historyFor(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk == null || !chunk.isLive(slot)) {
+            return null;
+        }
+        BidLog history = chunk.histories.get(slot);
+        if (history == null && !chunk.histories.compareAndSet(slot, null, history = new BidLog())) {
+            history = chunk.histories.get(slot);
+        }
+        return history;
+    }
+
+    /**
+     * Bid history of a live item, or null if it is not live or has no bids.
+     */
+    public BidLog history(int itemID) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        return chunk != null && chunk.isLive(slot) ? chunk.histories.get(slot) : null;
+    }
+
+    /**
+     * As AuctionItem.extendForBidAt: applies the soft-close rule and returns the new end time, or 0.
+     */
+    public long extendForBidAt(int itemID, long now) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk == null || chunk.softCloseMillis[slot] <= 0) {
+            return 0;
+        }
+        long extended = now + chunk.softCloseMillis[slot];
+        for (;;) {
+            long end = chunk.endTimes.get(slot);
+            if (end == 0 || extended <= end) {
+                return 0;
+            }
+            if (chunk.endTimes.compareAndSet(slot, end, extended)) {
+                return extended;
+            }
+        }
+    }
+
+    /**
+     * Moves a live item's end time later, as recorded by the journal.
+     */
+    public void extendTo(int itemID, long endTime) {
+        ItemChunk chunk = itemChunk(itemID);
+        int slot = itemID & CHUNK_MASK;
+        if (chunk != null && chunk.isLive(slot)) {
+            chunk.endTimes.accumulateAndGet(slot, endTime, Math::max);
+        }
+    }
+
+    /**
+     * The smallest live item ID greater than afterItemID, or -1.
+     */
+    public int nextLive(int afterItemID) {
+        ItemChunk[] table = items;
+        int from = Math.max(afterItemID + 1, 0);
+        for (int chunkIndex = from >>> CHUNK_BITS; chunkIndex < table.length; chunkIndex++) {
+            ItemChunk chunk = table[chunkIndex];
+            if (chunk == null || chunk.liveCount.get() == 0) {
+                from = (chunkIndex + 1) << CHUNK_BITS;
+                continue;
+            }
+            for (int word = (from & CHUNK_MASK) >>> 6; word < CHUNK_SIZE / 64; word++) {
+                long bits = chunk.live.get(word);
+                if (word == (from & CHUNK_MASK) >>> 6) {
+                    bits &= -1L << (from & 63);
+                }
+                if (bits != 0) {
+                    return (chunkIndex << CHUNK_BITS) + (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            from = (chunkIndex + 1) << CHUNK_BITS;
+        }
+        return -1;
+    }
+
+    public void forEachLive(IntConsumer action) {
+        for (int itemID = nextLive(0); itemID > 0; itemID = nextLive(itemID)) {
+            action.accept(itemID);
+        }
+    }
+
+    public UtilityClass.AuctionItem[] liveItems() {
+        List<UtilityClass.AuctionItem> live = new ArrayList<>(liveCount());
+        forEachLive(itemID -> {
+            UtilityClass.AuctionItem item = get(itemID);
+            if (item != null) {
+                live.add(item);
+            }
+        });
+        return live.toArray(new UtilityClass.AuctionItem[0]);
+    }
+
+    public int liveCount() {
+        int count = 0;
+        for (ItemChunk chunk : items) {
+            if (chunk != null) {
+                count += chunk.liveCount.get();
+            }
+        }
+        return count;
+    }
+
+    // ---- Chunks ----
+
+    private ItemChunk itemChunk(int itemID) {
+        ItemChunk[] table = items;
+        int chunkIndex = itemID >>> CHUNK_BITS;
+        return itemID < 0 || chunkIndex >= table.length ? null : table[chunkIndex];
+    }
+
+    private ItemChunk itemChunkFor(int itemID) {
+        if (itemID <= 0) {
+            throw new IllegalArgumentException("Invalid item ID: " + itemID);
+        }
+        int chunkIndex = itemID >>> CHUNK_BITS;
+        ItemChunk[] table = items;
+        if (chunkIndex < table.length && table[chunkIndex] != null) {
+            return table[chunkIndex];
+        }
+        synchronized (this) {
+            table = items;
+            if (chunkIndex >= table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, chunkIndex + 1));
+            }
+            if (table[chunkIndex] == null) {
+                table[chunkIndex] = new ItemChunk();
+            }
+            items = table;
+            return table[chunkIndex];
+        }
+    }
+
+    private synchronized void dropIfEmpty(int chunkIndex, ItemChunk chunk) {
+        ItemChunk[] table = items;
+        if (table[chunkIndex] == chunk && chunk.liveCount.get() == 0 && chunk.usedCount.get() == CHUNK_SIZE) {
+            table[chunkIndex] = null;
+            items = table;
+        }
+    }
+
+    private AtomicReferenceArray<UtilityClass.User> userChunkFor(int userID) {
+        if (userID < 0) {
+            throw new IllegalArgumentException("Invalid user ID: " + userID);
+        }
+        int chunkIndex = userID >>> CHUNK_BITS;
+        AtomicReferenceArray<UtilityClass.User>[] table = users;
+        if (chunkIndex < table.length && table[chunkIndex] != null) {
+            return table[chunkIndex];
+        }
+        synchronized (this) {
+            table = users;
+            if (chunkIndex >= table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, chunkIndex + 1));
+            }
+            if (table[chunkIndex] == null) {
+                table[chunkIndex] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            }
+            users = table;
+            return table[chunkIndex];
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<UtilityClass.User>[] newUserTable(int size) {
+        return (AtomicReferenceArray<UtilityClass.User>[]) new AtomicReferenceArray[size];
+    }
+
+    private static long pack(int price, int bidderID) {
+        return ((long) price << 32) | (bidderID & 0xFFFFFFFFL);
+    }
+
+    private static int priceOf(long state) { return (int) (state >>> 32); }
+    private static int bidderOf(long state) { return (int) state; }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        return length < 0 ? null : new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static final class ItemChunk {
+        final AtomicLongArray live = new AtomicLongArray(CHUNK_SIZE / 64);
+        // Slots created at least once; IDs are not reused, so a chunk with all of them used and none live is finished
+        final AtomicLongArray used = new AtomicLongArray(CHUNK_SIZE / 64);
+        final AtomicInteger liveCount = new AtomicInteger();
+        final AtomicInteger usedCount = new AtomicInteger();
+        final AtomicLongArray bids = new AtomicLongArray(CHUNK_SIZE);
+        final AtomicLongArray endTimes = new AtomicLongArray(CHUNK_SIZE);
+        final long[] softCloseMillis = new long[CHUNK_SIZE];
+        final int[] owners = new int[CHUNK_SIZE];
+        final int[] reservePrices = new int[CHUNK_SIZE];
+        final int[] textOffsets = new int[CHUNK_SIZE];
+        final AtomicReferenceArray<BidLog> histories = new AtomicReferenceArray<>(CHUNK_SIZE);
+        // Name then description, each an int byte count (-1 for null) and UTF-8 bytes; appended only
+        volatile byte[] text = new byte[INITIAL_TEXT_BYTES];
+        private int textLength;
+
+        boolean isLive(int slot) {
+            return (live.get(slot >>> 6) & (1L << slot)) != 0;
+        }
+
+        /**
+         * Sets the slot's bit; false if it was already set.
+         */
+        boolean setBit(AtomicLongArray bits, int slot) {
+            long mask = 1L << slot;
+            for (;;) {
+                long word = bits.get(slot >>> 6);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(slot >>> 6, word, word | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean clearBit(AtomicLongArray bits, int slot) {
+            long mask = 1L << slot;
+            for (;;) {
+                long word = bits.get(slot >>> 6);
+                if ((word & mask) == 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(slot >>> 6, word, word & ~mask)) {
+                    return true;
+                }
+            }
+        }
+
+        synchronized int appendText(String name, String description) {
+            byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            byte[] descriptionBytes = description == null ? null : description.getBytes(StandardCharsets.UTF_8);
+            int length = 8 + (nameBytes == null ? 0 : nameBytes.length) + (descriptionBytes == null ? 0 : descriptionBytes.length);
+            byte[] area = text;
+            if (textLength + length > area.length) {
+                // Readers keep using the old array until the new one is published; both hold every live slot's text
+                area = Arrays.copyOf(area, Math.max(area.length * 2, textLength + length));
+            }
+            int offset = textLength;
+            int position = put(area, offset, nameBytes);
+            put(area, position, descriptionBytes);
+            textLength += length;
+            text = area;
+            return offset;
+        }
+
+        private static int put(byte[] area, int position, byte[] bytes) {
+            int length = bytes == null ? -1 : bytes.length;
+            area[position] = (byte) (length >>> 24);
+            area[position + 1] = (byte) (length >>> 16);
+            area[position + 2] = (byte) (length >>> 8);
+            area[position + 3] = (byte) length;
+            if (bytes != null) {
+                System.arraycopy(bytes, 0, area, position + 4, bytes.length);
+                return position + 4 + bytes.length;
+            }
+            return position + 4;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Append-only log of the bids accepted on one item, in the order they were recorded.
+ *
+ * Each bid takes three longs in chunks that double in size, so bids are never copied: the price
+ * packed with the bidder, as in AuctionItem, the time it was placed, and an index word holding the
+ * highest price so far and the position of the latest placement time so far. Appending takes no lock:
+ * a writer claims a position, fills it in and then publishes every finished position in order, filling
+ * in its index word, so readers only ever see a complete prefix that never changes.
+ *
+ * Bids that race each other can be recorded slightly out of price and time order. The index words keep
+ * time ranges a binary search, over the latest placement time up to each bid, and let top-k bidders stop
+ * as soon as no earlier bid can beat the k-th best found.
+ */
+public class BidLog {
+
+    public interface Sink {
+        void bid(int bidderID, int price, long placedAt) throws IOException;
+    }
+
+    private static final int WORDS = 3;
+    private static final int FIRST_CHUNK = 4;
+    // Index word of a bid that is filled in but not yet published; 0 means not filled in
+    private static final long WRITTEN = -1;
+
+    // Replaced, never changed, when a chunk is added
+    private volatile AtomicLongArray[] chunks = {new AtomicLongArray(FIRST_CHUNK * WORDS)};
+    // Fields rather than AtomicIntegers: an item with a few bids should cost a few arrays, not more objects
+    private static final AtomicIntegerFieldUpdater<BidLog> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(BidLog.class, "claimed");
+    private static final AtomicIntegerFieldUpdater<BidLog> PUBLISHED = AtomicIntegerFieldUpdater.newUpdater(BidLog.class, "published");
+    private volatile int claimed;
+    private volatile int published;
+    private volatile long closedAt;
+
+    public void append(int bidderID, int price, long placedAt) {
+        int position = CLAIMED.getAndIncrement(this);
+        AtomicLongArray chunk = chunkFor(chunkOf(position));
+        int offset = offsetOf(position) * WORDS;
+        chunk.lazySet(offset, ((long) price << 32) | (bidderID & 0xFFFFFFFFL));
+        chunk.lazySet(offset + 1, placedAt);
+        if (published == position) {
+            // Usual case: every earlier bid is published, and nobody else publishes a bid not marked WRITTEN
+            chunk.lazySet(offset + 2, indexWord(chunk, offset, position));
+            published = position + 1;
+            if (claimed == position + 1) {
+                // Anyone claiming after this sees the bid published and publishes their own
+                return;
+            }
+        } else {
+            chunk.set(offset + 2, WRITTEN);
+        }
+        publish();
+    }
+
+    /**
+     * Appends a replayed bid unless the log already holds it, as when a snapshot overlaps the journal.
+     * Accepted bids on one item all have different prices, each having beaten the highest bid when it was
+     * placed, so the price identifies the bid. Only for replay, where nothing else appends to the log.
+     */
+    public boolean appendIfAbsent(int bidderID, int price, long placedAt) {
+        int size = size();
+        // Present or not, the bid can only sit at or after the first position whose highest price so far reaches it
+        for (int i = firstReaching(price, size); i < size; i++) {
+            if (priceAt(i) == price) {
+                return false;
+            }
+        }
+        append(bidderID, price, placedAt);
+        return true;
+    }
+
+    public int size() {
+        return published;
+    }
+
+    /**
+     * Up to count bids starting at fromIndex, oldest first.
+     */
+    public UtilityClass.BidHistory range(int itemID, int fromIndex, int count) {
+        int size = size();
+        int from = Math.min(Math.max(fromIndex, 0), size);
+        return copy(itemID, from, Math.min(from + Math.max(count, 0), size), size);
+    }
+
+    /**
+     * Up to count bids, oldest first, whose latest placement time so far is at or after fromTime and
+     * before toTime. That is the bid's own time unless it raced a later-stamped bid recorded before it.
+     */
+    public UtilityClass.BidHistory between(int itemID, long fromTime, long toTime, int count) {
+        int size = size();
+        int from = firstAtOrAfter(fromTime, size);
+        int to = Math.max(from, firstAtOrAfter(toTime, size));
+        return copy(itemID, from, Math.min(to, from + Math.max(count, 0)), size);
+    }
+
+    /**
+     * The highest bid of each of the k highest distinct bidders, highest first.
+     */
+    public UtilityClass.BidHistory topBidders(int itemID, int k) {
+        int size = size();
+        int limit = Math.min(Math.max(k, 0), size);
+        int[] bidders = new int[limit];
+        int[] prices = new int[limit];
+        long[] times = new long[limit];
+        int found = 0;
+        // Walking down from the last bid, a bidder's first entry is normally their best; one recorded out of
+        // order can still raise it, so stop only once no earlier bid can beat the k-th best found
+        for (int i = size - 1; i >= 0 && limit > 0; i--) {
+            if (found == limit && maxPriceUpTo(i) <= prices[limit - 1]) {
+                break;
+            }
+            int bidderID = bidderAt(i);
+            int price = priceAt(i);
+            int at = indexOf(bidders, found, bidderID);
+            if (at >= 0 ? price <= prices[at] : found == limit && price <= prices[limit - 1]) {
+                continue;
+            }
+            // Take out the bidder's old entry, or the lowest one to make room, then insert in price order
+            int removed = at >= 0 ? at : found == limit ? limit - 1 : found++;
+            int insert = removed;
+            while (insert > 0 && prices[insert - 1] < price) {
+                insert--;
+            }
+            System.arraycopy(bidders, insert, bidders, insert + 1, removed - insert);
+            System.arraycopy(prices, insert, prices, insert + 1, removed - insert);
+            System.arraycopy(times, insert, times, insert + 1, removed - insert);
+            bidders[insert] = bidderID;
+            prices[insert] = price;
+            times[insert] = timeAt(i);
+        }
+        return new UtilityClass.BidHistory(itemID, Arrays.copyOf(bidders, found), Arrays.copyOf(prices, found),
+            Arrays.copyOf(times, found), 0, size);
+    }
+
+    /**
+     * Calls sink with every bid published so far, oldest first.
+     */
+    public void forEach(Sink sink) throws IOException {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            sink.bid(bidderAt(i), priceAt(i), timeAt(i));
+        }
+    }
+
+    long getClosedAt() {
+        return closedAt;
+    }
+
+    void setClosedAt(long closedAt) {
+        this.closedAt = closedAt;
+    }
+
+    /**
+     * Publishes filled-in bids in order, starting at the first unpublished one. Whoever publishes a bid
+     * goes on to the next, so a writer that finishes ahead of an earlier one leaves its bid to that writer.
+     */
+    private void publish() {
+        for (;;) {
+            int position = published;
+            AtomicLongArray[] table = chunks;
+            int chunkIndex = chunkOf(position);
+            int offset = offsetOf(position) * WORDS;
+            // Not filled in yet, in which case its writer publishes it, or being published by another thread
+            if (chunkIndex >= table.length || table[chunkIndex].get(offset + 2) != WRITTEN) {
+                return;
+            }
+            // Threads racing to publish the same bid compute the same index word
+            table[chunkIndex].set(offset + 2, indexWord(table[chunkIndex], offset, position));
+            PUBLISHED.compareAndSet(this, position, position + 1);
+        }
+    }
+
+    /**
+     * The index word of a filled-in bid whose predecessors are all published.
+     */
+    private long indexWord(AtomicLongArray chunk, int offset, int position) {
+        int maxPrice = (int) (chunk.get(offset) >>> 32);
+        int latest = position;
+        if (position > 0) {
+            long previous = offset > 0 ? chunk.get(offset - WORDS + 2) : word(position - 1, 2);
+            maxPrice = Math.max(maxPrice, (int) (previous >>> 32));
+            int previousLatest = (int) previous - 1;
+            long latestTime = previousLatest == position - 1 && offset > 0 ? chunk.get(offset - WORDS + 1) : timeAt(previousLatest);
+            if (latestTime > chunk.get(offset + 1)) {
+                latest = previousLatest;
+            }
+        }
+        return ((long) maxPrice << 32) | (latest + 1);
+    }
+
+    private AtomicLongArray chunkFor(int chunkIndex) {
+        AtomicLongArray[] table = chunks;
+        if (chunkIndex < table.length) {
+            return table[chunkIndex];
+        }
+        // Once per doubling, so a lock is fine here
+        synchronized (this) {
+            table = chunks;
+            if (chunkIndex >= table.length) {
+                table = Arrays.copyOf(table, chunkIndex + 1);
+                for (int i = chunks.length; i <= chunkIndex; i++) {
+                    table[i] = new AtomicLongArray((FIRST_CHUNK << i) * WORDS);
+                }
+                chunks = table;
+            }
+            return table[chunkIndex];
+        }
+    }
+
+    private UtilityClass.BidHistory copy(int itemID, int from, int to, int size) {
+        int count = to - from;
+        int[] bidders = new int[count];
+        int[] prices = new int[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            bidders[i] = bidderAt(from + i);
+            prices[i] = priceAt(from + i);
+            times[i] = timeAt(from + i);
+        }
+        return new UtilityClass.BidHistory(itemID, bidders, prices, times, from, size);
+    }
+
+    private int firstAtOrAfter(long time, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (latestTimeUpTo(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int firstReaching(int price, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxPriceUpTo(mid) < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Chunk c holds FIRST_CHUNK << c bids, starting at position FIRST_CHUNK * (2^c - 1)
+    private static int chunkOf(int position) { return 31 - Integer.numberOfLeadingZeros(position / FIRST_CHUNK + 1); }
+    private static int offsetOf(int position) { return position + FIRST_CHUNK - (FIRST_CHUNK << chunkOf(position)); }
+
+    private long word(int position, int word) { return chunks[chunkOf(position)].get(offsetOf(position) * WORDS + word); }
+    private int priceAt(int position) { return (int) (word(position, 0) >>> 32); }
+    private int bidderAt(int position) { return (int) word(position, 0); }
+    private long timeAt(int position) { return word(position, 1); }
+    private int maxPriceUpTo(int position) { return (int) (word(position, 2) >>> 32); }
+    private long latestTimeUpTo(int position) { return timeAt((int) word(position, 2) - 1); }
+}
@@ -0,0 +1,238 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Client for {@link BinaryAuctionServer}.
+ *
+ * One connection is shared by any number of sessions and threads. Every call has an async form that
+ * returns as soon as the request is written, so callers can pipeline many requests before waiting,
+ * and a blocking form that fails with RemoteException just like the RMI interface. Sessions come from
+ * the usual RMI register/challenge/authenticate handshake.
+ */
+public class BinaryAuctionClient implements Closeable {
+
+    /**
+     * A user ID and its token, decoded once into the two longs sent with every request.
+     */
+    public static class Session {
+        private final int userID;
+        private final long tokenHigh;
+        private final long tokenLow;
+
+        public Session(int userID, String token) {
+            if (token == null || token.length() != 32) {
+                throw new IllegalArgumentException("Expected a 32 hex digit token");
+            }
+            this.userID = userID;
+            this.tokenHigh = Long.parseUnsignedLong(token.substring(0, 16), 16);
+            this.tokenLow = Long.parseUnsignedLong(token.substring(16), 16);
+        }
+
+        public int getUserID() { return userID; }
+    }
+
+    private final SocketChannel channel;
+    private final AtomicInteger requestIDs = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private ByteBuffer requestBuffer = ByteBuffer.allocate(4096);
+    private volatile boolean closed;
+
+    public BinaryAuctionClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.reader = new Thread(this::readLoop, "binary-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // ---- Async calls ----
+
+    public CompletableFuture<Boolean> bidAsync(Session session, int itemID, int price) {
+        return send(session, BinaryProtocol.BID, 8, b -> b.putInt(itemID).putInt(price), r -> r.get() != 0);
+    }
+
+    public CompletableFuture<UtilityClass.AuctionItem> getSpecAsync(Session session, int itemID) {
+        return send(session, BinaryProtocol.GET_SPEC, 4, b -> b.putInt(itemID), BinaryProtocol::getItem);
+    }
+
+    public CompletableFuture<Integer> newAuctionAsync(Session session, UtilityClass.AuctionSaleItem item) {
+        int length = BinaryProtocol.stringLength(item.getName()) + BinaryProtocol.stringLength(item.getDescription()) + 4 + 16;
+        return send(session, BinaryProtocol.NEW_AUCTION, length, b -> {
+            BinaryProtocol.putString(b, item.getName());
+            BinaryProtocol.putString(b, item.getDescription());
+            b.putInt(item.getReservePrice()).putLong(item.getEndTime()).putLong(item.getSoftCloseMillis());
+        }, ByteBuffer::getInt);
+    }
+
+    public CompletableFuture<UtilityClass.AuctionResult> closeAuctionAsync(Session session, int itemID) {
+        return send(session, BinaryProtocol.CLOSE_AUCTION, 4, b -> b.putInt(itemID),
+            r -> new UtilityClass.AuctionResult(BinaryProtocol.getString(r), r.getInt()));
+    }
+
+    public CompletableFuture<boolean[]> bidBatchAsync(Session session, int[] itemIDs, int[] prices) {
+        if (itemIDs.length != prices.length) {
+            throw new IllegalArgumentException(itemIDs.length + " item IDs but " + prices.length + " prices");
+        }
+        return send(session, BinaryProtocol.BID_BATCH, 4 + 8 * itemIDs.length, b -> {
+            b.putInt(itemIDs.length);
+            for (int i = 0; i < itemIDs.length; i++) {
+                b.putInt(itemIDs[i]).putInt(prices[i]);
+            }
+        }, r -> {
+            boolean[] accepted = new boolean[r.getInt()];
+            for (int i = 0; i < accepted.length; i++) {
+                accepted[i] = r.get() != 0;
+            }
+            return accepted;
+        });
+    }
+
+    public CompletableFuture<UtilityClass.ItemPage> listItemsPageAsync(Session session, int afterItemID, int pageSize) {
+        return send(session, BinaryProtocol.LIST_PAGE, 8, b -> b.putInt(afterItemID).putInt(pageSize), r -> {
+            UtilityClass.AuctionItem[] items = new UtilityClass.AuctionItem[r.getInt()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = BinaryProtocol.getItem(r);
+            }
+            return new UtilityClass.ItemPage(items, r.getInt(), r.get() != 0);
+        });
+    }
+
+    // ---- Blocking calls ----
+
+    public boolean bid(Session session, int itemID, int price) throws RemoteException {
+        return await(bidAsync(session, itemID, price));
+    }
+
+    public UtilityClass.AuctionItem getSpec(Session session, int itemID) throws RemoteException {
+        return await(getSpecAsync(session, itemID));
+    }
+
+    public int newAuction(Session session, UtilityClass.AuctionSaleItem item) throws RemoteException {
+        return await(newAuctionAsync(session, item));
+    }
+
+    public UtilityClass.AuctionResult closeAuction(Session session, int itemID) throws RemoteException {
+        return await(closeAuctionAsync(session, itemID));
+    }
+
+    public boolean[] bidBatch(Session session, int[] itemIDs, int[] prices) throws RemoteException {
+        return await(bidBatchAsync(session, itemIDs, prices));
+    }
+
+    public UtilityClass.ItemPage listItemsPage(Session session, int afterItemID, int pageSize) throws RemoteException {
+        return await(listItemsPageAsync(session, afterItemID, pageSize));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+        failPending(new RemoteException("Binary connection closed"));
+    }
+
+    // ---- Framing ----
+
+    private <T> CompletableFuture<T> send(Session session, byte op, int payloadLength,
+                                          Consumer<ByteBuffer> payload, Function<ByteBuffer, T> decoder) {
+        int requestID = requestIDs.incrementAndGet();
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        pending.put(requestID, response);
+        try {
+            synchronized (this) {
+                int needed = 4 + BinaryProtocol.REQUEST_HEADER_LENGTH + payloadLength;
+                if (requestBuffer.capacity() < needed) {
+                    requestBuffer = ByteBuffer.allocate(Math.max(needed, requestBuffer.capacity() * 2));
+                }
+                ByteBuffer buffer = requestBuffer;
+                buffer.clear();
+                buffer.putInt(0).putInt(requestID).put(op).putInt(session.userID)
+                    .putLong(session.tokenHigh).putLong(session.tokenLow);
+                payload.accept(buffer);
+                buffer.putInt(0, buffer.position() - 4);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestID);
+            response.completeExceptionally(new RemoteException("Binary request failed", e));
+        }
+        return response.thenApply(decoder);
+    }
+
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(4 + BinaryProtocol.RESPONSE_HEADER_LENGTH);
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length < BinaryProtocol.RESPONSE_HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                int requestID = header.getInt(4);
+                byte status = header.get(8);
+                ByteBuffer payload = ByteBuffer.allocate(length - BinaryProtocol.RESPONSE_HEADER_LENGTH);
+                readFully(payload);
+                payload.flip();
+                CompletableFuture<ByteBuffer> response = pending.remove(requestID);
+                if (response == null) {
+                    continue;
+                }
+                if (status == BinaryProtocol.OK) {
+                    response.complete(payload);
+                } else {
+                    response.completeExceptionally(new RemoteException(BinaryProtocol.getString(payload)));
+                }
+            }
+        } catch (IOException e) {
+            failPending(new RemoteException("Binary connection lost", e));
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    private void failPending(RemoteException cause) {
+        for (Integer requestID : pending.keySet()) {
+            CompletableFuture<ByteBuffer> response = pending.remove(requestID);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> response) throws RemoteException {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw new RemoteException("Binary request failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting for binary response", e);
+        }
+    }
+}
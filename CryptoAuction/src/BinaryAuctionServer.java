@@ -0,0 +1,507 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking socket front end for a Server, speaking {@link BinaryProtocol}.
+ *
+ * An acceptor thread hands each connection to one of a fixed set of selector threads. Requests are
+ * decoded straight out of the connection's read buffer and executed on that selector thread against
+ * the same Server core the RMI interface uses, so both transports see the same users, sessions and
+ * items. Responses are written in request order, which lets clients pipeline freely; when a client
+ * stops reading, the connection stops being read until its pending output drains.
+ *
+ * Requests can instead be handed to an executor (for instance one virtual thread per task on a JDK
+ * that has them), so a slow call does not hold up every other connection on its selector thread.
+ * Each connection then has at most one task running at a time, which executes its queued requests in
+ * order and passes the responses back to the selector thread to write.
+ *
+ * Registration and the challenge/response handshake stay on RMI: tokens it issues are valid here.
+ */
+public class BinaryAuctionServer implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+    private static final int MAX_QUEUED_REQUESTS = 1024;
+
+    private final Server server;
+    private final ServerMetrics metrics;
+    private final Executor executor;
+    private final ServerSocketChannel serverChannel;
+    private final IoLoop[] loops;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    private BinaryAuctionServer(Server server, int port, int ioThreads, Executor executor) throws IOException {
+        this.server = server;
+        this.metrics = server.getMetrics();
+        this.executor = executor;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        this.loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop(i);
+            loops[i].start();
+        }
+        this.acceptor = new Thread(this::acceptLoop, "binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Binds port (0 for any free port) and starts serving.
+     */
+    public static BinaryAuctionServer start(Server server, int port, int ioThreads) throws IOException {
+        return new BinaryAuctionServer(server, port, ioThreads, null);
+    }
+
+    /**
+     * As above, running requests on executor instead of on the selector threads; null runs them inline.
+     */
+    public static BinaryAuctionServer start(Server server, int port, int ioThreads, Executor executor) throws IOException {
+        return new BinaryAuctionServer(server, port, ioThreads, executor);
+    }
+
+    /**
+     * The executor named by auction.binary.executor: "inline" (null), "virtual" for a virtual thread per
+     * request where the JDK supports them, or "platform" for a cached pool of daemon threads.
+     */
+    public static Executor executorFor(String name) {
+        switch (name) {
+            case "inline":
+                return null;
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("Virtual threads need JDK 21 or later (running " + Runtime.version()
+                        + "); binary requests run on the selector threads");
+                    return null;
+                }
+            case "platform":
+                AtomicInteger threads = new AtomicInteger();
+                return Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "binary-worker-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + name);
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next++ % loops.length].add(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Binary transport accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private class IoLoop extends Thread {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+        IoLoop(int index) throws IOException {
+            super("binary-io-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Called by a connection's worker when it has responses for this thread to write.
+         */
+        void requestFlush(Connection connection) {
+            flushes.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        Connection connection = new Connection(channel, this);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+                    Connection flushed;
+                    while ((flushed = flushes.poll()) != null) {
+                        if (flushed.key.isValid()) {
+                            try {
+                                flushed.flush(flushed.key);
+                            } catch (IOException e) {
+                                flushed.key.cancel();
+                                flushed.channel.close();
+                            }
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read(key);
+                            } else if (key.isWritable()) {
+                                connection.flush(key);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            key.cancel();
+                            connection.channel.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Binary transport I/O loop failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        key.channel().close();
+                    } catch (IOException ignored) {
+                        // closing anyway
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final IoLoop loop;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        // Responses are built here, by the selector thread or, with an executor, by the connection's worker
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        // With an executor: responses the worker has finished, written out by the selector thread
+        private ByteBuffer outbound;
+        private final Queue<ByteBuffer> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Connection(SocketChannel channel, IoLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            this.outbound = executor == null ? null : ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+
+        void read(SelectionKey key) throws IOException {
+            if (channel.read(in) < 0) {
+                key.cancel();
+                channel.close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < BinaryProtocol.REQUEST_HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                int frameEnd = in.position() + 4 + length;
+                ByteBuffer frame = in.duplicate();
+                frame.position(in.position() + 4).limit(frameEnd);
+                if (executor == null) {
+                    handle(frame);
+                } else {
+                    // The read buffer is reused, so the worker gets its own copy of the frame
+                    requests.add(ByteBuffer.allocate(length).put(frame).flip());
+                    queued.incrementAndGet();
+                }
+                in.position(frameEnd);
+            }
+            if (executor != null) {
+                schedule();
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(in.capacity() * 2, BinaryProtocol.MAX_FRAME_LENGTH + 4));
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+            flush(key);
+        }
+
+        void flush(SelectionKey key) throws IOException {
+            int pending;
+            if (executor == null) {
+                pending = write(out);
+            } else {
+                synchronized (this) {
+                    pending = write(outbound);
+                }
+            }
+            // With an executor, stop reading while the worker is too far behind
+            int read = queued.get() < MAX_QUEUED_REQUESTS ? SelectionKey.OP_READ : 0;
+            if (pending == 0) {
+                key.interestOps(read);
+            } else if (pending > MAX_PENDING_OUTPUT) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(read | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private int write(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            channel.write(buffer);
+            buffer.compact();
+            return buffer.position();
+        }
+
+        private void schedule() {
+            if (!requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Runs on the executor: handles queued requests in order and hands the responses to the selector thread.
+         */
+        private void drain() {
+            try {
+                ByteBuffer frame;
+                while ((frame = requests.poll()) != null) {
+                    try {
+                        handle(frame);
+                    } finally {
+                        queued.decrementAndGet();
+                    }
+                    if (out.position() >= INITIAL_BUFFER_SIZE || requests.isEmpty()) {
+                        publish();
+                    }
+                }
+            } finally {
+                // Cleared even if a request failed, or the connection would never be drained again
+                scheduled.set(false);
+                // A request queued after the last poll but before the flag was cleared is picked up here
+                schedule();
+            }
+        }
+
+        private void publish() {
+            synchronized (this) {
+                out.flip();
+                if (outbound.remaining() < out.remaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(outbound.capacity() * 2, outbound.position() + out.remaining()));
+                    outbound.flip();
+                    larger.put(outbound);
+                    outbound = larger;
+                }
+                outbound.put(out);
+                out.clear();
+            }
+            loop.requestFlush(this);
+        }
+
+        // The permit is only held while the request executes, hence never referenced in its block
+        @SuppressWarnings("try")
+        private void handle(ByteBuffer frame) {
+            int requestID = frame.getInt();
+            byte op = frame.get();
+            int userID = frame.getInt();
+            long tokenHigh = frame.getLong();
+            long tokenLow = frame.getLong();
+            ServerMetrics.Operation operation = operationOf(op);
+            int responseStart = out.position();
+            long start = metrics.start();
+            try {
+                if (operation == null) {
+                    throw new RemoteException("Unknown operation: " + op);
+                }
+                int cost = op == BinaryProtocol.BID_BATCH && frame.remaining() >= 4 ? frame.getInt(frame.position()) : 1;
+                try (AdmissionControl.Permit permit = server.authorize(operation, userID, tokenHigh, tokenLow, cost)) {
+                    execute(op, userID, frame, requestID);
+                }
+            } catch (RemoteException e) {
+                if (operation != null) {
+                    metrics.failed(operation, e);
+                }
+                writeError(responseStart, requestID, e.getMessage());
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                writeError(responseStart, requestID, "Malformed request: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Anything else is a server bug: fail this request but keep the connection and its other requests
+                RemoteException failure = new RemoteException("Internal error", e);
+                if (operation != null) {
+                    metrics.failed(operation, failure);
+                }
+                writeError(responseStart, requestID, failure.getMessage());
+            } finally {
+                if (operation != null) {
+                    metrics.record(operation, start);
+                }
+            }
+        }
+
+        private void execute(byte op, int userID, ByteBuffer frame, int requestID) throws RemoteException {
+            switch (op) {
+                case BinaryProtocol.BID: {
+                    boolean accepted = server.placeBid(userID, frame.getInt(), frame.getInt());
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, 1);
+                    out.put((byte) (accepted ? 1 : 0));
+                    endResponse(start);
+                    break;
+                }
+                case BinaryProtocol.GET_SPEC: {
+                    UtilityClass.AuctionItem item = server.findItem(frame.getInt());
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, BinaryProtocol.itemLength(item));
+                    BinaryProtocol.putItem(out, item);
+                    endResponse(start);
+                    break;
+                }
+                case BinaryProtocol.NEW_AUCTION: {
+                    UtilityClass.AuctionSaleItem item = new UtilityClass.AuctionSaleItem(BinaryProtocol.getString(frame),
+                        BinaryProtocol.getString(frame), frame.getInt(), frame.getLong(), frame.getLong());
+                    int itemID = server.openAuction(userID, item);
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, 4);
+                    out.putInt(itemID);
+                    endResponse(start);
+                    break;
+                }
+                case BinaryProtocol.CLOSE_AUCTION: {
+                    UtilityClass.AuctionResult result = server.settleAuction(userID, frame.getInt());
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, BinaryProtocol.stringLength(result.getWinningEmail()) + 4);
+                    BinaryProtocol.putString(out, result.getWinningEmail());
+                    out.putInt(result.getWinningPrice());
+                    endResponse(start);
+                    break;
+                }
+                case BinaryProtocol.BID_BATCH: {
+                    int count = frame.getInt();
+                    if (count < 0 || count > frame.remaining() / 8) {
+                        throw new IllegalArgumentException("Invalid batch size " + count);
+                    }
+                    int[] itemIDs = new int[count];
+                    int[] prices = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        itemIDs[i] = frame.getInt();
+                        prices[i] = frame.getInt();
+                    }
+                    boolean[] accepted = server.placeBids(userID, itemIDs, prices);
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, 4 + count);
+                    out.putInt(count);
+                    for (boolean a : accepted) {
+                        out.put((byte) (a ? 1 : 0));
+                    }
+                    endResponse(start);
+                    break;
+                }
+                case BinaryProtocol.LIST_PAGE: {
+                    UtilityClass.ItemPage page = server.itemPage(frame.getInt(), frame.getInt());
+                    int length = 4 + 4 + 1;
+                    for (UtilityClass.AuctionItem item : page.getItems()) {
+                        length += BinaryProtocol.itemLength(item);
+                    }
+                    int start = ensureResponse(requestID, BinaryProtocol.OK, length);
+                    out.putInt(page.getItems().length);
+                    for (UtilityClass.AuctionItem item : page.getItems()) {
+                        BinaryProtocol.putItem(out, item);
+                    }
+                    out.putInt(page.getNextCursor());
+                    out.put((byte) (page.hasMore() ? 1 : 0));
+                    endResponse(start);
+                    break;
+                }
+                default:
+                    throw new RemoteException("Unknown operation: " + op);
+            }
+        }
+
+        private void writeError(int responseStart, int requestID, String message) {
+            out.position(responseStart);
+            int start = ensureResponse(requestID, BinaryProtocol.ERROR, BinaryProtocol.stringLength(message));
+            BinaryProtocol.putString(out, message);
+            endResponse(start);
+        }
+
+        /**
+         * Makes room for a response with up to payloadLength bytes of payload and writes its header,
+         * returning the frame's start position for {@link #endResponse}.
+         */
+        private int ensureResponse(int requestID, byte status, int payloadLength) {
+            int needed = 4 + BinaryProtocol.RESPONSE_HEADER_LENGTH + payloadLength;
+            if (out.remaining() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            int start = out.position();
+            out.putInt(0);
+            out.putInt(requestID);
+            out.put(status);
+            return start;
+        }
+
+        private void endResponse(int start) {
+            out.putInt(start, out.position() - start - 4);
+        }
+    }
+
+    private static ServerMetrics.Operation operationOf(byte op) {
+        switch (op) {
+            case BinaryProtocol.BID: return ServerMetrics.Operation.BID;
+            case BinaryProtocol.GET_SPEC: return ServerMetrics.Operation.GET_SPEC;
+            case BinaryProtocol.NEW_AUCTION: return ServerMetrics.Operation.NEW_AUCTION;
+            case BinaryProtocol.CLOSE_AUCTION: return ServerMetrics.Operation.CLOSE_AUCTION;
+            case BinaryProtocol.BID_BATCH: return ServerMetrics.Operation.BID_BATCH;
+            case BinaryProtocol.LIST_PAGE: return ServerMetrics.Operation.LIST_ITEMS_PAGE;
+            default: return null;
+        }
+    }
+}
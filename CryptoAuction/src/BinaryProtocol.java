@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by BinaryAuctionServer and BinaryAuctionClient.
+ *
+ * Every frame starts with its length (excluding the length field itself) and a client-chosen request ID
+ * that the response echoes, so a client may pipeline any number of requests on one connection and
+ * requests from many sessions may share it; each request carries its own user ID and token.
+ *
+ * Request:  [int length][int requestID][byte op][int userID][long tokenHigh][long tokenLow][payload]
+ * Response: [int length][int requestID][byte status][payload]
+ *
+ * Strings are an int byte count followed by UTF-8 bytes, with -1 for null. Integers are big-endian.
+ */
+public final class BinaryProtocol {
+
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+    public static final int REQUEST_HEADER_LENGTH = 4 + 1 + 4 + 8 + 8;
+    public static final int RESPONSE_HEADER_LENGTH = 4 + 1;
+
+    // Operations
+    public static final byte BID = 1;            // [int itemID][int price] -> [byte accepted]
+    public static final byte GET_SPEC = 2;       // [int itemID] -> [item]
+    public static final byte NEW_AUCTION = 3;    // [string name][string description][int reserve][long endTime][long softClose] -> [int itemID]
+    public static final byte CLOSE_AUCTION = 4;  // [int itemID] -> [string winnerEmail][int price]
+    public static final byte BID_BATCH = 5;      // [int n]([int itemID][int price])*n -> [int n][byte accepted]*n
+    public static final byte LIST_PAGE = 6;      // [int afterItemID][int pageSize] -> [int n][item]*n[int nextCursor][byte hasMore]
+
+    // Response status
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;          // [string message]
+
+    private BinaryProtocol() {
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds frame");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public static int stringLength(String value) {
+        return 4 + (value == null ? 0 : value.length() * 3);
+    }
+
+    /**
+     * Item layout: [int itemID][string name][string description][int reserve][int highestBid][int highestBidderID][long endTime]
+     */
+    public static void putItem(ByteBuffer buffer, UtilityClass.AuctionItem item) {
+        buffer.putInt(item.getItemID());
+        putString(buffer, item.getName());
+        putString(buffer, item.getDescription());
+        buffer.putInt(item.getReservePrice());
+        buffer.putInt(item.getHighestBid());
+        buffer.putInt(item.getHighestBidderID());
+        buffer.putLong(item.getEndTime());
+    }
+
+    public static UtilityClass.AuctionItem getItem(ByteBuffer buffer) {
+        UtilityClass.AuctionItem item = new UtilityClass.AuctionItem(buffer.getInt(), getString(buffer), getString(buffer), buffer.getInt());
+        int highestBid = buffer.getInt();
+        int highestBidderID = buffer.getInt();
+        if (highestBid > 0) {
+            item.offerBid(highestBidderID, highestBid);
+        }
+        item.setEndTime(buffer.getLong());
+        return item;
+    }
+
+    /**
+     * Upper bound on the encoded size of an item, used to size buffers before writing.
+     */
+    public static int itemLength(UtilityClass.AuctionItem item) {
+        return 4 + stringLength(item.getName()) + stringLength(item.getDescription()) + 12 + 8;
+    }
+}
@@ -1,12 +1,26 @@
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ClientTest {
 
@@ -34,10 +48,28 @@ public class ClientTest {
             int auctionItemId = testCreateAuction(userId, "Laptop", "High-end gaming laptop", 1000, tokenInfo.getToken());
             testListAuctionItems(userId, tokenInfo.getToken());
             testPlaceBid(userId, auctionItemId, 1200, tokenInfo.getToken());
+            testBatchOperations(userId, tokenInfo.getToken());
+            testReservePrice(userId, tokenInfo.getToken());
+            testPagedAndDeltaListing(userId, tokenInfo.getToken());
+            testSearch(userId, tokenInfo.getToken());
+            testBidHistory(userId, tokenInfo.getToken());
+            testBinaryTransport(userId, tokenInfo.getToken());
+            testNotifications(userId, tokenInfo.getToken());
+            testWatchCleanup();
             testCloseAuction(userId, auctionItemId, tokenInfo.getToken());
 
+            testSessionRefresh();
             testTokenExpiration(userId, tokenInfo.getToken());
             testUnauthorizedAccess(userId, auctionItemId);
+            testSignatureSchemes();
+            testTimedAuctions();
+            testBidHistoryRecovery();
+            testJournalRecovery();
+            testReplication();
+            testReplicationJoinUnderLoad();
+            testShardedEngine();
+            testAdmissionControl();
+            testAdminMetrics();
 
             testMultipleClients();
 
@@ -77,10 +109,291 @@ public class ClientTest {
         System.out.println("Placed bid of " + price + " on item ID " + itemId);
     }
 
+    private void testBatchOperations(int userId, String token) throws RemoteException {
+        UtilityClass.AuctionSaleItem[] saleItems = {
+            new UtilityClass.AuctionSaleItem("Monitor", "27-inch display", 200),
+            new UtilityClass.AuctionSaleItem("Keyboard", "Mechanical keyboard", 50)
+        };
+        int[] itemIds = server.newAuctionBatch(userId, saleItems, token);
+        if (itemIds.length != 2 || itemIds[0] <= 0 || itemIds[1] <= 0) throw new AssertionError("FAILED: Batch auction IDs should be positive.");
+
+        boolean[] results = server.bidBatch(userId, new int[] { itemIds[0], itemIds[1], itemIds[1], -1 }, new int[] { 250, 80, 70, 100 }, token);
+        if (!results[0] || !results[1]) throw new AssertionError("FAILED: Valid batch bids should be accepted.");
+        if (results[2] || results[3]) throw new AssertionError("FAILED: Low bid and unknown item should be rejected per entry.");
+
+        UtilityClass.AuctionItem[] specs = server.getSpecBatch(userId, new int[] { itemIds[0], itemIds[1], -1 }, token);
+        if (specs[0].getHighestBid() != 250 || specs[1].getHighestBid() != 80 || specs[2] != null) {
+            throw new AssertionError("FAILED: Batch specs should reflect batch bids.");
+        }
+        System.out.println("Batch operations on items " + itemIds[0] + " and " + itemIds[1] + " passed.");
+    }
+
+    private void testPagedAndDeltaListing(int userId, String token) throws RemoteException {
+        UtilityClass.ItemDelta baseline = server.listChanges(userId, 0, token);
+        while (baseline.hasMore()) {
+            baseline = server.listChanges(userId, baseline.getVersion(), token);
+        }
+        int lastSeen = 0;
+        int listed = 0;
+        UtilityClass.ItemPage page;
+        do {
+            page = server.listItemsPage(userId, lastSeen, 1, token);
+            for (UtilityClass.AuctionItem item : page.getItems()) {
+                if (item.getItemID() <= lastSeen) throw new AssertionError("FAILED: Pages should be ordered by item ID.");
+                lastSeen = item.getItemID();
+                listed++;
+            }
+        } while (page.hasMore());
+        if (listed != server.listItems(userId, token).length) throw new AssertionError("FAILED: Paging should visit every item.");
+
+        // A burst of changes comes back a page of items at a time, each call advancing the version
+        UtilityClass.AuctionSaleItem[] burst = new UtilityClass.AuctionSaleItem[1500];
+        Arrays.fill(burst, new UtilityClass.AuctionSaleItem("Poster", "Reprint", 0));
+        server.newAuctionBatch(userId, burst, token);
+        int polls = 0;
+        int burstSeen = 0;
+        do {
+            baseline = server.listChanges(userId, baseline.getVersion(), token);
+            if (baseline.getChangedItems().length > 1000) throw new AssertionError("FAILED: A delta should hold at most one page of items.");
+            burstSeen += baseline.getChangedItems().length;
+            polls++;
+        } while (baseline.hasMore());
+        if (polls < 2 || burstSeen != burst.length) throw new AssertionError("FAILED: Polling should page through every change, got " + burstSeen);
+
+        int itemId = testCreateAuction(userId, "Headphones", "Noise cancelling", 100, token);
+        testPlaceBid(userId, itemId, 150, token);
+        UtilityClass.ItemDelta delta = server.listChanges(userId, baseline.getVersion(), token);
+        if (delta.isResyncRequired() || delta.getChangedItems().length != 1 || delta.getChangedItems()[0].getHighestBid() != 150) {
+            throw new AssertionError("FAILED: Delta should contain only the new, rebid item.");
+        }
+        server.closeAuction(userId, itemId, token);
+        delta = server.listChanges(userId, delta.getVersion(), token);
+        if (delta.getClosedItemIDs().length != 1 || delta.getClosedItemIDs()[0] != itemId) {
+            throw new AssertionError("FAILED: Delta should report the closed item.");
+        }
+        System.out.println("Paged listing of " + listed + " items and delta polling passed.");
+    }
+
+    private void testSearch(int userId, String token) throws RemoteException {
+        // A word no other run's items contain, so the test also passes against a recovered journal
+        String marker = "lot" + UUID.randomUUID().toString().replace("-", "");
+        int gaming = testCreateAuction(userId, "Gaming Laptop", "16GB RAM, " + marker, 0, token);
+        int office = testCreateAuction(userId, "Office laptop", "Lightweight " + marker, 0, token);
+        testCreateAuction(userId, "Laptop bag", "Fits 15 inch, " + marker, 0, token);
+        testPlaceBid(userId, gaming, 1200, token);
+        testPlaceBid(userId, office, 800, token);
+
+        if (server.search(userId, new UtilityClass.SearchQuery("LAPTOP " + marker), 0, 10, token).getItems().length != 3) {
+            throw new AssertionError("FAILED: Word search should match names and descriptions case-insensitively.");
+        }
+        UtilityClass.ItemPage underBudget = server.search(userId, new UtilityClass.SearchQuery(marker, null, 1, 1500), 0, 10, token);
+        if (underBudget.getItems().length != 2) throw new AssertionError("FAILED: Price range should skip unbid and out of range items.");
+        UtilityClass.ItemPage prefixed = server.search(userId, new UtilityClass.SearchQuery(marker, "gam", 0, Integer.MAX_VALUE), 0, 10, token);
+        if (prefixed.getItems().length != 1 || prefixed.getItems()[0].getItemID() != gaming) {
+            throw new AssertionError("FAILED: Prefix search should match word starts.");
+        }
+
+        int lastSeen = 0;
+        int found = 0;
+        UtilityClass.ItemPage page;
+        do {
+            page = server.search(userId, new UtilityClass.SearchQuery(marker), lastSeen, 1, token);
+            for (UtilityClass.AuctionItem item : page.getItems()) {
+                if (item.getItemID() <= lastSeen) throw new AssertionError("FAILED: Search pages should be ordered by item ID.");
+                lastSeen = item.getItemID();
+                found++;
+            }
+        } while (page.hasMore());
+        if (found != 3) throw new AssertionError("FAILED: Paging through search results should visit every match.");
+
+        server.closeAuction(userId, office, token);
+        testPlaceBid(userId, gaming, 1600, token);
+        if (server.search(userId, new UtilityClass.SearchQuery(marker, null, 1, 1500), 0, 10, token).getItems().length != 0) {
+            throw new AssertionError("FAILED: Search should follow bids and closed auctions.");
+        }
+
+        // Enough items for the words' lists to be dense: "even odd" never matches, "even third" is 800 of them
+        String even = "even" + marker;
+        String odd = "odd" + marker;
+        String third = "third" + marker;
+        UtilityClass.AuctionSaleItem[] bulk = new UtilityClass.AuctionSaleItem[2400];
+        for (int i = 0; i < bulk.length; i++) {
+            bulk[i] = new UtilityClass.AuctionSaleItem("Bulk lot", (i % 2 == 0 ? even : odd) + (i % 3 != 0 ? " " + third : ""), 0);
+        }
+        server.newAuctionBatch(userId, bulk, token);
+        if (server.search(userId, new UtilityClass.SearchQuery(even + " " + odd), 0, 10, token).getItems().length != 0) {
+            throw new AssertionError("FAILED: Words that never occur together should not match.");
+        }
+        lastSeen = 0;
+        found = 0;
+        do {
+            page = server.search(userId, new UtilityClass.SearchQuery(third + " " + even), lastSeen, 100, token);
+            for (UtilityClass.AuctionItem item : page.getItems()) {
+                if (item.getItemID() <= lastSeen || !item.getDescription().equals(even + " " + third)) {
+                    throw new AssertionError("FAILED: Dense word lists should intersect in item ID order.");
+                }
+                lastSeen = item.getItemID();
+                found++;
+            }
+        } while (page.hasMore());
+        if (found != 800) throw new AssertionError("FAILED: Dense word lists should intersect to every common item, got " + found);
+        System.out.println("Search by word, prefix and price range passed.");
+    }
+
+    private void testBinaryTransport(int userId, String token) throws Exception {
+        BinaryAuctionClient client;
+        try {
+            client = new BinaryAuctionClient("localhost", Integer.getInteger("auction.binary.port", 1100));
+        } catch (java.net.ConnectException e) {
+            System.out.println("Binary transport not enabled on the server, skipping.");
+            return;
+        }
+        try (BinaryAuctionClient binary = client) {
+            BinaryAuctionClient.Session session = new BinaryAuctionClient.Session(userId, token);
+            int itemId = binary.newAuction(session, new UtilityClass.AuctionSaleItem("Guitar", "Listed over the binary transport", 100));
+            if (server.getSpec(userId, itemId, token) == null) throw new AssertionError("FAILED: RMI should see items created over binary.");
+
+            List<java.util.concurrent.CompletableFuture<Boolean>> pipelined = new ArrayList<>();
+            for (int price = 101; price <= 200; price++) {
+                pipelined.add(binary.bidAsync(session, itemId, price));
+            }
+            for (java.util.concurrent.CompletableFuture<Boolean> accepted : pipelined) {
+                if (!accepted.get()) throw new AssertionError("FAILED: Pipelined ascending bids should all be accepted.");
+            }
+            testPlaceBid(userId, itemId, 250, token);
+            if (binary.getSpec(session, itemId).getHighestBid() != 250) throw new AssertionError("FAILED: Binary should see bids placed over RMI.");
+            if (binary.listItemsPage(session, itemId - 1, 10).getItems().length == 0) throw new AssertionError("FAILED: Binary page should list the item.");
+            try {
+                binary.bid(new BinaryAuctionClient.Session(userId, "0123456789abcdef0123456789abcdef"), itemId, 300);
+                throw new AssertionError("FAILED: Binary transport should reject a wrong token.");
+            } catch (RemoteException e) {
+                System.out.println("Binary transport rejected a wrong token as expected.");
+            }
+            UtilityClass.AuctionResult result = binary.closeAuction(session, itemId);
+            if (result.getWinningPrice() != 250) throw new AssertionError("FAILED: Binary close should report the winning bid.");
+            System.out.println("Binary transport passed: 100 pipelined bids, closed at " + result.getWinningPrice());
+        }
+    }
+
+    private void testBidHistory(int userId, String token) throws Exception {
+        int itemId = testCreateAuction(userId, "Guitar", "Acoustic guitar", 0, token);
+        int rivalId = testRegisterUser("historian" + UUID.randomUUID() + "@example.com");
+        String rivalToken = testAuthenticate(rivalId).getToken();
+        long before = System.currentTimeMillis();
+        for (int price = 100; price <= 300; price += 50) {
+            boolean mine = price % 100 == 0;
+            testPlaceBid(mine ? userId : rivalId, itemId, price, mine ? token : rivalToken);
+        }
+
+        UtilityClass.BidHistory all = server.getBidHistory(userId, itemId, 0, 10, token);
+        if (all.size() != 5 || all.getTotalBids() != 5 || all.getPrice(0) != 100 || all.getPrice(4) != 300
+                || all.getBidderID(1) != rivalId || all.getPlacedAt(0) < before) {
+            throw new AssertionError("FAILED: History should list every accepted bid, oldest first.");
+        }
+        UtilityClass.BidHistory tail = server.getBidHistory(userId, itemId, 3, 10, token);
+        if (tail.size() != 2 || tail.getFirstIndex() != 3 || tail.getPrice(0) != 250) {
+            throw new AssertionError("FAILED: Index ranges should start at the requested bid.");
+        }
+        UtilityClass.BidHistory firstTwo = server.getBidHistoryBetween(userId, itemId, before, Long.MAX_VALUE, 2, token);
+        if (firstTwo.size() != 2 || firstTwo.getPrice(1) != 150
+                || server.getBidHistoryBetween(userId, itemId, 0, before, 10, token).size() != 0) {
+            throw new AssertionError("FAILED: Time ranges should return bids placed in the range.");
+        }
+        UtilityClass.BidHistory top = server.getTopBidders(userId, itemId, 5, token);
+        if (top.size() != 2 || top.getBidderID(0) != userId || top.getPrice(0) != 300 || top.getPrice(1) != 250) {
+            throw new AssertionError("FAILED: Top bidders should be distinct, each with their best bid.");
+        }
+
+        server.closeAuction(userId, itemId, token);
+        if (server.getBidHistory(userId, itemId, 0, 10, token).size() != 5) {
+            throw new AssertionError("FAILED: History should outlive the auction.");
+        }
+        try {
+            server.getBidHistory(userId, Integer.MAX_VALUE, 0, 10, token);
+            throw new AssertionError("FAILED: History of an unknown item should be rejected.");
+        } catch (RemoteException e) {
+            // expected
+        }
+        System.out.println("Bid history and top bidders passed.");
+    }
+
+    private void testNotifications(int userId, String token) throws Exception {
+        BlockingQueue<UtilityClass.AuctionEvent> received = new LinkedBlockingQueue<>();
+        UtilityClass.AuctionListener listener = events -> received.addAll(Arrays.asList(events));
+        UtilityClass.AuctionListener stub = (UtilityClass.AuctionListener) UnicastRemoteObject.exportObject(listener, 0);
+        try {
+            server.subscribe(userId, stub, token);
+            int itemId = testCreateAuction(userId, "Bicycle", "Road bike", 100, token);
+            server.watchItem(userId, itemId, token);
+            testPlaceBid(userId, itemId, 150, token);
+
+            int rivalId = testRegisterUser("rival" + UUID.randomUUID() + "@example.com");
+            String rivalToken = testAuthenticate(rivalId).getToken();
+            testPlaceBid(rivalId, itemId, 300, rivalToken);
+            UtilityClass.AuctionEvent outbid = received.poll(5, TimeUnit.SECONDS);
+            if (outbid == null || outbid.getType() != UtilityClass.AuctionEvent.Type.OUTBID || outbid.getPrice() != 300) {
+                throw new AssertionError("FAILED: Outbid user should be notified of the new price.");
+            }
+            server.closeAuction(userId, itemId, token);
+            UtilityClass.AuctionEvent closed = received.poll(5, TimeUnit.SECONDS);
+            if (closed == null || closed.getType() != UtilityClass.AuctionEvent.Type.CLOSED || closed.getItemID() != itemId) {
+                throw new AssertionError("FAILED: Watcher should be notified when the auction closes.");
+            }
+            server.unsubscribe(userId, token);
+            System.out.println("Notifications received: outbid at " + outbid.getPrice() + ", closed with winner " + closed.getWinningEmail());
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+    }
+
+    private void testWatchCleanup() throws Exception {
+        // A dispatcher of its own: a subscriber whose listener keeps failing is dropped along with its watches
+        NotificationDispatcher dispatcher = new NotificationDispatcher(1, new ServerMetrics(() -> 0, () -> 0, () -> 0, () -> 0));
+        java.util.concurrent.CountDownLatch failures = new java.util.concurrent.CountDownLatch(3);
+        try {
+            dispatcher.subscribe(1, events -> {
+                failures.countDown();
+                throw new RemoteException("Listener gone");
+            });
+            dispatcher.subscribe(2, events -> { });
+            for (int itemId : new int[] {10, 11, 12}) {
+                dispatcher.watch(1, itemId);
+            }
+            dispatcher.watch(2, 12);
+            dispatcher.watch(2, 13);
+            dispatcher.bidPlaced(10, 3, 0, 100);
+            failures.await(5, TimeUnit.SECONDS);
+            long deadline = System.currentTimeMillis() + 5000;
+            // The subscriber is removed first, then its watches
+            while ((dispatcher.getSubscriberCount() > 1 || dispatcher.getWatchedItemCount() > 2) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            if (dispatcher.getSubscriberCount() != 1 || dispatcher.getWatchedItemCount() != 2) {
+                throw new AssertionError("FAILED: A dropped subscriber's watches should be removed, and only those.");
+            }
+            dispatcher.auctionClosed(13, 0, 0, null);
+            dispatcher.unsubscribe(2);
+            if (dispatcher.getWatchedItemCount() != 0) {
+                throw new AssertionError("FAILED: Closing and unsubscribing should leave no watches behind.");
+            }
+            System.out.println("Watch cleanup passed: dropped and unsubscribed users leave no watches.");
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    private void testReservePrice(int userId, String token) throws RemoteException {
+        int itemId = testCreateAuction(userId, "Camera", "Mirrorless camera", 1000, token);
+        testPlaceBid(userId, itemId, 500, token);
+        UtilityClass.AuctionResult result = server.closeAuction(userId, itemId, token);
+        if (result.getWinningEmail() != null) throw new AssertionError("FAILED: Auction below reserve should have no winner.");
+        System.out.println("Auction below reserve closed without a winner.");
+    }
+
     private void testCloseAuction(int userId, int itemId, String token) throws RemoteException {
         UtilityClass.AuctionResult result = server.closeAuction(userId, itemId, token);
         if (result == null) throw new AssertionError("FAILED: Auction result should not be null.");
-        System.out.println("Closed auction with winning price: " + result.getWinningPrice());
+        System.out.println("Closed auction won by " + result.getWinningEmail() + " with winning price: " + result.getWinningPrice());
     }
 
     private UtilityClass.TokenInfo testAuthenticate(int userId) throws Exception {
@@ -93,6 +406,55 @@ public class ClientTest {
         return tokenInfo;
     }
 
+    private void testSessionRefresh() throws Exception {
+        // Short windows on a server of its own: tokens live 1 s and sessions can be refreshed for 3 s
+        Server sessions = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        sessions.setSessionWindows(1000, 3000);
+        try {
+            int userId = sessions.register("refresh@example.com", publicKey);
+            UtilityClass.ChallengeInfo challengeInfo = sessions.challenge(userId, "refresh-challenge");
+            UtilityClass.TokenInfo login = sessions.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey));
+            String token = login.getToken();
+            int itemId = sessions.newAuction(userId, new UtilityClass.AuctionSaleItem("Lamp", "Refreshed session listing", 1), token);
+
+            try {
+                sessions.refreshSession(userId, token, 1, UtilityClass.TokenManager.refreshProof(new byte[32], userId, token, 1));
+                throw new AssertionError("FAILED: A refresh proof under the wrong key should be rejected.");
+            } catch (RemoteException e) {
+                // expected
+            }
+            long sequence = 0;
+            long deadline = System.currentTimeMillis() + 2000;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(400);
+                sequence++;
+                UtilityClass.TokenInfo refreshed = sessions.refreshSession(userId, token, sequence,
+                    UtilityClass.TokenManager.refreshProof(login.getRefreshKey(), userId, token, sequence));
+                if (!refreshed.getToken().equals(token) || refreshed.getRefreshCount() != sequence) {
+                    throw new AssertionError("FAILED: A refresh should keep the token and count the refresh.");
+                }
+            }
+            // Well past the first token's 1 s lifetime
+            if (sessions.getSpec(userId, itemId, token) == null) throw new AssertionError("FAILED: A refreshed token should still be valid.");
+            try {
+                sessions.refreshSession(userId, token, sequence, UtilityClass.TokenManager.refreshProof(login.getRefreshKey(), userId, token, sequence));
+                throw new AssertionError("FAILED: A replayed refresh should be rejected.");
+            } catch (RemoteException e) {
+                // expected
+            }
+
+            Thread.sleep(Math.max(0, login.getRefreshableUntil() - System.currentTimeMillis()) + 300);
+            try {
+                sessions.getSpec(userId, itemId, token);
+                throw new AssertionError("FAILED: Refreshes should not keep a session past its refresh window.");
+            } catch (RemoteException e) {
+                System.out.println("Session refresh passed: " + sequence + " refreshes, then the session ended with its refresh window.");
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(sessions, true);
+        }
+    }
+
     private void testTokenExpiration(int userId, String token) throws InterruptedException, RemoteException {
         System.out.println("Waiting for token to expire...");
         Thread.sleep(UtilityClass.TokenManager.getTokenExpiryDuration() + 1000); // Wait beyond expiration
@@ -114,6 +476,546 @@ public class ClientTest {
         }
     }
 
+    private void testSignatureSchemes() throws Exception {
+        for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+            KeyPair keyPair = scheme.generateKeyPair();
+            int userId = server.register(scheme + "@example.com", keyPair.getPublic(), scheme);
+            String clientChallenge = "challenge-" + scheme;
+            UtilityClass.ChallengeInfo challengeInfo = server.challenge(userId, clientChallenge);
+            if (challengeInfo.getScheme() != scheme) throw new AssertionError("FAILED: Challenge should use the registered scheme.");
+            if (!scheme.verify(clientChallenge.getBytes(), challengeInfo.getResponse(), server.getServerPublicKey(scheme))) {
+                throw new AssertionError("FAILED: Server response should verify for " + scheme);
+            }
+            byte[] signature = scheme.sign(challengeInfo.getServerChallenge().getBytes(), keyPair.getPrivate());
+            UtilityClass.TokenInfo tokenInfo = server.authenticate(userId, signature);
+            server.listItems(userId, tokenInfo.getToken());
+            System.out.println("Authenticated with " + scheme + " as user ID " + userId);
+        }
+        // Same key algorithm, other curve: neither scheme can verify these, so registration must refuse them
+        KeyPairGenerator ed448 = KeyPairGenerator.getInstance("Ed448");
+        KeyPairGenerator p384 = KeyPairGenerator.getInstance("EC");
+        p384.initialize(384);
+        for (PublicKey otherCurve : new PublicKey[] {ed448.generateKeyPair().getPublic(), p384.generateKeyPair().getPublic()}) {
+            try {
+                server.register("other-curve@example.com", otherCurve);
+                throw new AssertionError("FAILED: A key on an unsupported curve should be rejected: " + otherCurve);
+            } catch (RemoteException e) {
+                // expected
+            }
+        }
+    }
+
+    private void testTimedAuctions() throws Exception {
+        int sellerId = testRegisterUser("timed" + UUID.randomUUID() + "@example.com");
+        String token = testAuthenticate(sellerId).getToken();
+        long now = System.currentTimeMillis();
+        int plainId = server.newAuction(sellerId, new UtilityClass.AuctionSaleItem("Lamp", "Ends in one second", 0, now + 1000, 0), token);
+        int softId = server.newAuction(sellerId, new UtilityClass.AuctionSaleItem("Clock", "Extended by late bids", 0, now + 1000, 2000), token);
+        testPlaceBid(sellerId, plainId, 40, token);
+        testPlaceBid(sellerId, softId, 60, token);
+
+        Thread.sleep(1500);
+        UtilityClass.AuctionResult result = server.getResult(sellerId, plainId, token);
+        if (result.getWinningPrice() != 40) throw new AssertionError("FAILED: Timed auction should settle at the highest bid.");
+        try {
+            server.getSpec(sellerId, plainId, token);
+            throw new AssertionError("FAILED: Settled auction should no longer be listed.");
+        } catch (RemoteException e) {
+            System.out.println("Timed auction closed itself at " + result.getWinningPrice());
+        }
+        if (server.getSpec(sellerId, softId, token) == null) throw new AssertionError("FAILED: Late bid should extend the auction.");
+
+        Thread.sleep(1200);
+        if (server.getResult(sellerId, softId, token).getWinningPrice() != 60) {
+            throw new AssertionError("FAILED: Extended auction should settle after its new end time.");
+        }
+        System.out.println("Soft-close auction extended and settled.");
+    }
+
+    private void testReplication() throws Exception {
+        if (server.getReplicationStatus().getRole() != UtilityClass.ReplicationStatus.Role.PRIMARY) {
+            throw new AssertionError("FAILED: A standalone server should report itself as primary.");
+        }
+        // A primary and backup pair in this process, so the test does not depend on how the main server was started
+        KeyPair serverKeys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server primary = new Server(serverKeys.getPrivate());
+        Server backup = new Server(serverKeys.getPrivate());
+        int primaryPort = Integer.getInteger("auction.test.replication.port", 1201);
+        List<InetSocketAddress> peers = Arrays.asList(new InetSocketAddress("localhost", primaryPort),
+            new InetSocketAddress("localhost", primaryPort + 1));
+        try {
+            // Both load the same key files, the primary creating them, so a client's cached keys still verify after a failover
+            Path keyDir = Files.createTempDirectory("cryptoauction-keys");
+            for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+                if (scheme != UtilityClass.SignatureScheme.RSA) {
+                    String privatePath = keyDir.resolve(scheme + "_private.pem").toString();
+                    String publicPath = keyDir.resolve(scheme + "_public.pem").toString();
+                    primary.setServerKey(scheme, UtilityClass.SecurityUtils.loadOrCreateKeyPair(privatePath, publicPath, scheme));
+                    backup.setServerKey(scheme, UtilityClass.SecurityUtils.loadOrCreateKeyPair(privatePath, publicPath, scheme));
+                }
+            }
+            for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+                if (!primary.getServerPublicKey(scheme).equals(backup.getServerPublicKey(scheme))) {
+                    throw new AssertionError("FAILED: Servers sharing a key should have the same " + scheme + " key.");
+                }
+            }
+            primary.startReplication(primaryPort);
+            backup.follow(peers.get(0), peers, primaryPort + 1, 500);
+            int userId = primary.register("replicated@example.com", publicKey);
+            UtilityClass.ChallengeInfo challengeInfo = primary.challenge(userId, "replication-challenge");
+            String token = primary.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+            int itemId = primary.newAuction(userId, new UtilityClass.AuctionSaleItem("Telescope", "Replicated listing", 50), token);
+            primary.bid(userId, itemId, 75, token);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            UtilityClass.AuctionItem replicated = null;
+            while ((replicated == null || replicated.getHighestBid() != 75) && System.currentTimeMillis() < deadline) {
+                try {
+                    replicated = backup.getSpec(userId, itemId, token);
+                } catch (RemoteException e) {
+                    // not replicated yet
+                }
+                Thread.sleep(20);
+            }
+            if (replicated == null || replicated.getHighestBid() != 75) throw new AssertionError("FAILED: Backup should serve the replicated item and session.");
+            try {
+                backup.bid(userId, itemId, 100, token);
+                throw new AssertionError("FAILED: Backup should reject writes.");
+            } catch (UtilityClass.ReadOnlyReplicaException e) {
+                System.out.println("Backup rejected a write as expected.");
+            }
+
+            primary.stopReplication();
+            deadline = System.currentTimeMillis() + 5000;
+            while (backup.getReplicationStatus().getRole() != UtilityClass.ReplicationStatus.Role.PRIMARY
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            UtilityClass.ReplicationStatus promoted = backup.getReplicationStatus();
+            if (promoted.getRole() != UtilityClass.ReplicationStatus.Role.PRIMARY || promoted.getEpoch() != 2) {
+                throw new AssertionError("FAILED: Backup should promote itself to epoch 2 when the primary goes away.");
+            }
+            if (!backup.bid(userId, itemId, 100, token)) throw new AssertionError("FAILED: Promoted backup should accept bids with the replicated session.");
+            System.out.println("Replication passed: backup caught up, then took over at epoch " + promoted.getEpoch());
+        } finally {
+            primary.stopReplication();
+            backup.stopReplication();
+            UnicastRemoteObject.unexportObject(primary, true);
+            UnicastRemoteObject.unexportObject(backup, true);
+        }
+    }
+
+    private void testBidHistoryRecovery() throws Exception {
+        // Bids are journaled after they are applied, so a racing bid can be journaled below the highest one
+        Path dir = Files.createTempDirectory("cryptoauction-history");
+        PrivateKey serverKey = UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate();
+        long now = System.currentTimeMillis();
+        try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.SYNC)) {
+            AuctionJournal.Events events = journal.appender();
+            events.counters(2, 2);
+            events.register(1, "historian@example.com", publicKey);
+            events.newAuction(1, 1, "Lamp", "Desk lamp", 0);
+            events.bidAt(1, 1, 100, now);
+            events.bidAt(1, 1, 300, now + 2);
+            events.bidAt(1, 1, 200, now + 1);
+        }
+        // Recover from the journal, then from a snapshot that the journal repeats some bids of
+        for (int round = 0; round < 2; round++) {
+            try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.SYNC)) {
+                Server recovered = new Server(serverKey, journal);
+                try {
+                    UtilityClass.BidHistory history = recovered.historyOf(1).range(1, 0, 10);
+                    if (history.size() != 3 || history.getPrice(0) != 100 || history.getPrice(1) != 300 || history.getPrice(2) != 200
+                            || history.getPlacedAt(2) != now + 1) {
+                        throw new AssertionError("FAILED: Recovery should keep every journaled bid once, in order (round " + round + ").");
+                    }
+                    UtilityClass.ChallengeInfo challengeInfo = recovered.challenge(1, "history-challenge");
+                    String token = recovered.authenticate(1, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+                    if (recovered.getSpec(1, 1, token).getHighestBid() != 300) {
+                        throw new AssertionError("FAILED: A bid journaled below the highest should not lower it.");
+                    }
+                    if (round == 0) {
+                        journal.snapshot(recovered::exportState);
+                        journal.appender().bidAt(1, 1, 300, now + 2);
+                        journal.appender().bidAt(1, 1, 200, now + 1);
+                    }
+                } finally {
+                    UnicastRemoteObject.unexportObject(recovered, true);
+                }
+            }
+        }
+        System.out.println("Bid history recovered with out-of-order bids, from journal and overlapping snapshot.");
+    }
+
+    private void testJournalRecovery() throws Exception {
+        // A restarted server must come back with the same state, from the journal alone and from a snapshot plus the tail after it
+        Path dir = Files.createTempDirectory("cryptoauction-journal");
+        PrivateKey serverKey = UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate();
+        List<Integer> itemIds = new ArrayList<>();
+        int ownerId;
+        int bidderId;
+        String expected;
+        try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.SYNC)) {
+            Server original = new Server(serverKey, journal);
+            try {
+                ownerId = original.register("seller@example.com", publicKey);
+                bidderId = original.register("buyer@example.com", publicKey);
+                String owner = login(original, ownerId);
+                String bidder = login(original, bidderId);
+                for (int itemId : original.newAuctionBatch(ownerId, new UtilityClass.AuctionSaleItem[] {
+                        new UtilityClass.AuctionSaleItem("Chair", "Oak chair", 50),
+                        new UtilityClass.AuctionSaleItem("Table", "Pine table", 0),
+                        new UtilityClass.AuctionSaleItem("Vase", "Timed listing", 10, System.currentTimeMillis() + 300, 0),
+                        new UtilityClass.AuctionSaleItem("Lamp", "No bids yet", 5)}, owner)) {
+                    itemIds.add(itemId);
+                }
+                original.bid(bidderId, itemIds.get(0), 40, bidder);
+                original.bid(ownerId, itemIds.get(0), 60, owner);
+                original.bidBatch(bidderId, new int[] {itemIds.get(1), itemIds.get(1), itemIds.get(2)}, new int[] {15, 25, 30}, bidder);
+                original.closeAuction(ownerId, itemIds.get(0), owner);
+                // The timed item closes on its own and leaves a settlement
+                long deadline = System.currentTimeMillis() + 5000;
+                while (original.listItems(ownerId, owner).length > 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                expected = journaledState(original, ownerId, owner, itemIds);
+            } finally {
+                UnicastRemoteObject.unexportObject(original, true);
+            }
+        }
+
+        for (int round = 0; round < 2; round++) {
+            try (AuctionJournal journal = AuctionJournal.open(dir, AuctionJournal.Durability.SYNC)) {
+                Server recovered = new Server(serverKey, journal);
+                try {
+                    String owner = login(recovered, ownerId);
+                    String state = journaledState(recovered, ownerId, owner, itemIds);
+                    if (!state.equals(expected)) {
+                        throw new AssertionError("FAILED: Recovered state differs (round " + round + "):\n" + state + "expected:\n" + expected);
+                    }
+                    if (round == 0) {
+                        // Snapshot, then change more after it so the next start needs both the snapshot and the tail
+                        journal.snapshot(recovered::exportState);
+                        String bidder = login(recovered, bidderId);
+                        int rug = recovered.newAuction(ownerId, new UtilityClass.AuctionSaleItem("Rug", "Listed after the snapshot", 0), owner);
+                        if (rug <= Collections.max(itemIds)) throw new AssertionError("FAILED: Recovery should not reuse item IDs.");
+                        itemIds.add(rug);
+                        recovered.bid(bidderId, rug, 70, bidder);
+                        recovered.bid(bidderId, itemIds.get(1), 35, bidder);
+                        recovered.closeAuction(ownerId, itemIds.get(3), owner);
+                        expected = journaledState(recovered, ownerId, owner, itemIds);
+                    }
+                } finally {
+                    UnicastRemoteObject.unexportObject(recovered, true);
+                }
+            }
+        }
+        System.out.println("Journal recovery passed: " + itemIds.size() + " items restored from the journal, then from a snapshot and its tail.");
+    }
+
+    private String login(Server target, int userId) throws Exception {
+        UtilityClass.ChallengeInfo challengeInfo = target.challenge(userId, "login-challenge");
+        return target.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+    }
+
+    /**
+     * Everything a restart must restore about the given items: live listings with their bid history,
+     * settlements of items that closed on their own, and which items are gone.
+     */
+    private String journaledState(Server target, int ownerId, String token, List<Integer> itemIds) throws RemoteException {
+        StringBuilder state = new StringBuilder();
+        for (int itemId : itemIds) {
+            state.append(itemId);
+            UtilityClass.AuctionItem item = target.getSpecBatch(ownerId, new int[] {itemId}, token)[0];
+            if (item != null) {
+                state.append(' ').append(item.getName()).append(' ').append(item.getDescription()).append(' ').append(item.getReservePrice())
+                    .append(' ').append(item.getEndTime()).append(' ').append(item.getHighestBidderID()).append(':').append(item.getHighestBid());
+                UtilityClass.BidHistory history = target.getBidHistory(ownerId, itemId, 0, 100, token);
+                for (int i = 0; i < history.size(); i++) {
+                    state.append(' ').append(history.getBidderID(i)).append(':').append(history.getPrice(i)).append('@').append(history.getPlacedAt(i));
+                }
+            } else {
+                try {
+                    UtilityClass.AuctionResult result = target.getResult(ownerId, itemId, token);
+                    state.append(" settled ").append(result.getWinningEmail()).append(' ').append(result.getWinningPrice());
+                } catch (RemoteException e) {
+                    state.append(" closed");
+                }
+            }
+            state.append('\n');
+        }
+        return state.toString();
+    }
+
+    private void testReplicationJoinUnderLoad() throws Exception {
+        // Backups join while auctions are being created, bid on and closed; each must end up with the primary's items
+        KeyPair serverKeys = UtilityClass.SignatureScheme.RSA.generateKeyPair();
+        Server primary = new Server(serverKeys.getPrivate());
+        InetSocketAddress primaryAddress = new InetSocketAddress("localhost",
+            Integer.getInteger("auction.test.replication.port", 1201) + 2);
+        List<Server> backups = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Exception> writerFailure = new AtomicReference<>();
+        try {
+            primary.startReplication(primaryAddress.getPort());
+            int userId = primary.register("joining@example.com", publicKey);
+            UtilityClass.ChallengeInfo challengeInfo = primary.challenge(userId, "join-challenge");
+            String token = primary.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+            for (int w = 0; w < 4; w++) {
+                Thread writer = new Thread(() -> {
+                    try {
+                        for (int n = 0; running.get(); n++) {
+                            int itemId = primary.newAuction(userId, new UtilityClass.AuctionSaleItem("Lot " + n, "Joining test", 1), token);
+                            primary.bid(userId, itemId, 10, token);
+                            if (n % 2 == 0) {
+                                primary.closeAuction(userId, itemId, token);
+                            }
+                        }
+                    } catch (Exception e) {
+                        writerFailure.set(e);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+            // Joins come early, while snapshots are small enough to fit inside a create or close
+            for (int i = 0; i < 10; i++) {
+                Server backup = new Server(serverKeys.getPrivate());
+                backups.add(backup);
+                backup.follow(primaryAddress, List.of(primaryAddress), 0, TimeUnit.MINUTES.toMillis(1));
+                Thread.sleep(50);
+            }
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            if (writerFailure.get() != null) throw writerFailure.get();
+
+            Map<Integer, Integer> expected = bidsByItem(primary.listItems(userId, token));
+            for (Server backup : backups) {
+                long deadline = System.currentTimeMillis() + 10_000;
+                Map<Integer, Integer> replicated = null;
+                while (!expected.equals(replicated) && System.currentTimeMillis() < deadline) {
+                    try {
+                        replicated = bidsByItem(backup.listItems(userId, token));
+                    } catch (RemoteException e) {
+                        // snapshot not applied yet
+                    }
+                    Thread.sleep(20);
+                }
+                if (!expected.equals(replicated)) {
+                    throw new AssertionError("FAILED: A backup that joined under load should match the primary: "
+                        + expected.size() + " live items on the primary, " + (replicated == null ? 0 : replicated.size()) + " on the backup.");
+                }
+            }
+            System.out.println("Replication join under load passed: " + backups.size() + " backups match " + expected.size() + " live items.");
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            primary.stopReplication();
+            UnicastRemoteObject.unexportObject(primary, true);
+            for (Server backup : backups) {
+                backup.stopReplication();
+                UnicastRemoteObject.unexportObject(backup, true);
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> bidsByItem(UtilityClass.AuctionItem[] items) {
+        Map<Integer, Integer> bids = new HashMap<>();
+        for (UtilityClass.AuctionItem item : items) {
+            bids.put(item.getItemID(), item.getHighestBid());
+        }
+        return bids;
+    }
+
+    private void testShardedEngine() throws Exception {
+        // A server of its own in this process whose item updates run on two single-writer shards
+        Server sharded = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate(), null, 2);
+        int ordered = 0;
+        try {
+            int userId = sharded.register("sharded@example.com", publicKey);
+            UtilityClass.ChallengeInfo challengeInfo = sharded.challenge(userId, "shard-challenge");
+            String token = sharded.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+            int[] itemIds = sharded.newAuctionBatch(userId, new UtilityClass.AuctionSaleItem[] {
+                new UtilityClass.AuctionSaleItem("Clock", "Sharded listing", 1),
+                new UtilityClass.AuctionSaleItem("Stool", "Sharded listing", 1)}, token);
+
+            // Bidders race the close of the first item; each also bids on the second, which is on the other shard
+            int bidders = 4;
+            int bidsEach = 200;
+            List<List<Integer>> accepted = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int t = 0; t < bidders; t++) {
+                List<Integer> prices = new ArrayList<>();
+                accepted.add(prices);
+                int first = t + 1;
+                Thread bidder = new Thread(() -> {
+                    try {
+                        for (int price = first; price <= bidders * bidsEach; price += bidders) {
+                            // Once the first item is closed its half of the batch is simply rejected
+                            if (sharded.bidBatch(userId, itemIds, new int[] {price, price}, token)[0]) {
+                                prices.add(price);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                threads.add(bidder);
+                bidder.start();
+            }
+            while (sharded.getSpec(userId, itemIds[1], token).getHighestBid() < bidders * bidsEach / 4) {
+                Thread.yield();
+            }
+            UtilityClass.AuctionResult result = sharded.closeAuction(userId, itemIds[0], token);
+            for (Thread bidder : threads) {
+                bidder.join();
+            }
+            if (failure.get() != null) throw new AssertionError("FAILED: Sharded bidding failed: " + failure.get());
+
+            int highest = 0;
+            int count = 0;
+            for (List<Integer> prices : accepted) {
+                count += prices.size();
+                for (int price : prices) {
+                    highest = Math.max(highest, price);
+                }
+            }
+            // Every bid the shard accepted happened before the close, so the result and history include it
+            if (result.getWinningPrice() != highest) {
+                throw new AssertionError("FAILED: Closing at " + result.getWinningPrice() + " missed an accepted bid of " + highest + ".");
+            }
+            ordered = count;
+            if (sharded.historyOf(itemIds[0]).size() != count) {
+                throw new AssertionError("FAILED: The closed item's history should hold exactly the accepted bids.");
+            }
+            if (sharded.getSpec(userId, itemIds[1], token).getHighestBid() != bidders * bidsEach) {
+                throw new AssertionError("FAILED: The other shard's item should have taken the highest bid.");
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(sharded, true);
+        }
+
+        // Closing the engine fails commands still queued behind a running one instead of leaving their callers parked
+        ShardedEngine engine = ShardedEngine.start(1, 4, () -> 0);
+        java.util.concurrent.CountDownLatch running = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            ShardedEngine.Task<Boolean> first = engine.submit(0, () -> {
+                running.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RemoteException("Interrupted", e);
+                }
+            });
+            ShardedEngine.Task<Boolean> queued = engine.submit(0, () -> true);
+            try {
+                first.await();
+                outcome.set(queued.await());
+            } catch (RemoteException e) {
+                outcome.set(e);
+            }
+        });
+        caller.start();
+        running.await();
+        engine.close();
+        release.countDown();
+        caller.join(5000);
+        if (caller.isAlive() || !(outcome.get() instanceof RemoteException)) {
+            throw new AssertionError("FAILED: A command queued when the engine closed should fail, not wait forever.");
+        }
+        try {
+            engine.submit(0, () -> true).await();
+            throw new AssertionError("FAILED: A command submitted after close should fail.");
+        } catch (RemoteException e) {
+            System.out.println("Sharded engine passed: " + ordered + " bids ordered around a close, queued commands failed on shutdown");
+        }
+    }
+
+    private void testAdmissionControl() throws Exception {
+        // A server of its own in this process, so the limits do not slow down the other tests
+        Server limited = new Server(UtilityClass.SignatureScheme.RSA.generateKeyPair().getPrivate());
+        try (BinaryAuctionServer binary = BinaryAuctionServer.start(limited, 0, 1, BinaryAuctionServer.executorFor("platform"))) {
+            int userId = limited.register("limited@example.com", publicKey);
+            UtilityClass.ChallengeInfo challengeInfo = limited.challenge(userId, "limit-challenge");
+            String token = limited.authenticate(userId, UtilityClass.SecurityUtils.sign(challengeInfo.getServerChallenge(), privateKey)).getToken();
+            int itemId = limited.newAuction(userId, new UtilityClass.AuctionSaleItem("Kettle", "Rate limited listing", 1), token);
+
+            // Requests offloaded from the selector thread still complete in order
+            try (BinaryAuctionClient client = new BinaryAuctionClient("localhost", binary.getPort())) {
+                BinaryAuctionClient.Session session = new BinaryAuctionClient.Session(userId, token);
+                List<java.util.concurrent.CompletableFuture<Boolean>> pipelined = new ArrayList<>();
+                for (int price = 1; price <= 200; price++) {
+                    pipelined.add(client.bidAsync(session, itemId, price));
+                }
+                for (java.util.concurrent.CompletableFuture<Boolean> accepted : pipelined) {
+                    if (!accepted.get()) throw new AssertionError("FAILED: Offloaded ascending bids should all be accepted.");
+                }
+            }
+
+            Map<ServerMetrics.Operation, AdmissionControl.Limit> limits = new EnumMap<>(ServerMetrics.Operation.class);
+            limits.put(ServerMetrics.Operation.BID, new AdmissionControl.Limit(10, 5));
+            limited.setAdmissionControl(new AdmissionControl(limits, 1, limited.getMetrics()));
+            int price = 1000;
+            for (int i = 0; i < 5; i++) {
+                limited.bid(userId, itemId, price++, token);
+            }
+            long retryAfter;
+            try {
+                limited.bid(userId, itemId, price, token);
+                throw new AssertionError("FAILED: A sixth bid in the same burst should be rate limited.");
+            } catch (UtilityClass.RateLimitedException e) {
+                retryAfter = e.getRetryAfterMillis();
+            }
+            try {
+                limited.bidBatch(userId, new int[] {itemId, itemId}, new int[] {price, price + 1}, token);
+                throw new AssertionError("FAILED: A batch should draw on the same bid allowance.");
+            } catch (UtilityClass.RateLimitedException e) {
+                // expected
+            }
+            Thread.sleep(retryAfter);
+            if (!limited.bid(userId, itemId, price++, token)) throw new AssertionError("FAILED: A bid after the advised wait should be accepted.");
+            if (limited.getSpec(userId, itemId, token) == null) throw new AssertionError("FAILED: Unlimited operations should be unaffected.");
+
+            AdmissionControl.Permit held = limited.getAdmissionControl().admit(ServerMetrics.Operation.GET_SPEC, userId, 1);
+            try {
+                limited.getSpec(userId, itemId, token);
+                throw new AssertionError("FAILED: A call over the concurrency limit should be refused.");
+            } catch (UtilityClass.ServerBusyException e) {
+                // expected
+            } finally {
+                held.close();
+            }
+            if (limited.getSpec(userId, itemId, token) == null) throw new AssertionError("FAILED: Released slots should be reused.");
+            if (limited.getMetrics().getRateLimitedCalls() != 2 || limited.getMetrics().getOverloadedCalls() != 1) {
+                throw new AssertionError("FAILED: Refused calls should be counted.");
+            }
+            System.out.println("Admission control passed: rate limited with retry after " + retryAfter + " ms, busy server refused at once");
+        } finally {
+            UnicastRemoteObject.unexportObject(limited, true);
+        }
+    }
+
+    private void testAdminMetrics() throws Exception {
+        for (String name : Naming.list("rmi://localhost:1099")) {
+            if (name.endsWith("/AuctionAdmin")) throw new AssertionError("FAILED: AuctionAdmin should not be in the public registry.");
+        }
+        UtilityClass.AuctionAdmin admin = (UtilityClass.AuctionAdmin) Naming.lookup("rmi://localhost:1199/AuctionAdmin");
+        UtilityClass.MetricsSnapshot metrics = admin.getMetrics();
+        if (metrics.getCalls("BID") == 0) throw new AssertionError("FAILED: Bid calls should be counted.");
+        if (metrics.getTokenValidationFailures() == 0) throw new AssertionError("FAILED: Rejected tokens should be counted.");
+        if (metrics.getRegisteredUsers() == 0) throw new AssertionError("FAILED: Registered users gauge should be positive.");
+        System.out.println("Admin metrics: " + metrics.getCalls("BID") + " bids, "
+            + metrics.getTokenValidationFailures() + " token validation failures, " + metrics.getLiveAuctions() + " live auctions");
+    }
+
     private void testMultipleClients() throws Exception {
         List<ClientTest> clients = new ArrayList<>();
         for (int i = 0; i < 3; i++) {
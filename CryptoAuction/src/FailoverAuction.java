@@ -0,0 +1,186 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side view of a replicated server group as a single UtilityClass.Auction.
+ *
+ * Calls go to the primary, found by asking every server for its ReplicationStatus and taking the
+ * primary with the highest epoch. A call that fails because the server is down, or because it has
+ * become a backup, is retried against a newly discovered primary until failoverMillis has passed; only
+ * failures that guarantee the call never ran are retried, so a bid is never applied twice. With
+ * readFromBackups the item reads are spread round-robin over every server; they may trail the primary
+ * by the replication lag, and any that fail on a backup (say, a token not yet replicated) fall back to
+ * the primary.
+ */
+public final class FailoverAuction implements InvocationHandler {
+
+    private static final long RETRY_MILLIS = 100;
+    // Reads whose answer is the same on any up-to-date server. listChanges versions are per server, so
+    // those stay on the primary.
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+        "getSpec", "listItems", "getSpecBatch", "listItemsPage", "search", "getResult", "getBidHistory",
+        "getBidHistoryBetween", "getTopBidders", "getServerPublicKey"));
+
+    private final String[] urls;
+    private final UtilityClass.Auction[] stubs;
+    private final boolean readFromBackups;
+    private final long failoverMillis;
+    private final AtomicInteger nextRead = new AtomicInteger();
+    private volatile int primary = -1;
+
+    private FailoverAuction(List<String> urls, boolean readFromBackups, long failoverMillis) {
+        this.urls = urls.toArray(new String[0]);
+        this.stubs = new UtilityClass.Auction[this.urls.length];
+        this.readFromBackups = readFromBackups;
+        this.failoverMillis = failoverMillis;
+    }
+
+    /**
+     * urls are RMI names such as rmi://localhost:1099/Auction, one per server in the group.
+     */
+    public static UtilityClass.Auction connect(List<String> urls, boolean readFromBackups, long failoverMillis)
+            throws RemoteException {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("No servers to connect to");
+        }
+        FailoverAuction handler = new FailoverAuction(urls, readFromBackups, failoverMillis);
+        handler.primary(System.currentTimeMillis() + failoverMillis);
+        return (UtilityClass.Auction) Proxy.newProxyInstance(UtilityClass.Auction.class.getClassLoader(),
+            new Class<?>[] {UtilityClass.Auction.class}, handler);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return "FailoverAuction" + Arrays.toString(urls);
+            }
+        }
+        if (readFromBackups && READS.contains(method.getName())) {
+            int server = Math.floorMod(nextRead.getAndIncrement(), urls.length);
+            if (server != primary) {
+                try {
+                    UtilityClass.Auction stub = stub(server);
+                    if (stub != null) {
+                        return method.invoke(stub, args);
+                    }
+                } catch (InvocationTargetException e) {
+                    if (isUnreachable(e.getCause())) {
+                        stubs[server] = null;
+                    }
+                }
+            }
+        }
+        return invokeOnPrimary(method, args);
+    }
+
+    private Object invokeOnPrimary(Method method, Object[] args) throws Throwable {
+        long giveUpAt = System.currentTimeMillis() + failoverMillis;
+        while (true) {
+            int server = primary(giveUpAt);
+            UtilityClass.Auction stub = stub(server);
+            try {
+                if (stub == null) {
+                    throw new InvocationTargetException(new ConnectException("Cannot reach " + urls[server]));
+                }
+                return method.invoke(stub, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                boolean demoted = cause instanceof UtilityClass.ReadOnlyReplicaException;
+                if (!demoted && !isUnreachable(cause)) {
+                    throw cause;
+                }
+                if (!demoted) {
+                    stubs[server] = null;
+                }
+                primary = -1;
+                if (System.currentTimeMillis() >= giveUpAt) {
+                    throw cause;
+                }
+                sleep(RETRY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Index of the current primary, rediscovering it if needed until giveUpAt.
+     */
+    private int primary(long giveUpAt) throws RemoteException {
+        int current = primary;
+        if (current >= 0) {
+            return current;
+        }
+        while (true) {
+            int best = -1;
+            long bestEpoch = -1;
+            for (int i = 0; i < urls.length; i++) {
+                UtilityClass.Auction stub = stub(i);
+                if (stub == null) {
+                    continue;
+                }
+                try {
+                    UtilityClass.ReplicationStatus status = stub.getReplicationStatus();
+                    if (status.getRole() == UtilityClass.ReplicationStatus.Role.PRIMARY && status.getEpoch() > bestEpoch) {
+                        best = i;
+                        bestEpoch = status.getEpoch();
+                    }
+                } catch (RemoteException e) {
+                    stubs[i] = null;
+                }
+            }
+            if (best >= 0) {
+                primary = best;
+                return best;
+            }
+            if (System.currentTimeMillis() >= giveUpAt) {
+                throw new ConnectException("No primary reachable among " + Arrays.toString(urls));
+            }
+            sleep(RETRY_MILLIS);
+        }
+    }
+
+    private UtilityClass.Auction stub(int server) {
+        UtilityClass.Auction stub = stubs[server];
+        if (stub == null) {
+            try {
+                stub = (UtilityClass.Auction) Naming.lookup(urls[server]);
+                stubs[server] = stub;
+            } catch (RemoteException | NotBoundException | MalformedURLException e) {
+                return null;
+            }
+        }
+        return stub;
+    }
+
+    /**
+     * Failures raised before the call reached the server object, so retrying elsewhere cannot repeat it.
+     */
+    private static boolean isUnreachable(Throwable cause) {
+        return cause instanceof ConnectException || cause instanceof ConnectIOException
+            || cause instanceof NoSuchObjectException;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
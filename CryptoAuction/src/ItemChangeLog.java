@@ -0,0 +1,79 @@
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ordered log of catalogue changes (create, accepted bid, close), keyed by a global version number.
+ * Only the most recent changes are retained; a client polling from before that window must resync.
+ *
+ * Changes sit in a ring indexed by version. Each slot holds the changed item ID packed with the lap of
+ * the ring it was written in, one long per change, so recording allocates nothing and a reader can tell
+ * a slot still being written, or already overwritten, from the change it is looking for.
+ */
+public class ItemChangeLog {
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLongArray ring;
+    private final int shift;
+    private final int mask;
+
+    /**
+     * Retains at least the last retainedChanges changes (rounded up to a power of two).
+     */
+    public ItemChangeLog(int retainedChanges) {
+        int capacity = Integer.highestOneBit(Math.max(retainedChanges, 2) - 1) << 1;
+        this.ring = new AtomicLongArray(capacity);
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public void record(int itemID) {
+        long v = version.incrementAndGet();
+        ring.set((int) v & mask, entry(v, itemID));
+    }
+
+    public long currentVersion() {
+        return version.get();
+    }
+
+    /**
+     * True if changes after sinceVersion are no longer fully retained.
+     */
+    public boolean requiresResync(long sinceVersion) {
+        long current = version.get();
+        return sinceVersion < current - mask - 1 || sinceVersion > current;
+    }
+
+    /**
+     * Collects the distinct item IDs changed after sinceVersion into itemIDs, up to maxItems of them, and
+     * returns the version the caller has caught up to. Collection stops at the first version still being
+     * written, so a change is never skipped; it is picked up by the next poll instead. It also stops at
+     * one already overwritten, which the next poll then reports as needing a resync.
+     */
+    public long changedSince(long sinceVersion, int maxItems, Set<Integer> itemIDs) {
+        long current = version.get();
+        long reached = sinceVersion;
+        while (reached < current) {
+            long next = reached + 1;
+            long slot = ring.get((int) next & mask);
+            if (slot >>> 32 != lap(next)) {
+                break;
+            }
+            int itemID = (int) slot;
+            if (itemIDs.size() == maxItems && !itemIDs.contains(itemID)) {
+                break;
+            }
+            itemIDs.add(itemID);
+            reached = next;
+        }
+        return reached;
+    }
+
+    // Laps are counted from 1, so an empty slot matches no version
+    private long lap(long v) {
+        return (v >>> shift) + 1;
+    }
+
+    private long entry(long v, int itemID) {
+        return (lap(v) << 32) | (itemID & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,256 @@
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers auction events to subscribed listeners off the request path.
+ *
+ * Publishing only updates the subscriber's pending map under its own monitor: events for the same
+ * item replace each other, so the map holds at most one event per item and a slow listener receives
+ * the latest price instead of every intermediate bid. Each subscriber has at most one delivery queued
+ * or in flight, which bounds the executor's queue by the number of subscribers and keeps a stuck
+ * listener from occupying more than one delivery thread. When a subscriber's pending map is full, or
+ * a delivery fails, further events are dropped and the next batch ends with RESYNC_REQUIRED.
+ *
+ * Watches are indexed both ways, by item for publishing and by user, so unsubscribing or dropping a
+ * subscriber removes exactly its own watches instead of scanning every item.
+ */
+public class NotificationDispatcher {
+
+    private static final int MAX_PENDING_ITEMS = 1024;
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private final Map<Integer, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> watchers = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> watchedItems = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final ServerMetrics metrics;
+
+    public NotificationDispatcher(int threads, ServerMetrics metrics) {
+        this.metrics = metrics;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void subscribe(int userID, UtilityClass.AuctionListener listener) {
+        Subscriber previous = subscribers.put(userID, new Subscriber(userID, listener));
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+    }
+
+    public void unsubscribe(int userID) {
+        Subscriber subscriber = subscribers.remove(userID);
+        if (subscriber != null) {
+            subscriber.cancelled = true;
+        }
+        unwatchAll(userID);
+    }
+
+    /**
+     * Adds itemID to the user's watched items; the user must be subscribed.
+     */
+    public boolean watch(int userID, int itemID) {
+        if (!subscribers.containsKey(userID)) {
+            return false;
+        }
+        watchedItems.computeIfAbsent(userID, id -> ConcurrentHashMap.newKeySet()).add(itemID);
+        // Atomic per item, so a watch is never added to a set that unwatchAll is discarding
+        watchers.compute(itemID, (id, itemWatchers) -> {
+            Set<Integer> updated = itemWatchers != null ? itemWatchers : ConcurrentHashMap.newKeySet();
+            updated.add(userID);
+            return updated;
+        });
+        return true;
+    }
+
+    private void unwatchAll(int userID) {
+        Set<Integer> itemIDs = watchedItems.remove(userID);
+        if (itemIDs == null) {
+            return;
+        }
+        for (Integer itemID : itemIDs) {
+            watchers.computeIfPresent(itemID, (id, itemWatchers) -> {
+                itemWatchers.remove(userID);
+                return itemWatchers.isEmpty() ? null : itemWatchers;
+            });
+        }
+    }
+
+    int getWatchedItemCount() {
+        return watchers.size();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    // ---- Publishing, called on the request path ----
+
+    public void bidPlaced(int itemID, int bidderID, int displacedBidderID, int price) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        if (displacedBidderID != 0 && displacedBidderID != bidderID) {
+            publish(displacedBidderID, new UtilityClass.AuctionEvent(UtilityClass.AuctionEvent.Type.OUTBID, itemID, price, null));
+        }
+        Set<Integer> itemWatchers = watchers.get(itemID);
+        if (itemWatchers != null) {
+            UtilityClass.AuctionEvent event = new UtilityClass.AuctionEvent(UtilityClass.AuctionEvent.Type.PRICE_CHANGED, itemID, price, null);
+            for (Integer userID : itemWatchers) {
+                if (userID != bidderID && userID != displacedBidderID) {
+                    publish(userID, event);
+                }
+            }
+        }
+    }
+
+    public void auctionClosed(int itemID, int leaderID, int price, String winningEmail) {
+        Set<Integer> itemWatchers = watchers.remove(itemID);
+        if (itemWatchers != null) {
+            for (Integer userID : itemWatchers) {
+                Set<Integer> itemIDs = watchedItems.get(userID);
+                if (itemIDs != null) {
+                    itemIDs.remove(itemID);
+                }
+            }
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        UtilityClass.AuctionEvent event = new UtilityClass.AuctionEvent(UtilityClass.AuctionEvent.Type.CLOSED, itemID, price, winningEmail);
+        if (leaderID != 0) {
+            publish(leaderID, event);
+        }
+        if (itemWatchers != null) {
+            for (Integer userID : itemWatchers) {
+                if (userID != leaderID) {
+                    publish(userID, event);
+                }
+            }
+        }
+    }
+
+    private void publish(int userID, UtilityClass.AuctionEvent event) {
+        Subscriber subscriber = subscribers.get(userID);
+        if (subscriber != null && subscriber.offer(event)) {
+            executor.execute(subscriber::deliver);
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private final class Subscriber {
+        private final int userID;
+        private final UtilityClass.AuctionListener listener;
+        private final LinkedHashMap<Integer, UtilityClass.AuctionEvent> pending = new LinkedHashMap<>();
+        private boolean scheduled;
+        private boolean overflowed;
+        private int consecutiveFailures;
+        private volatile boolean cancelled;
+
+        Subscriber(int userID, UtilityClass.AuctionListener listener) {
+            this.userID = userID;
+            this.listener = listener;
+        }
+
+        /**
+         * Queues or coalesces the event and returns true if the caller must schedule a delivery.
+         */
+        synchronized boolean offer(UtilityClass.AuctionEvent event) {
+            UtilityClass.AuctionEvent previous = pending.get(event.getItemID());
+            if (previous != null) {
+                pending.put(event.getItemID(), coalesce(previous, event));
+                metrics.notificationsCoalesced(1);
+            } else if (pending.size() >= MAX_PENDING_ITEMS) {
+                overflowed = true;
+                metrics.notificationsDropped(1);
+            } else {
+                pending.put(event.getItemID(), event);
+            }
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        void deliver() {
+            if (cancelled) {
+                return;
+            }
+            UtilityClass.AuctionEvent[] batch = takeBatch();
+            try {
+                listener.onEvents(batch);
+                consecutiveFailures = 0;
+                metrics.notificationsDelivered(batch.length);
+            } catch (RemoteException | RuntimeException e) {
+                metrics.notificationsDropped(batch.length);
+                if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    cancelled = true;
+                    if (subscribers.remove(userID, this)) {
+                        unwatchAll(userID);
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    overflowed = true;
+                }
+            }
+            synchronized (this) {
+                if (pending.isEmpty() && !overflowed) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            executor.execute(this::deliver);
+        }
+
+        private synchronized UtilityClass.AuctionEvent[] takeBatch() {
+            List<UtilityClass.AuctionEvent> batch = new ArrayList<>(Math.min(pending.size() + 1, MAX_BATCH));
+            Iterator<UtilityClass.AuctionEvent> events = pending.values().iterator();
+            while (events.hasNext() && batch.size() < MAX_BATCH) {
+                batch.add(events.next());
+                events.remove();
+            }
+            if (overflowed && pending.isEmpty() && batch.size() < MAX_BATCH) {
+                batch.add(new UtilityClass.AuctionEvent(UtilityClass.AuctionEvent.Type.RESYNC_REQUIRED, 0, 0, null));
+                overflowed = false;
+            }
+            return batch.toArray(new UtilityClass.AuctionEvent[0]);
+        }
+    }
+
+    /**
+     * CLOSED is final. Otherwise the higher price wins, since concurrent bids may publish out of order,
+     * and an OUTBID is not downgraded to PRICE_CHANGED.
+     */
+    private static UtilityClass.AuctionEvent coalesce(UtilityClass.AuctionEvent previous, UtilityClass.AuctionEvent next) {
+        if (previous.getType() == UtilityClass.AuctionEvent.Type.CLOSED) {
+            return previous;
+        }
+        if (next.getType() == UtilityClass.AuctionEvent.Type.CLOSED) {
+            return next;
+        }
+        UtilityClass.AuctionEvent.Type type = previous.getType() == UtilityClass.AuctionEvent.Type.OUTBID
+            ? UtilityClass.AuctionEvent.Type.OUTBID : next.getType();
+        int price = Math.max(previous.getPrice(), next.getPrice());
+        if (type == next.getType() && price == next.getPrice()) {
+            return next;
+        }
+        return new UtilityClass.AuctionEvent(type, next.getItemID(), price, null);
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Backup side of replication: applies a primary's stream to a local replica and takes over when the
+ * primary goes away.
+ *
+ * peers lists every server's replication endpoint in promotion order, the same list on every server.
+ * When the stream breaks the follower walks it from the top, giving each peer failoverMillis to accept
+ * it: the first live primary is followed, and reaching its own entry means every server ranked above it
+ * is gone, so it promotes itself with the next epoch. Because lower-ranked backups wait out the same
+ * timeout on each entry above them, the highest-ranked survivor promotes first and the others attach to it.
+ */
+public class ReplicationFollower implements Closeable {
+
+    /**
+     * Where the stream is applied. Snapshot records arrive between resyncStarted and resyncFinished;
+     * anything the replica holds that the snapshot does not mention was removed while disconnected.
+     */
+    public interface Replica extends AuctionJournal.Events {
+        void resyncStarted();
+
+        void resyncFinished();
+
+        /**
+         * Called on the follower thread once this server is to become primary for the given epoch.
+         */
+        void promote(long epoch);
+    }
+
+    private static final long RETRY_MILLIS = 100;
+
+    private final InetSocketAddress primary;
+    private final List<InetSocketAddress> peers;
+    private final int selfIndex;
+    private final Replica replica;
+    private final ServerMetrics metrics;
+    private final long failoverMillis;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile InetSocketAddress following;
+    private volatile long epoch;
+    private volatile long appliedSequence;
+    private volatile long lagMillis;
+
+    /**
+     * Starts following primary. selfIndex is this server's position in peers, or -1 if it should never promote.
+     */
+    public ReplicationFollower(InetSocketAddress primary, List<InetSocketAddress> peers, int selfIndex, Replica replica,
+                               ServerMetrics metrics, long failoverMillis) {
+        this.primary = primary;
+        this.peers = peers;
+        this.selfIndex = selfIndex;
+        this.replica = replica;
+        this.metrics = metrics;
+        this.failoverMillis = failoverMillis;
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Index of the entry in peers that refers to this machine's replicationPort, or -1.
+     */
+    public static int indexOfSelf(List<InetSocketAddress> peers, int replicationPort) {
+        for (int i = 0; i < peers.size(); i++) {
+            InetSocketAddress peer = peers.get(i);
+            if (peer.getPort() == replicationPort && isLocal(peer.getAddress())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLocal(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+            return true;
+        }
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Lag of the last applied event; 0 once a heartbeat shows nothing is outstanding.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public InetSocketAddress getFollowing() {
+        return following;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        InetSocketAddress target = primary;
+        while (running) {
+            if (target != null && follow(target)) {
+                System.err.println("Lost replication stream from " + target + ", looking for a primary");
+            }
+            target = null;
+            for (int i = 0; i < peers.size() && running; i++) {
+                if (i == selfIndex) {
+                    running = false;
+                    System.out.println("No live primary ranked above this server; promoting to epoch " + (epoch + 1));
+                    replica.promote(epoch + 1);
+                    return;
+                }
+                if (follow(peers.get(i))) {
+                    // Followed a new primary until it too went away; start the walk again
+                    System.err.println("Lost replication stream from " + peers.get(i) + ", looking for a primary");
+                    i = -1;
+                }
+            }
+            if (running && selfIndex < 0) {
+                System.err.println("No primary reachable among " + peers + ", retrying");
+            }
+        }
+    }
+
+    /**
+     * Connects to target, retrying for failoverMillis, and applies its stream until it breaks. Returns
+     * whether a stream was established at all.
+     */
+    private boolean follow(InetSocketAddress target) {
+        long giveUpAt = System.currentTimeMillis() + failoverMillis;
+        Socket connected = null;
+        while (running && connected == null) {
+            Socket attempt = new Socket();
+            try {
+                attempt.connect(target, (int) Math.max(1, giveUpAt - System.currentTimeMillis()));
+                connected = attempt;
+            } catch (IOException e) {
+                closeQuietly(attempt);
+                if (System.currentTimeMillis() + RETRY_MILLIS >= giveUpAt) {
+                    return false;
+                }
+                sleep(RETRY_MILLIS);
+            }
+        }
+        if (connected == null) {
+            return false;
+        }
+        socket = connected;
+        try {
+            connected.setTcpNoDelay(true);
+            // A primary that sends neither events nor heartbeats for the failover timeout is treated as dead
+            connected.setSoTimeout((int) Math.max(failoverMillis, ReplicationPublisher.HEARTBEAT_MILLIS * 5));
+            DataOutputStream out = new DataOutputStream(connected.getOutputStream());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connected.getInputStream(), 1 << 16));
+            out.writeInt(ReplicationPublisher.MAGIC);
+            out.flush();
+            if (in.readInt() != ReplicationPublisher.MAGIC) {
+                throw new IOException("Not a replication primary");
+            }
+            epoch = in.readLong();
+            following = target;
+            System.out.println("Following primary " + target + " at epoch " + epoch);
+            apply(in);
+            return true;
+        } catch (IOException e) {
+            // A primary that accepted the connection and then failed still counts as having been followed
+            return following == target;
+        } finally {
+            following = null;
+            closeQuietly(connected);
+        }
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte[] body = new byte[256];
+        while (running) {
+            int length = in.readInt();
+            if (length < ReplicationPublisher.HEADER_LENGTH) {
+                throw new IOException("Corrupt replication frame of length " + length);
+            }
+            byte kind = in.readByte();
+            long sequence = in.readLong();
+            long sentAt = in.readLong();
+            int bodyLength = length - ReplicationPublisher.HEADER_LENGTH;
+            if (bodyLength > body.length) {
+                body = new byte[Math.max(bodyLength, body.length * 2)];
+            }
+            in.readFully(body, 0, bodyLength);
+            switch (kind) {
+                case ReplicationPublisher.SNAPSHOT_BEGIN:
+                    replica.resyncStarted();
+                    break;
+                case ReplicationPublisher.SNAPSHOT_RECORD:
+                    AuctionJournal.decode(ByteBuffer.wrap(body, 0, bodyLength), replica);
+                    break;
+                case ReplicationPublisher.SNAPSHOT_END:
+                    replica.resyncFinished();
+                    appliedSequence = sequence;
+                    break;
+                case ReplicationPublisher.EVENT:
+                    AuctionJournal.decode(ByteBuffer.wrap(body, 0, bodyLength), replica);
+                    appliedSequence = sequence;
+                    lagMillis = Math.max(0, System.currentTimeMillis() - sentAt);
+                    metrics.replicatedEventApplied(lagMillis);
+                    break;
+                case ReplicationPublisher.HEARTBEAT:
+                    // The heartbeat carries the primary's latest sequence; fewer applied means events are still queued
+                    if (sequence <= appliedSequence) {
+                        lagMillis = 0;
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown replication frame kind " + kind);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Primary side of replication: streams every state change to connected backups.
+ *
+ * Frames are [int length][byte kind][long sequence][long sentAtMillis][record], where the record is a
+ * journal record body. When a backup connects the publisher starts queueing live events for it, then
+ * sends a snapshot of the full state between SNAPSHOT_BEGIN and SNAPSHOT_END, then the queue. Replaying
+ * a record is idempotent, as in journal recovery, so events that overlap the snapshot are harmless. A
+ * backup is added while holding the caller's join lock, which the caller keeps for any change it journals
+ * before applying, so every change is either queued for the backup or already visible to its snapshot.
+ * Each backup has its own bounded queue and sender thread; one that falls QUEUE_CAPACITY events behind
+ * is dropped and resyncs from a new snapshot when it reconnects. Heartbeats let an idle backup tell a
+ * quiet primary from a dead one.
+ */
+public class ReplicationPublisher extends AuctionJournal.Encoder implements Closeable {
+
+    static final int MAGIC = 0x41524550;
+    static final int HEADER_LENGTH = 1 + 8 + 8;
+    static final long HEARTBEAT_MILLIS = 200;
+
+    // Frame kinds
+    static final byte SNAPSHOT_BEGIN = 1;
+    static final byte SNAPSHOT_RECORD = 2;
+    static final byte SNAPSHOT_END = 3;
+    static final byte EVENT = 4;
+    static final byte HEARTBEAT = 5;
+
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final AuctionJournal.StateSource state;
+    private final Lock joinLock;
+    private final List<Backup> backups = new CopyOnWriteArrayList<>();
+    private volatile ServerSocket listener;
+    private volatile long epoch;
+    private volatile long sequence;
+    private boolean closed;   // guarded by this
+
+    public ReplicationPublisher(AuctionJournal.StateSource state, Lock joinLock) {
+        this.state = state;
+        this.joinLock = joinLock;
+    }
+
+    /**
+     * Starts accepting backups on port, publishing as primary of the given epoch.
+     */
+    public synchronized void listen(int port, long epoch) throws IOException {
+        if (listener != null) {
+            throw new IllegalStateException("Already publishing on port " + listener.getLocalPort());
+        }
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port));
+        this.epoch = epoch;
+        this.listener = socket;
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Makes this the primary of epoch, whether or not it listens for backups.
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public boolean isListening() {
+        return listener != null;
+    }
+
+    /**
+     * True while at least one backup is connected, so the caller can skip encoding events nobody reads.
+     */
+    public boolean isStreaming() {
+        return !backups.isEmpty();
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getBackupCount() {
+        return backups.size();
+    }
+
+    @Override
+    protected void write(ByteBuffer body, int crc) {
+        // One lock orders sequence numbers and every backup's queue identically, and is the one a backup joins under
+        synchronized (this) {
+            if (backups.isEmpty()) {
+                return;
+            }
+            byte[] frame = frame(EVENT, sequence + 1, body);
+            sequence++;
+            for (Backup backup : backups) {
+                backup.enqueue(frame);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (listener != null) {
+            listener.close();
+        }
+        for (Backup backup : backups) {
+            backup.disconnect();
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket socket = listener;
+        while (!socket.isClosed()) {
+            try {
+                Backup backup = new Backup(socket.accept());
+                Thread sender = new Thread(backup, "replication-sender-" + backup.socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static byte[] frame(byte kind, long sequence, ByteBuffer body) {
+        int length = body == null ? 0 : body.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(4 + HEADER_LENGTH + length);
+        frame.putInt(HEADER_LENGTH + length).put(kind).putLong(sequence).putLong(System.currentTimeMillis());
+        if (body != null) {
+            frame.put(body.duplicate());
+        }
+        return frame.array();
+    }
+
+    private final class Backup implements Runnable {
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private volatile boolean dropped;
+
+        Backup(Socket socket) {
+            this.socket = socket;
+        }
+
+        void enqueue(byte[] frame) {
+            if (!queue.offer(frame) && !dropped) {
+                System.err.println("Backup " + socket.getRemoteSocketAddress() + " fell too far behind, dropping it");
+                disconnect();
+            }
+        }
+
+        void disconnect() {
+            dropped = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a replication client");
+                }
+                out.writeInt(MAGIC);
+                out.writeLong(epoch);
+
+                // Queue live events from here on; the snapshot below covers everything up to joinedAt
+                long joinedAt;
+                joinLock.lock();
+                try {
+                    synchronized (ReplicationPublisher.this) {
+                        if (closed) {
+                            throw new IOException("Publisher closed");
+                        }
+                        backups.add(this);
+                        joinedAt = sequence;
+                    }
+                } finally {
+                    joinLock.unlock();
+                }
+                out.write(frame(SNAPSHOT_BEGIN, 0, null));
+                state.exportState(new AuctionJournal.Encoder() {
+                    @Override
+                    protected void write(ByteBuffer body, int crc) throws IOException {
+                        out.write(frame(SNAPSHOT_RECORD, 0, body));
+                    }
+                });
+                out.write(frame(SNAPSHOT_END, joinedAt, null));
+                out.flush();
+
+                while (!dropped) {
+                    byte[] frame = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        out.write(frame(HEARTBEAT, sequence, ByteBuffer.wrap(EMPTY)));
+                    } else {
+                        out.write(frame);
+                    }
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (!dropped) {
+                    System.err.println("Backup " + socket.getRemoteSocketAddress() + " disconnected: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                backups.remove(this);
+                disconnect();
+            }
+        }
+    }
+}
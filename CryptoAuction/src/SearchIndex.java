@@ -0,0 +1,606 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index over item names and descriptions plus an index on current price, kept up to date as
+ * items are created, bid on and closed.
+ *
+ * Every word, every price and the set of all live items map to a sorted array of item IDs. A query walks
+ * candidate IDs in ascending order from the cursor, so results page in itemID order like listItemsPage.
+ * Candidates come from whichever source should fill a page soonest, judged from list sizes: the
+ * intersection of the query's words, the union of the words under its prefix, the union of the prices in
+ * its range, or all live items. Word lists are intersected by leapfrogging galloping cursors; the other
+ * filters are checked per candidate against the live item.
+ *
+ * A list holding at least one in BITMAP_DENSITY of the IDs up to its highest also keeps a bitmap of them,
+ * which costs no more than the array. Cursors over such lists find the next ID by scanning bitmap words,
+ * and words that all have bitmaps are intersected 64 IDs at a time, so common words that rarely or never
+ * occur together are not walked entry by entry.
+ *
+ * Removals and price moves only count the stale entry; a list is compacted once half of it is stale.
+ */
+public class SearchIndex {
+
+    // Unions of more lists than this are only used as filters, never walked
+    private static final int MAX_MERGED_LISTS = 1024;
+    // Rough cost of opening one list of a union, in candidate checks
+    private static final int MERGE_SETUP_COST = 4;
+    // A list keeps a bitmap once it holds one in this many of the IDs up to its highest...
+    private static final int BITMAP_DENSITY = 32;
+    // ...and has at least this many entries; galloping through shorter lists is already cheap
+    private static final int MIN_BITMAP_SIZE = 1024;
+    // Leapfrog.intersectBitmaps could not read every bitmap without a write intervening
+    private static final int RETRY = Integer.MIN_VALUE;
+
+    private final ConcurrentSkipListMap<String, Postings> words = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, Postings> prices = new ConcurrentSkipListMap<>();
+    private final Postings live = new Postings(false);
+    private final AuctionStore store;
+
+    /**
+     * store holds the live items; an item is indexed until it is removed there.
+     */
+    public SearchIndex(AuctionStore store) {
+        this.store = store;
+    }
+
+    public void add(UtilityClass.AuctionItem item) {
+        int itemID = item.getItemID();
+        for (String word : wordsOf(item)) {
+            addTo(words, word, itemID);
+        }
+        addTo(prices, item.getHighestBid(), itemID);
+        live.add(itemID);
+    }
+
+    /**
+     * Moves an item to its new highest bid; previousPrice need only be a hint, as stale entries are re-checked.
+     */
+    public void priceChanged(int itemID, int price, int previousPrice) {
+        if (price != previousPrice) {
+            addTo(prices, price, itemID);
+            discardFrom(prices, previousPrice, id -> store.isLive(id) && store.highestBid(id) == previousPrice);
+        }
+    }
+
+    /**
+     * Called after the item has been removed from the live catalogue.
+     */
+    public void remove(UtilityClass.AuctionItem item) {
+        IntPredicate isLive = store::isLive;
+        for (String word : wordsOf(item)) {
+            discardFrom(words, word, isLive);
+        }
+        discardFrom(prices, item.getHighestBid(), isLive);
+        live.discard(isLive);
+    }
+
+    /**
+     * Up to limit matching items with IDs above afterItemID, in ascending itemID order.
+     */
+    public UtilityClass.ItemPage search(UtilityClass.SearchQuery query, int afterItemID, int limit) {
+        double total = Math.max(1, live.size());
+        List<Postings> wordLists = new ArrayList<>();
+        for (String word : wordsOf(query.getText())) {
+            Postings postings = words.get(word);
+            if (postings == null) {
+                return emptyPage(afterItemID);
+            }
+            wordLists.add(postings);
+        }
+        wordLists.sort(Comparator.comparingInt(Postings::size));
+        String prefix = query.getPrefix() == null ? "" : query.getPrefix().trim().toLowerCase(Locale.ROOT);
+        Union prefixed = prefix.isEmpty() ? null : new Union(words.subMap(prefix, prefix + Character.MAX_VALUE).values());
+        int minPrice = query.getMinPrice();
+        int maxPrice = query.getMaxPrice();
+        if (minPrice > maxPrice) {
+            return emptyPage(afterItemID);
+        }
+        boolean priced = minPrice > 0 || maxPrice < Integer.MAX_VALUE;
+        Union priceRange = priced ? new Union(prices.subMap(minPrice, true, maxPrice, true).values()) : null;
+
+        // Fraction of live items each filter keeps
+        double wordsKept = 1;
+        for (Postings postings : wordLists) {
+            wordsKept *= Math.min(1, postings.size() / total);
+        }
+        double prefixKept = prefixed == null ? 1 : prefixed.fraction(total);
+        double priceKept = priceRange == null ? 1 : priceRange.fraction(total);
+        double allKept = wordsKept * prefixKept * priceKept;
+        if (allKept == 0) {
+            return emptyPage(afterItemID);
+        }
+
+        // Expected work to fill the page from each source: candidates drawn until enough pass the other filters
+        Source source = Source.ALL;
+        double best = Math.min(total, limit / allKept);
+        if (!wordLists.isEmpty()) {
+            double leadKept = Math.min(1, wordLists.get(0).size() / total);
+            double cost = Math.min(wordLists.get(0).size(), limit * leadKept / allKept);
+            if (cost <= best) {
+                best = cost;
+                source = Source.WORDS;
+            }
+        }
+        if (prefixed != null && prefixed.mergeable()) {
+            double cost = prefixed.lists * MERGE_SETUP_COST + Math.min(prefixed.entries, limit * prefixKept / allKept);
+            if (cost < best) {
+                best = cost;
+                source = Source.PREFIX;
+            }
+        }
+        if (priceRange != null && priceRange.mergeable()) {
+            double cost = priceRange.lists * MERGE_SETUP_COST + Math.min(priceRange.entries, limit * priceKept / allKept);
+            if (cost < best) {
+                source = Source.PRICE;
+            }
+        }
+
+        Candidates candidates;
+        switch (source) {
+            case WORDS:
+                candidates = new Leapfrog(wordLists, afterItemID);
+                break;
+            case PREFIX:
+                candidates = new Merge(prefixed.source, afterItemID);
+                break;
+            case PRICE:
+                candidates = new Merge(priceRange.source, afterItemID);
+                break;
+            default:
+                candidates = new Merge(List.of(live), afterItemID);
+                break;
+        }
+        Cursor[] wordChecks = new Cursor[source == Source.WORDS ? 0 : wordLists.size()];
+        for (int i = 0; i < wordChecks.length; i++) {
+            wordChecks[i] = new Cursor(wordLists.get(i));
+        }
+        String prefixCheck = source == Source.PREFIX ? "" : prefix;
+
+        List<UtilityClass.AuctionItem> page = new ArrayList<>(Math.min(limit, 64));
+        int cursor = afterItemID;
+        next:
+        for (int itemID = candidates.next(); itemID > 0; itemID = candidates.next()) {
+            for (Cursor check : wordChecks) {
+                if (check.seek(itemID) != itemID) {
+                    continue next;
+                }
+            }
+            if (priced) {
+                int price = store.highestBid(itemID);
+                if (price < minPrice || price > maxPrice) {
+                    continue;
+                }
+            }
+            // Copy the item only once the cheap column checks pass, then re-check the copy
+            UtilityClass.AuctionItem item = store.get(itemID);
+            if (item == null || (!prefixCheck.isEmpty() && !hasWordStartingWith(item, prefixCheck))) {
+                continue;
+            }
+            if (priced && (item.getHighestBid() < minPrice || item.getHighestBid() > maxPrice)) {
+                continue;
+            }
+            if (page.size() == limit) {
+                return new UtilityClass.ItemPage(page.toArray(UtilityClass.AuctionItem[]::new), cursor, true);
+            }
+            page.add(item);
+            cursor = itemID;
+        }
+        return new UtilityClass.ItemPage(page.toArray(UtilityClass.AuctionItem[]::new), cursor, false);
+    }
+
+    private static boolean hasWordStartingWith(UtilityClass.AuctionItem item, String prefix) {
+        for (String word : wordsOf(item)) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static UtilityClass.ItemPage emptyPage(int afterItemID) {
+        return new UtilityClass.ItemPage(new UtilityClass.AuctionItem[0], afterItemID, false);
+    }
+
+    private static <K> void addTo(ConcurrentSkipListMap<K, Postings> index, K key, int itemID) {
+        for (;;) {
+            Postings postings = index.computeIfAbsent(key, k -> new Postings(true));
+            if (postings.add(itemID)) {
+                return;
+            }
+            index.remove(key, postings);
+        }
+    }
+
+    private static <K> void discardFrom(ConcurrentSkipListMap<K, Postings> index, K key, IntPredicate keep) {
+        Postings postings = index.get(key);
+        if (postings != null && postings.discard(keep)) {
+            index.remove(key, postings);
+        }
+    }
+
+    private static Set<String> wordsOf(UtilityClass.AuctionItem item) {
+        Set<String> result = wordsOf(item.getName());
+        result.addAll(wordsOf(item.getDescription()));
+        return result;
+    }
+
+    /**
+     * Lower-cased runs of letters and digits.
+     */
+    static Set<String> wordsOf(String text) {
+        Set<String> result = new HashSet<>();
+        if (text == null) {
+            return result;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    private enum Source { WORDS, PREFIX, PRICE, ALL }
+
+    /**
+     * The lists under a prefix or price range, sized up to MAX_MERGED_LISTS of them.
+     */
+    private static final class Union {
+        final Collection<Postings> source;
+        long entries;
+        int lists;
+
+        Union(Collection<Postings> source) {
+            this.source = source;
+            for (Postings postings : source) {
+                if (++lists > MAX_MERGED_LISTS) {
+                    break;
+                }
+                entries += postings.size();
+            }
+        }
+
+        boolean mergeable() {
+            return lists <= MAX_MERGED_LISTS;
+        }
+
+        double fraction(double total) {
+            // Too many lists to count: assume the filter keeps everything
+            return mergeable() ? Math.min(1, entries / total) : 1;
+        }
+    }
+
+    private interface Candidates {
+        /**
+         * The next candidate ID in ascending order, or -1 when there are no more.
+         */
+        int next();
+    }
+
+    /**
+     * IDs present in every list: ANDs the bitmaps when every list has one, otherwise each cursor in turn
+     * gallops to the current candidate until all agree.
+     */
+    private static final class Leapfrog implements Candidates {
+        private final Cursor[] cursors;
+        private final long[] stamps;
+        private final long[][] bitmaps;
+        private int last;
+
+        Leapfrog(List<Postings> lists, int afterItemID) {
+            this.cursors = new Cursor[lists.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = new Cursor(lists.get(i));
+            }
+            this.stamps = new long[cursors.length];
+            this.bitmaps = new long[cursors.length][];
+            this.last = afterItemID;
+        }
+
+        public int next() {
+            if (last == Integer.MAX_VALUE) {
+                return -1;
+            }
+            int candidate = intersectBitmaps(last + 1);
+            if (candidate != RETRY) {
+                last = candidate < 0 ? Integer.MAX_VALUE : candidate;
+                return candidate;
+            }
+            candidate = last + 1;
+            int agreed = 0;
+            for (int i = 0; agreed < cursors.length; i = (i + 1) % cursors.length) {
+                int found = cursors[i].seek(candidate);
+                if (found < 0) {
+                    return -1;
+                }
+                if (found == candidate) {
+                    agreed++;
+                } else {
+                    candidate = found;
+                    agreed = 1;
+                }
+            }
+            last = candidate;
+            return candidate;
+        }
+
+        /**
+         * The first ID at or above from set in every bitmap, -1 if there is none, or RETRY if a list has
+         * no bitmap or was written to meanwhile; a busy list then falls back to the cursors and their locks.
+         */
+        private int intersectBitmaps(int from) {
+            // Bitmaps grow ahead of their lists, so stop at the lowest highest ID rather than the shortest bitmap
+            int words = Integer.MAX_VALUE;
+            for (int i = 0; i < cursors.length; i++) {
+                Postings postings = cursors[i].postings;
+                stamps[i] = postings.lock.tryOptimisticRead();
+                bitmaps[i] = postings.bits;
+                int[] ids = postings.ids;
+                int size = Math.min(postings.size, ids.length);
+                if (stamps[i] == 0 || bitmaps[i] == null || size == 0) {
+                    return RETRY;
+                }
+                words = Math.min(words, Math.min(bitmaps[i].length, (ids[size - 1] >>> 6) + 1));
+            }
+            long[] first = bitmaps[0];
+            int found = -1;
+            for (int w = from >>> 6; w < words; w++) {
+                long word = first[w];
+                for (int i = 1; i < bitmaps.length && word != 0; i++) {
+                    word &= bitmaps[i][w];
+                }
+                if (w == from >>> 6) {
+                    word &= -1L << from;
+                }
+                if (word != 0) {
+                    found = (w << 6) + Long.numberOfTrailingZeros(word);
+                    break;
+                }
+            }
+            for (int i = 0; i < cursors.length; i++) {
+                if (!cursors[i].postings.lock.validate(stamps[i])) {
+                    return RETRY;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * IDs present in any list, without repeats.
+     */
+    private static final class Merge implements Candidates {
+        private final List<Cursor> cursors = new ArrayList<>();
+        private final PriorityQueue<Long> heads = new PriorityQueue<>();
+        private int last;
+
+        Merge(Collection<Postings> lists, int afterItemID) {
+            for (Postings postings : lists) {
+                if (cursors.size() == MAX_MERGED_LISTS) {
+                    break;
+                }
+                Cursor cursor = new Cursor(postings);
+                cursors.add(cursor);
+                push(cursors.size() - 1, cursor.seek(afterItemID + 1));
+            }
+            this.last = afterItemID;
+        }
+
+        public int next() {
+            for (Long head = heads.poll(); head != null; head = heads.poll()) {
+                int itemID = (int) (head >>> 32);
+                int list = (int) (long) head;
+                if (itemID < Integer.MAX_VALUE) {
+                    push(list, cursors.get(list).seek(itemID + 1));
+                }
+                if (itemID != last) {
+                    last = itemID;
+                    return itemID;
+                }
+            }
+            return -1;
+        }
+
+        private void push(int list, int itemID) {
+            if (itemID > 0) {
+                heads.add(((long) itemID << 32) | list);
+            }
+        }
+    }
+
+    /**
+     * Forward-only position in one list; seek targets must not decrease.
+     */
+    private static final class Cursor {
+        private final Postings postings;
+        private int position;
+        private int compactions;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+        }
+
+        /**
+         * The smallest ID at or above target, or -1.
+         */
+        int seek(int target) {
+            StampedLock lock = postings.lock;
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int found = seekIn(target);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                position = 0;
+                return seekIn(target);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Scans the bitmap if the list has one; otherwise gallops forward from the last position, then
+         * binary searches the bracketed range.
+         */
+        private int seekIn(int target) {
+            long[] bits = postings.bits;
+            if (bits != null) {
+                int w = target >>> 6;
+                if (w >= bits.length) {
+                    return -1;
+                }
+                for (long word = bits[w] & (-1L << target); ; word = bits[w]) {
+                    if (word != 0) {
+                        return (w << 6) + Long.numberOfTrailingZeros(word);
+                    }
+                    if (++w == bits.length) {
+                        return -1;
+                    }
+                }
+            }
+            int[] ids = postings.ids;
+            int size = Math.min(postings.size, ids.length);
+            if (compactions != postings.compactions) {
+                // Entries moved down, so IDs not yet seen may now sit before the old position
+                compactions = postings.compactions;
+                position = 0;
+            }
+            int low = Math.min(position, size);
+            if (low < size && ids[low] < target) {
+                int step = 1;
+                while (low + step < size && ids[low + step] < target) {
+                    low += step;
+                    step <<= 1;
+                }
+                int found = Arrays.binarySearch(ids, low + 1, Math.min(low + step, size), target);
+                low = found >= 0 ? found : -found - 1;
+            }
+            position = low;
+            return low < size ? ids[low] : -1;
+        }
+    }
+
+    /**
+     * Sorted item IDs for one word or price, or for all live items. Writers take the lock; readers use
+     * optimistic reads and retry under the read lock if a write intervened. Entries for closed or
+     * repriced items stay until the list is compacted. A word or price list compacted to nothing is
+     * retired and must be replaced in its map. bits, when set, holds exactly the IDs in ids.
+     */
+    static final class Postings {
+        final StampedLock lock = new StampedLock();
+        private final boolean retirable;
+        int[] ids = new int[4];
+        long[] bits;
+        volatile int size;
+        int compactions;
+        private int stale;
+        private boolean retired;
+
+        Postings(boolean retirable) {
+            this.retirable = retirable;
+        }
+
+        /**
+         * Returns false if the list has been retired.
+         */
+        boolean add(int itemID) {
+            long stamp = lock.writeLock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                int at = size;
+                if (size > 0 && ids[size - 1] >= itemID) {
+                    // Out of order: an older item moving to this price, or creations racing on shards
+                    int found = Arrays.binarySearch(ids, 0, size, itemID);
+                    if (found >= 0) {
+                        return true;
+                    }
+                    at = -found - 1;
+                }
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                System.arraycopy(ids, at, ids, at + 1, size - at);
+                ids[at] = itemID;
+                size++;
+                if (bits != null && itemID >>> 6 >= bits.length) {
+                    // Keep growing the bitmap only while the list stays dense
+                    bits = dense(size, itemID) ? Arrays.copyOf(bits, Math.max(bits.length * 2, (itemID >>> 6) + 1)) : null;
+                }
+                if (bits != null) {
+                    bits[itemID >>> 6] |= 1L << itemID;
+                } else if (dense(size, ids[size - 1])) {
+                    bits = bitmapOf(ids, size);
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Counts one entry as stale and compacts once half the list is; returns true if the list is now retired.
+         */
+        boolean discard(IntPredicate keep) {
+            long stamp = lock.writeLock();
+            try {
+                if (++stale * 2 < size) {
+                    return false;
+                }
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (keep.test(ids[i])) {
+                        ids[kept++] = ids[i];
+                    }
+                }
+                size = kept;
+                stale = 0;
+                compactions++;
+                bits = kept > 0 && dense(kept, ids[kept - 1]) ? bitmapOf(ids, kept) : null;
+                if (ids.length > 16 && kept < ids.length / 4) {
+                    ids = Arrays.copyOf(ids, Math.max(16, kept * 2));
+                }
+                retired = retirable && kept == 0;
+                return retired;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private static boolean dense(int size, int highest) {
+            return size >= MIN_BITMAP_SIZE && (long) size * BITMAP_DENSITY >= highest;
+        }
+
+        private static long[] bitmapOf(int[] ids, int size) {
+            long[] bits = new long[(ids[size - 1] >>> 6) + 1];
+            for (int i = 0; i < size; i++) {
+                bits[ids[i] >>> 6] |= 1L << ids[i];
+            }
+            return bits;
+        }
+    }
+}
@@ -1,117 +1,1147 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.management.ObjectName;
 
 public class Server extends UnicastRemoteObject implements UtilityClass.Auction {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int RETAINED_CHANGES = 1_000_000;
+    private static final int NOTIFICATION_THREADS = 4;
+    private static final int SHARD_RING_SIZE = 4096;
+    private static final long DEADLINE_TICK_MILLIS = 10;
+    private static final long SETTLEMENT_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final BidLog NO_BIDS = new BidLog();
+
     private final AtomicInteger userCounter = new AtomicInteger(1);
     private final AtomicInteger auctionCounter = new AtomicInteger(1);
-    private final Map<Integer, UtilityClass.User> users = new ConcurrentHashMap<>();
-    private final Map<Integer, UtilityClass.AuctionItem> auctionItems = new ConcurrentHashMap<>();
-    private final Map<Integer, Integer> auctionOwners = new ConcurrentHashMap<>();
-    private final UtilityClass.TokenManager tokenManager = new UtilityClass.TokenManager();
-    private final PrivateKey serverPrivateKey;
+    private final AuctionStore store = new AuctionStore();
+    private final Map<Integer, Settlement> settlements = new ConcurrentHashMap<>();
+    private final Map<Integer, BidLog> closedHistories = new ConcurrentHashMap<>();
+    private final ItemChangeLog changeLog = new ItemChangeLog(RETAINED_CHANGES);
+    private final UtilityClass.TokenManager tokenManager;
+    private final Map<UtilityClass.SignatureScheme, KeyPair> serverKeys = new ConcurrentHashMap<>();
+    private final AuctionJournal.Events journal;
+    private final ShardedEngine engine;
+    private final TimingWheel deadlines;
+    private final ServerMetrics metrics = new ServerMetrics(store::userCount, store::liveCount,
+        this::activeSessionCount, () -> changeLog.currentVersion());
+    private final NotificationDispatcher notifications = new NotificationDispatcher(NOTIFICATION_THREADS, metrics);
+    private final SearchIndex searchIndex = new SearchIndex(store);
+    // Held shared by changes journaled before they are applied; a backup joins only while nobody holds it
+    private final ReentrantReadWriteLock journalFirst = new ReentrantReadWriteLock();
+    private final ReplicationPublisher replication = new ReplicationPublisher(this::exportState, journalFirst.writeLock());
+    private final AuctionJournal journalFile;
+    private volatile ReplicationFollower follower;
+    private volatile AdmissionControl admission = new AdmissionControl(Map.of(), 0, metrics);
+    private volatile int replicationPort;
 
     public Server(PrivateKey privateKey) throws RemoteException {
-        this.serverPrivateKey = privateKey;
+        this(privateKey, null);
+    }
+
+    /**
+     * Creates a server whose state is recovered from, and persisted to, the given journal.
+     */
+    public Server(PrivateKey privateKey, AuctionJournal journal) throws RemoteException {
+        this(privateKey, journal, 0);
+    }
+
+    /**
+     * As above; with shards > 0 item mutations run on that many single-writer shards instead of on the
+     * calling thread, giving every item a strict order of creation, bids and close.
+     */
+    public Server(PrivateKey privateKey, AuctionJournal journal, int shards) throws RemoteException {
+        this.tokenManager = new UtilityClass.TokenManager(refreshSecret(privateKey));
+        initServerKeys(privateKey);
+        this.journalFile = journal;
+        if (journal == null) {
+            this.journal = AuctionJournal.NONE;
+        } else {
+            try {
+                journal.recover(new StateApplier());
+            } catch (IOException e) {
+                throw new RemoteException("Journal recovery failed: " + e.getMessage(), e);
+            }
+            this.journal = journal.appender();
+        }
+        store.forEachLive(itemID -> searchIndex.add(store.get(itemID)));
+        this.engine = shards > 0
+            ? ShardedEngine.start(shards, SHARD_RING_SIZE, this.journal::appendedPosition)
+            : ShardedEngine.inline(this.journal::appendedPosition);
+        this.deadlines = new TimingWheel(DEADLINE_TICK_MILLIS, this::onDeadline, "auction-deadlines");
+        scheduleDeadlines();
+    }
+
+    private void scheduleDeadlines() {
+        store.forEachLive(itemID -> {
+            long endTime = store.endTime(itemID);
+            if (endTime > 0) {
+                deadlines.schedule(itemID, endTime);
+            }
+        });
+        settlements.forEach((itemID, settlement) -> deadlines.schedule(itemID, settlement.settledAt + SETTLEMENT_RETENTION_MILLIS));
+    }
+
+    @Override
+    public int register(String email, PublicKey pkey) throws RemoteException {
+        return callAnonymous(ServerMetrics.Operation.REGISTER, () -> {
+            UtilityClass.SignatureScheme scheme;
+            try {
+                scheme = UtilityClass.SignatureScheme.forKey(pkey);
+            } catch (IllegalArgumentException e) {
+                throw new RemoteException("Registration failed: " + e.getMessage());
+            }
+            return registerUser(email, pkey, scheme);
+        });
     }
 
     @Override
-    public int register(String email, PublicKey pkey) {
+    public int register(String email, PublicKey pkey, UtilityClass.SignatureScheme scheme) throws RemoteException {
+        return callAnonymous(ServerMetrics.Operation.REGISTER, () -> registerUser(email, pkey, scheme));
+    }
+
+    private int registerUser(String email, PublicKey pkey, UtilityClass.SignatureScheme scheme) throws RemoteException {
+        if (scheme == null || !scheme.accepts(pkey)) {
+            throw new RemoteException("Registration failed: public key does not match signature scheme " + scheme);
+        }
+        checkWritable();
         int userID = userCounter.getAndIncrement();
-        users.put(userID, new UtilityClass.User(userID, email, pkey));
+        store.putUser(new UtilityClass.User(userID, email, pkey, scheme));
+        journal(j -> j.register(userID, email, pkey));
+        syncJournal();
         return userID;
     }
 
     @Override
     public UtilityClass.ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException {
-        UtilityClass.User user = Optional.ofNullable(users.get(userID))
-            .orElseThrow(() -> new RemoteException("User not found for ID: " + userID));
-        try {
-            byte[] serverResponse = UtilityClass.SecurityUtils.sign(clientChallenge, serverPrivateKey);
-            user.setChallenge(UUID.randomUUID().toString());
-            return new UtilityClass.ChallengeInfo(serverResponse, user.getChallenge());
-        } catch (Exception e) {
-            throw new RemoteException("Error generating challenge response: " + e.getMessage(), e);
-        }
+        return callAnonymous(ServerMetrics.Operation.CHALLENGE, () -> {
+            checkWritable();
+            UtilityClass.User user = Optional.ofNullable(store.user(userID))
+                .orElseThrow(() -> new RemoteException("User not found for ID: " + userID));
+            try {
+                UtilityClass.SignatureScheme scheme = user.getScheme();
+                byte[] serverResponse = scheme.sign(clientChallenge.getBytes(), serverKeys.get(scheme).getPrivate());
+                user.setChallenge(UUID.randomUUID().toString());
+                return new UtilityClass.ChallengeInfo(serverResponse, user.getChallenge(), scheme);
+            } catch (Exception e) {
+                throw new RemoteException("Error generating challenge response: " + e.getMessage(), e);
+            }
+        });
     }
 
     @Override
     public UtilityClass.TokenInfo authenticate(int userID, byte[] signature) throws RemoteException {
-        UtilityClass.User user = Optional.ofNullable(users.get(userID))
-            .filter(u -> u.getChallenge() != null)
-            .orElseThrow(() -> new RemoteException("Invalid authentication attempt for user ID: " + userID));
-        try {
-            if (!UtilityClass.SecurityUtils.verify(user.getChallenge(), signature, user.getPublicKey())) {
-                throw new RemoteException("Authentication failed for user ID: " + userID);
+        return callAnonymous(ServerMetrics.Operation.AUTHENTICATE, () -> {
+            checkWritable();
+            UtilityClass.User user = Optional.ofNullable(store.user(userID))
+                .filter(u -> u.getChallenge() != null)
+                .orElseThrow(() -> {
+                    metrics.authFailed();
+                    return new RemoteException("Invalid authentication attempt for user ID: " + userID);
+                });
+            try {
+                if (!user.getScheme().verify(user.getChallenge().getBytes(), signature, user.getPublicKey())) {
+                    metrics.authFailed();
+                    throw new RemoteException("Authentication failed for user ID: " + userID);
+                }
+                user.setChallenge(null);
+                UtilityClass.TokenInfo token = tokenManager.generateToken(userID);
+                // Backups accept the session too, so reads can go to them and it survives a failover
+                journal(j -> tokenManager.exportSession(userID, j::session));
+                return token;
+            } catch (Exception e) {
+                throw new RemoteException("Authentication error: " + e.getMessage(), e);
             }
-            user.setChallenge(null);
-            return tokenManager.generateToken(userID);
-        } catch (Exception e) {
-            throw new RemoteException("Authentication error: " + e.getMessage(), e);
+        });
+    }
+
+    @Override
+    public UtilityClass.TokenInfo refreshSession(int userID, String token, long sequence, byte[] proof) throws RemoteException {
+        return callAnonymous(ServerMetrics.Operation.REFRESH_SESSION, () -> {
+            checkWritable();
+            UtilityClass.TokenInfo refreshed;
+            try {
+                refreshed = tokenManager.refresh(userID, token, sequence, proof);
+            } catch (RemoteException e) {
+                metrics.tokenValidationFailed();
+                throw e;
+            }
+            journal(j -> tokenManager.exportSession(userID, j::session));
+            return refreshed;
+        });
+    }
+
+    @Override
+    public PublicKey getServerPublicKey(UtilityClass.SignatureScheme scheme) throws RemoteException {
+        long start = metrics.start();
+        try {
+            return Optional.ofNullable(serverKeys.get(scheme))
+                .map(KeyPair::getPublic)
+                .orElseThrow(() -> new RemoteException("No server key for scheme: " + scheme));
+        } catch (RemoteException e) {
+            throw metrics.failed(ServerMetrics.Operation.GET_SERVER_PUBLIC_KEY, e);
+        } finally {
+            metrics.record(ServerMetrics.Operation.GET_SERVER_PUBLIC_KEY, start);
         }
     }
 
     @Override
     public UtilityClass.AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException {
-        tokenManager.validate(userID, token);
-        return Optional.ofNullable(auctionItems.get(itemID))
-            .orElseThrow(() -> new RemoteException("Item not found for ID: " + itemID));
+        return call(ServerMetrics.Operation.GET_SPEC, userID, token, 1, () -> findItem(itemID));
     }
 
     @Override
     public int newAuction(int userID, UtilityClass.AuctionSaleItem item, String token) throws RemoteException {
-        tokenManager.validate(userID, token);
-        int itemID = auctionCounter.getAndIncrement();
-        auctionItems.put(itemID, new UtilityClass.AuctionItem(itemID, item.getName(), item.getDescription()));
-        auctionOwners.put(itemID, userID);
-        return itemID;
+        return call(ServerMetrics.Operation.NEW_AUCTION, userID, token, 1, () -> openAuction(userID, item));
     }
 
     @Override
     public UtilityClass.AuctionItem[] listItems(int userID, String token) throws RemoteException {
-        tokenManager.validate(userID, token);
-        return auctionItems.values().toArray(UtilityClass.AuctionItem[]::new);
+        return call(ServerMetrics.Operation.LIST_ITEMS, userID, token, 1, () -> store.liveItems());
     }
 
     @Override
     public UtilityClass.AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException {
-        tokenManager.validate(userID, token);
-        if (!Objects.equals(auctionOwners.get(itemID), userID)) {
-            throw new RemoteException("Unauthorized action by user ID: " + userID + " for item ID: " + itemID);
-        }
-        return Optional.ofNullable(auctionItems.remove(itemID))
-            .filter(item -> item.getHighestBid() > 0)
-            .map(item -> new UtilityClass.AuctionResult(users.get(userID).getEmail(), item.getHighestBid()))
-            .orElse(new UtilityClass.AuctionResult(null, 0));
+        return call(ServerMetrics.Operation.CLOSE_AUCTION, userID, token, 1, () -> settleAuction(userID, itemID));
     }
 
     @Override
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException {
-        tokenManager.validate(userID, token);
-        return Optional.ofNullable(auctionItems.get(itemID))
-            .filter(item -> price > item.getHighestBid())
-            .map(item -> synchronizedUpdate(item, price))
-            .orElseThrow(() -> new RemoteException("Bid failed for item ID: " + itemID));
+        return call(ServerMetrics.Operation.BID, userID, token, 1, () -> placeBid(userID, itemID, price));
+    }
+
+    @Override
+    public UtilityClass.AuctionItem[] getSpecBatch(int userID, int[] itemIDs, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.GET_SPEC_BATCH, userID, token, itemIDs.length, () -> {
+            UtilityClass.AuctionItem[] items = new UtilityClass.AuctionItem[itemIDs.length];
+            for (int i = 0; i < itemIDs.length; i++) {
+                items[i] = store.get(itemIDs[i]);
+            }
+            return items;
+        });
+    }
+
+    @Override
+    public int[] newAuctionBatch(int userID, UtilityClass.AuctionSaleItem[] items, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.NEW_AUCTION_BATCH, userID, token, items.length, () -> openAuctions(userID, items));
     }
 
-    private boolean synchronizedUpdate(UtilityClass.AuctionItem item, int price) {
-        synchronized (item) {
-            if (price > item.getHighestBid()) {
-                item.setHighestBid(price);
-                return true;
+    @Override
+    public boolean[] bidBatch(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.BID_BATCH, userID, token, itemIDs.length, () -> placeBids(userID, itemIDs, prices));
+    }
+
+    @Override
+    public UtilityClass.ItemPage listItemsPage(int userID, int afterItemID, int pageSize, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.LIST_ITEMS_PAGE, userID, token, 1, () -> itemPage(afterItemID, pageSize));
+    }
+
+    @Override
+    public UtilityClass.ItemPage search(int userID, UtilityClass.SearchQuery query, int afterItemID, int pageSize, String token)
+            throws RemoteException {
+        return call(ServerMetrics.Operation.SEARCH, userID, token, 1, () -> searchPage(query, afterItemID, pageSize));
+    }
+
+    @Override
+    public UtilityClass.ItemDelta listChanges(int userID, long sinceVersion, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.LIST_CHANGES, userID, token, 1, () -> {
+            if (changeLog.requiresResync(sinceVersion)) {
+                return new UtilityClass.ItemDelta(new UtilityClass.AuctionItem[0], new int[0], changeLog.currentVersion(), true);
+            }
+            LinkedHashSet<Integer> changedIDs = new LinkedHashSet<>();
+            long version = changeLog.changedSince(sinceVersion, MAX_PAGE_SIZE, changedIDs);
+            List<UtilityClass.AuctionItem> changed = new ArrayList<>(changedIDs.size());
+            List<Integer> closed = new ArrayList<>();
+            for (Integer itemID : changedIDs) {
+                UtilityClass.AuctionItem item = store.get(itemID);
+                if (item != null) {
+                    changed.add(item);
+                } else {
+                    closed.add(itemID);
+                }
+            }
+            return new UtilityClass.ItemDelta(changed.toArray(UtilityClass.AuctionItem[]::new),
+                closed.stream().mapToInt(Integer::intValue).toArray(), version, false, version < changeLog.currentVersion());
+        });
+    }
+
+    @Override
+    public void subscribe(int userID, UtilityClass.AuctionListener listener, String token) throws RemoteException {
+        call(ServerMetrics.Operation.SUBSCRIBE, userID, token, 1, () -> {
+            checkWritable();
+            if (listener == null) {
+                throw new RemoteException("Subscription requires a listener");
+            }
+            notifications.subscribe(userID, listener);
+            return null;
+        });
+    }
+
+    @Override
+    public void watchItem(int userID, int itemID, String token) throws RemoteException {
+        call(ServerMetrics.Operation.WATCH_ITEM, userID, token, 1, () -> {
+            checkWritable();
+            if (!store.isLive(itemID)) {
+                throw new RemoteException("Item not found for ID: " + itemID);
+            }
+            if (!notifications.watch(userID, itemID)) {
+                throw new RemoteException("User ID " + userID + " must subscribe before watching items");
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void unsubscribe(int userID, String token) throws RemoteException {
+        call(ServerMetrics.Operation.UNSUBSCRIBE, userID, token, 1, () -> {
+            checkWritable();
+            notifications.unsubscribe(userID);
+            return null;
+        });
+    }
+
+    @Override
+    public UtilityClass.AuctionResult getResult(int userID, int itemID, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.GET_RESULT, userID, token, 1, () -> {
+            Settlement settlement = settlements.get(itemID);
+            if (settlement == null) {
+                throw new RemoteException("No settled result for item ID: " + itemID);
+            }
+            if (settlement.ownerID != userID) {
+                throw new RemoteException("Unauthorized action by user ID: " + userID + " for item ID: " + itemID);
+            }
+            return settlement.result;
+        });
+    }
+
+    @Override
+    public UtilityClass.BidHistory getBidHistory(int userID, int itemID, int fromIndex, int count, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.BID_HISTORY, userID, token, 1, () -> historyOf(itemID).range(itemID, fromIndex, Math.min(count, MAX_PAGE_SIZE)));
+    }
+
+    @Override
+    public UtilityClass.BidHistory getBidHistoryBetween(int userID, int itemID, long fromTime, long toTime, int count,
+                                                        String token) throws RemoteException {
+        return call(ServerMetrics.Operation.BID_HISTORY, userID, token, 1, () -> historyOf(itemID).between(itemID, fromTime, toTime, Math.min(count, MAX_PAGE_SIZE)));
+    }
+
+    @Override
+    public UtilityClass.BidHistory getTopBidders(int userID, int itemID, int k, String token) throws RemoteException {
+        return call(ServerMetrics.Operation.TOP_BIDDERS, userID, token, 1, () -> historyOf(itemID).topBidders(itemID, Math.min(k, MAX_PAGE_SIZE)));
+    }
+
+    @Override
+    public UtilityClass.ReplicationStatus getReplicationStatus() throws RemoteException {
+        long start = metrics.start();
+        try {
+            ReplicationFollower current = follower;
+            if (current != null) {
+                return new UtilityClass.ReplicationStatus(UtilityClass.ReplicationStatus.Role.BACKUP, current.getEpoch(),
+                    current.getAppliedSequence(), current.getLagMillis(), 0);
             }
+            return new UtilityClass.ReplicationStatus(UtilityClass.ReplicationStatus.Role.PRIMARY, replication.getEpoch(),
+                replication.getSequence(), 0, replication.getBackupCount());
+        } finally {
+            metrics.record(ServerMetrics.Operation.REPLICATION_STATUS, start);
+        }
+    }
+
+    // ---- Core operations, shared by the RMI and binary transports; callers validate the token first ----
+
+    UtilityClass.AuctionItem findItem(int itemID) throws RemoteException {
+        return Optional.ofNullable(store.get(itemID))
+            .orElseThrow(() -> new RemoteException("Item not found for ID: " + itemID));
+    }
+
+    /**
+     * Bids on a live item, or on one closed within the retention period.
+     */
+    BidLog historyOf(int itemID) throws RemoteException {
+        BidLog history = store.history(itemID);
+        if (history == null) {
+            history = closedHistories.get(itemID);
+        }
+        if (history == null) {
+            if (!store.isLive(itemID)) {
+                throw new RemoteException("Item not found for ID: " + itemID);
+            }
+            return NO_BIDS;
+        }
+        return history;
+    }
+
+    int openAuction(int userID, UtilityClass.AuctionSaleItem item) throws RemoteException {
+        checkWritable();
+        checkSaleItem(item);
+        int itemID = auctionCounter.getAndIncrement();
+        return mutate(itemID, () -> createAuction(itemID, userID, item));
+    }
+
+    int[] openAuctions(int userID, UtilityClass.AuctionSaleItem[] items) throws RemoteException {
+        checkWritable();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ShardedEngine.Task<Integer>[] tasks = new ShardedEngine.Task[items.length];
+        for (int i = 0; i < items.length; i++) {
+            UtilityClass.AuctionSaleItem item = items[i];
+            if (item != null && isValidSaleItem(item)) {
+                int itemID = auctionCounter.getAndIncrement();
+                tasks[i] = engine.submit(itemID, () -> createAuction(itemID, userID, item));
+            }
+        }
+        int[] itemIDs = new int[items.length];
+        long position = 0;
+        for (int i = 0; i < tasks.length; i++) {
+            if (tasks[i] != null) {
+                itemIDs[i] = tasks[i].await();
+                position = Math.max(position, tasks[i].getJournalPosition());
+            }
+        }
+        syncJournal(position);
+        return itemIDs;
+    }
+
+    UtilityClass.AuctionResult settleAuction(int userID, int itemID) throws RemoteException {
+        checkWritable();
+        return mutate(itemID, () -> closeItem(userID, itemID));
+    }
+
+    boolean placeBid(int userID, int itemID, int price) throws RemoteException {
+        checkWritable();
+        return mutate(itemID, () -> bidOnItem(userID, itemID, price));
+    }
+
+    boolean[] placeBids(int userID, int[] itemIDs, int[] prices) throws RemoteException {
+        checkWritable();
+        if (itemIDs.length != prices.length) {
+            throw new RemoteException("Batch bid rejected: " + itemIDs.length + " item IDs but " + prices.length + " prices");
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ShardedEngine.Task<Boolean>[] tasks = new ShardedEngine.Task[itemIDs.length];
+        for (int i = 0; i < itemIDs.length; i++) {
+            int itemID = itemIDs[i];
+            int price = prices[i];
+            tasks[i] = engine.submit(itemID, () -> recordBid(itemID, userID, price));
+        }
+        boolean[] results = new boolean[itemIDs.length];
+        int rejected = 0;
+        long position = 0;
+        for (int i = 0; i < tasks.length; i++) {
+            results[i] = tasks[i].await();
+            position = Math.max(position, tasks[i].getJournalPosition());
+            if (!results[i]) rejected++;
+        }
+        metrics.bidsRejected(rejected);
+        syncJournal(position);
+        return results;
+    }
+
+    UtilityClass.ItemPage itemPage(int afterItemID, int pageSize) throws RemoteException {
+        if (pageSize <= 0) {
+            throw new RemoteException("Invalid page size: " + pageSize);
+        }
+        int limit = Math.min(pageSize, MAX_PAGE_SIZE);
+        List<UtilityClass.AuctionItem> page = new ArrayList<>(limit);
+        int cursor = afterItemID;
+        for (int itemID = store.nextLive(afterItemID); itemID > 0; itemID = store.nextLive(itemID)) {
+            if (page.size() == limit) {
+                return new UtilityClass.ItemPage(page.toArray(UtilityClass.AuctionItem[]::new), cursor, true);
+            }
+            UtilityClass.AuctionItem item = store.get(itemID);
+            if (item != null) {
+                page.add(item);
+                cursor = itemID;
+            }
+        }
+        return new UtilityClass.ItemPage(page.toArray(UtilityClass.AuctionItem[]::new), cursor, false);
+    }
+
+    UtilityClass.ItemPage searchPage(UtilityClass.SearchQuery query, int afterItemID, int pageSize) throws RemoteException {
+        if (query == null) {
+            throw new RemoteException("Missing search query");
+        }
+        if (pageSize <= 0) {
+            throw new RemoteException("Invalid page size: " + pageSize);
+        }
+        boolean unfiltered = SearchIndex.wordsOf(query.getText()).isEmpty()
+            && (query.getPrefix() == null || query.getPrefix().trim().isEmpty())
+            && query.getMinPrice() <= 0 && query.getMaxPrice() == Integer.MAX_VALUE;
+        if (unfiltered) {
+            return itemPage(afterItemID, pageSize);
+        }
+        return searchIndex.search(query, afterItemID, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+
+    private void validateToken(int userID, String token) throws RemoteException {
+        try {
+            tokenManager.validate(userID, token);
+        } catch (RemoteException e) {
+            metrics.tokenValidationFailed();
+            throw e;
+        }
+    }
+
+    void validateToken(int userID, long tokenHigh, long tokenLow) throws RemoteException {
+        try {
+            tokenManager.validate(userID, tokenHigh, tokenLow);
+        } catch (RemoteException e) {
+            metrics.tokenValidationFailed();
+            throw e;
+        }
+    }
+
+    /**
+     * The body of a remote call, run once the call has been admitted.
+     */
+    @FunctionalInterface
+    private interface Call<T> {
+        T run() throws RemoteException;
+    }
+
+    /**
+     * Runs an authenticated call of op standing for cost calls, timing it and counting its failure.
+     */
+    private <T> T call(ServerMetrics.Operation op, int userID, String token, int cost, Call<T> body)
+            throws RemoteException {
+        return admitted(op, () -> authorize(op, userID, token, cost), body);
+    }
+
+    /**
+     * Runs a call of op made before the caller has a session.
+     */
+    private <T> T callAnonymous(ServerMetrics.Operation op, Call<T> body) throws RemoteException {
+        return admitted(op, () -> admitAnonymous(op), body);
+    }
+
+    // The permit is only held for the duration of the body, hence never referenced in it
+    @SuppressWarnings("try")
+    private <T> T admitted(ServerMetrics.Operation op, Call<AdmissionControl.Permit> admit, Call<T> body)
+            throws RemoteException {
+        long start = metrics.start();
+        try (AdmissionControl.Permit permit = admit.run()) {
+            return body.run();
+        } catch (RemoteException e) {
+            throw metrics.failed(op, e);
+        } finally {
+            metrics.record(op, start);
+        }
+    }
+
+    /**
+     * Validates the caller's token, then admits a call standing for cost calls of op.
+     */
+    private AdmissionControl.Permit authorize(ServerMetrics.Operation op, int userID, String token, int cost)
+            throws RemoteException {
+        validateToken(userID, token);
+        return admission.admit(op, userID, cost);
+    }
+
+    AdmissionControl.Permit authorize(ServerMetrics.Operation op, int userID, long tokenHigh, long tokenLow, int cost)
+            throws RemoteException {
+        validateToken(userID, tokenHigh, tokenLow);
+        return admission.admit(op, userID, cost);
+    }
+
+    /**
+     * Admits a call made before the caller has a session, charged to the client's host.
+     */
+    private AdmissionControl.Permit admitAnonymous(ServerMetrics.Operation op) throws RemoteException {
+        String host;
+        try {
+            host = getClientHost();
+        } catch (ServerNotActiveException e) {
+            host = "local";
+        }
+        return admission.admitHost(op, host);
+    }
+
+    private void checkWritable() throws RemoteException {
+        if (follower != null) {
+            throw new UtilityClass.ReadOnlyReplicaException("This server is a read-only backup; send writes to the primary");
+        }
+    }
+
+    private static boolean isValidSaleItem(UtilityClass.AuctionSaleItem item) {
+        return item.getEndTime() >= 0 && item.getSoftCloseMillis() >= 0
+            && (item.getEndTime() == 0 || item.getEndTime() > System.currentTimeMillis());
+    }
+
+    private static void checkSaleItem(UtilityClass.AuctionSaleItem item) throws RemoteException {
+        if (item == null || !isValidSaleItem(item)) {
+            throw new RemoteException("Invalid auction: end time must be in the future and soft close non-negative");
+        }
+    }
+
+    /**
+     * Runs a mutation of itemID through the engine, then waits until its journal events are durable.
+     */
+    private <T> T mutate(int itemID, ShardedEngine.Command<T> command) throws RemoteException {
+        ShardedEngine.Task<T> task = engine.submit(itemID, command);
+        T result = task.await();
+        syncJournal(task.getJournalPosition());
+        return result;
+    }
+
+    // ---- Item mutations; each runs on the item's shard ----
+
+    private int createAuction(int itemID, int userID, UtilityClass.AuctionSaleItem item) throws RemoteException {
+        UtilityClass.AuctionItem auctionItem = new UtilityClass.AuctionItem(itemID, item.getName(), item.getDescription(),
+            item.getReservePrice(), item.getEndTime(), item.getSoftCloseMillis());
+        // Journal first: once the item is visible a bid on it may be journaled, and replicas must see the item before its bids
+        JournalWrite created = item.getEndTime() > 0
+            ? j -> j.newTimedAuction(itemID, userID, item.getName(), item.getDescription(), item.getReservePrice(),
+                item.getEndTime(), item.getSoftCloseMillis())
+            : j -> j.newAuction(itemID, userID, item.getName(), item.getDescription(), item.getReservePrice());
+        journalThenApply(created, () -> store.create(itemID, userID, item.getName(), item.getDescription(),
+            item.getReservePrice(), item.getEndTime(), item.getSoftCloseMillis()));
+        searchIndex.add(auctionItem);
+        changeLog.record(itemID);
+        if (item.getEndTime() > 0) {
+            deadlines.schedule(itemID, item.getEndTime());
+        }
+        return itemID;
+    }
+
+    private boolean bidOnItem(int userID, int itemID, int price) throws RemoteException {
+        if (!store.isLive(itemID) || price <= store.highestBid(itemID) || store.hasEnded(itemID, System.currentTimeMillis())) {
+            metrics.bidRejected();
+            throw new RemoteException("Bid failed for item ID: " + itemID);
+        }
+        if (!recordBid(itemID, userID, price)) {
+            metrics.bidRejected();
             return false;
         }
+        return true;
+    }
+
+    private UtilityClass.AuctionResult closeItem(int userID, int itemID) throws RemoteException {
+        if (store.owner(itemID) != userID) {
+            throw new RemoteException("Unauthorized action by user ID: " + userID + " for item ID: " + itemID);
+        }
+        UtilityClass.AuctionItem item = store.get(itemID);
+        UtilityClass.AuctionResult result = resultOf(item);
+        journalThenApply(j -> j.close(itemID), () -> removeAuction(item, result));
+        return result;
+    }
+
+    /**
+     * Deadline callback: ends a timed auction whose end time has passed, or drops an expired settlement.
+     */
+    private Void expireItem(int itemID) throws RemoteException {
+        long now = System.currentTimeMillis();
+        UtilityClass.AuctionItem item = store.get(itemID);
+        if (item == null || follower != null) {
+            // A backup only purges settlements; the primary closes items and replicates the settlement
+            Settlement settlement = settlements.get(itemID);
+            if (settlement != null && now >= settlement.settledAt + SETTLEMENT_RETENTION_MILLIS) {
+                settlements.remove(itemID);
+            }
+            BidLog history = closedHistories.get(itemID);
+            if (history != null && now >= history.getClosedAt() + SETTLEMENT_RETENTION_MILLIS) {
+                closedHistories.remove(itemID);
+            }
+            return null;
+        }
+        if (!item.hasEnded(now)) {
+            // A late bid extended the auction; follow the new end time
+            if (item.getEndTime() > 0) {
+                deadlines.schedule(itemID, item.getEndTime());
+            }
+            return null;
+        }
+        int ownerID = store.owner(itemID);
+        if (ownerID == 0) {
+            return null;
+        }
+        UtilityClass.AuctionResult result = resultOf(item);
+        journalThenApply(j -> j.settle(itemID, ownerID, result.getWinningEmail(), result.getWinningPrice(), now), () -> {
+            removeAuction(item, result);
+            settlements.put(itemID, new Settlement(ownerID, result, now));
+        });
+        deadlines.schedule(itemID, now + SETTLEMENT_RETENTION_MILLIS);
+        metrics.auctionAutoClosed(now - item.getEndTime());
+        return null;
+    }
+
+    private void onDeadline(int itemID, long deadline) {
+        engine.submit(itemID, () -> {
+            try {
+                return expireItem(itemID);
+            } catch (RemoteException e) {
+                System.err.println("Auto-close of item ID " + itemID + " failed: " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    private UtilityClass.AuctionResult resultOf(UtilityClass.AuctionItem item) {
+        if (item == null || !item.isReserveMet()) {
+            return new UtilityClass.AuctionResult(null, 0);
+        }
+        return new UtilityClass.AuctionResult(store.user(item.getHighestBidderID()).getEmail(), item.getHighestBid());
+    }
+
+    private void removeAuction(UtilityClass.AuctionItem item, UtilityClass.AuctionResult result) {
+        if (item == null) {
+            return;
+        }
+        int itemID = item.getItemID();
+        retainHistory(itemID);
+        store.remove(itemID);
+        searchIndex.remove(item);
+        changeLog.record(itemID);
+        notifications.auctionClosed(itemID, item.getHighestBidderID(), item.getHighestBid(), result.getWinningEmail());
+    }
+
+    /**
+     * Keeps a closing item's bid history readable for as long as a settlement is kept.
+     */
+    private void retainHistory(int itemID) {
+        BidLog history = store.history(itemID);
+        if (history != null) {
+            long now = System.currentTimeMillis();
+            history.setClosedAt(now);
+            closedHistories.put(itemID, history);
+            deadlines.schedule(itemID, now + SETTLEMENT_RETENTION_MILLIS);
+        }
+    }
+
+    private boolean recordBid(int itemID, int userID, int price) throws RemoteException {
+        long now = System.currentTimeMillis();
+        if (store.hasEnded(itemID, now)) {
+            return false;
+        }
+        int previousPrice = store.highestBid(itemID);
+        int displacedBidderID = store.offerBidDisplacing(itemID, userID, price);
+        if (displacedBidderID < 0) {
+            return false;
+        }
+        store.recordBid(itemID, userID, price, now);
+        searchIndex.priceChanged(itemID, price, previousPrice);
+        changeLog.record(itemID);
+        journal(j -> j.bidAt(itemID, userID, price, now));
+        long extendedTo = store.extendForBidAt(itemID, now);
+        if (extendedTo > 0) {
+            journal(j -> j.extend(itemID, extendedTo));
+        }
+        notifications.bidPlaced(itemID, userID, displacedBidderID, price);
+        return true;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private int activeSessionCount() {
+        return tokenManager.getActiveSessionCount();
+    }
+
+    /**
+     * Replaces the per-user rate limits and concurrency limit applied to every call.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Sets how long tokens live after login or refresh, and how long after login a session can be refreshed.
+     */
+    public void setSessionWindows(long expiryMillis, long refreshWindowMillis) {
+        tokenManager.setWindows(expiryMillis, refreshWindowMillis);
+    }
+
+    /**
+     * Signs the scheme's challenge responses with keyPair, such as one loaded from the keys directory, so
+     * clients' cached server keys stay valid across restarts and on every server sharing the key.
+     */
+    public void setServerKey(UtilityClass.SignatureScheme scheme, KeyPair keyPair) {
+        if (!scheme.accepts(keyPair.getPrivate()) || !scheme.accepts(keyPair.getPublic())) {
+            throw new IllegalArgumentException("Not a " + scheme + " key pair");
+        }
+        serverKeys.put(scheme, keyPair);
+    }
+
+    public long getTokenExpiryMillis() {
+        return tokenManager.getExpiryMillis();
+    }
+
+    public long getRefreshWindowMillis() {
+        return tokenManager.getRefreshWindowMillis();
+    }
+
+    /**
+     * Derives the session refresh secret from the server's key, so every server in a replication group
+     * (which all load the same key) accepts refreshes of the sessions it has replicated.
+     */
+    private static byte[] refreshSecret(PrivateKey key) throws RemoteException {
+        byte[] encoded = key == null ? null : key.getEncoded();
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("cryptoauction-session-refresh".getBytes(StandardCharsets.UTF_8));
+            return digest.digest(encoded);
+        } catch (GeneralSecurityException e) {
+            throw new RemoteException("Session refresh setup failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Uses the configured RSA key and generates a fresh server key pair for each faster scheme, until
+     * setServerKey installs a stored one.
+     */
+    private void initServerKeys(PrivateKey rsaKey) throws RemoteException {
+        try {
+            PublicKey rsaPublic = null;
+            if (rsaKey instanceof RSAPrivateCrtKey) {
+                RSAPrivateCrtKey crt = (RSAPrivateCrtKey) rsaKey;
+                rsaPublic = KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(crt.getModulus(), crt.getPublicExponent()));
+            }
+            serverKeys.put(UtilityClass.SignatureScheme.RSA, new KeyPair(rsaPublic, rsaKey));
+            for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+                if (scheme != UtilityClass.SignatureScheme.RSA) {
+                    serverKeys.put(scheme, scheme.generateKeyPair());
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RemoteException("Server key setup failed: " + e.getMessage(), e);
+        }
+    }
+
+    // ---- Persistence ----
+
+    @FunctionalInterface
+    private interface JournalWrite {
+        void write(AuctionJournal.Events journal) throws IOException;
+    }
+
+    private void journal(JournalWrite write) throws RemoteException {
+        try {
+            write.write(journal);
+            if (replication.isStreaming()) {
+                write.write(replication);
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Journal write failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Journals a change and then applies it, with no backup joining in between: one that joined after the
+     * journal write, so did not queue it, but exported its snapshot before the change would never see it.
+     * Changes applied before they are journaled need no lock; a backup that misses their event joined,
+     * and so snapshots, after the change.
+     */
+    private void journalThenApply(JournalWrite write, Runnable apply) throws RemoteException {
+        journalFirst.readLock().lock();
+        try {
+            journal(write);
+            apply.run();
+        } finally {
+            journalFirst.readLock().unlock();
+        }
+    }
+
+    private void syncJournal() throws RemoteException {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            throw new RemoteException("Journal sync failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void syncJournal(long position) throws RemoteException {
+        try {
+            journal.syncTo(position);
+        } catch (IOException e) {
+            throw new RemoteException("Journal sync failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the live state as journal events; used as the source for snapshots.
+     */
+    void exportState(AuctionJournal.Events sink) throws IOException {
+        sink.counters(userCounter.get(), auctionCounter.get());
+        for (int userID = 1; userID < userCounter.get(); userID++) {
+            UtilityClass.User user = store.user(userID);
+            if (user != null) {
+                sink.register(userID, user.getEmail(), user.getPublicKey());
+            }
+        }
+        for (int itemID = store.nextLive(0); itemID > 0; itemID = store.nextLive(itemID)) {
+            UtilityClass.AuctionItem item = store.get(itemID);
+            int ownerID = store.owner(itemID);
+            if (item == null || ownerID == 0) {
+                continue;
+            }
+            if (item.getEndTime() > 0) {
+                sink.newTimedAuction(item.getItemID(), ownerID, item.getName(), item.getDescription(), item.getReservePrice(),
+                    item.getEndTime(), item.getSoftCloseMillis());
+            } else {
+                sink.newAuction(item.getItemID(), ownerID, item.getName(), item.getDescription(), item.getReservePrice());
+            }
+            BidLog history = store.history(itemID);
+            if (history != null) {
+                int id = itemID;
+                history.forEach((bidderID, price, placedAt) -> sink.bidAt(id, bidderID, price, placedAt));
+            }
+        }
+        for (Map.Entry<Integer, Settlement> entry : settlements.entrySet()) {
+            Settlement settlement = entry.getValue();
+            sink.settle(entry.getKey(), settlement.ownerID, settlement.result.getWinningEmail(),
+                settlement.result.getWinningPrice(), settlement.settledAt);
+        }
+        tokenManager.exportSessions(sink::session);
+    }
+
+    /**
+     * Applies recovered journal events. Every event is idempotent so snapshots may overlap the journal.
+     */
+    private class StateApplier implements AuctionJournal.Events {
+        public void register(int userID, String email, PublicKey publicKey) {
+            store.putUser(new UtilityClass.User(userID, email, publicKey));
+            userCounter.accumulateAndGet(userID + 1, Math::max);
+        }
+
+        public void newAuction(int itemID, int ownerID, String name, String description, int reservePrice) {
+            store.create(itemID, ownerID, name, description, reservePrice, 0, 0);
+            auctionCounter.accumulateAndGet(itemID + 1, Math::max);
+        }
+
+        public void bid(int itemID, int bidderID, int price) {
+            // Journals from before bid times were recorded
+            bidAt(itemID, bidderID, price, 0);
+        }
+
+        public void bidAt(int itemID, int bidderID, int price, long placedAt) {
+            // Bids are applied before they are journaled, so racing ones can arrive below the highest bid;
+            // their history entry is kept all the same and the highest bid only ever goes up
+            store.offerBidDisplacing(itemID, bidderID, price);
+            store.replayBid(itemID, bidderID, price, placedAt);
+        }
+
+        public void close(int itemID) {
+            store.remove(itemID);
+        }
+
+        public void counters(int nextUserID, int nextItemID) {
+            userCounter.accumulateAndGet(nextUserID, Math::max);
+            auctionCounter.accumulateAndGet(nextItemID, Math::max);
+        }
+
+        public void newTimedAuction(int itemID, int ownerID, String name, String description, int reservePrice,
+                                    long endTime, long softCloseMillis) {
+            store.create(itemID, ownerID, name, description, reservePrice, endTime, softCloseMillis);
+            auctionCounter.accumulateAndGet(itemID + 1, Math::max);
+        }
+
+        public void extend(int itemID, long endTime) {
+            store.extendTo(itemID, endTime);
+        }
+
+        public void settle(int itemID, int ownerID, String winningEmail, int winningPrice, long settledAt) {
+            close(itemID);
+            settlements.put(itemID, new Settlement(ownerID, new UtilityClass.AuctionResult(winningEmail, winningPrice), settledAt));
+        }
+    }
+
+    // ---- Replication ----
+
+    /**
+     * Publishes every state change on port for backups to follow, as primary of the first epoch.
+     */
+    public void startReplication(int port) throws IOException {
+        replicationPort = port;
+        replication.listen(port, 1);
+    }
+
+    /**
+     * Turns this server into a read-only backup of primary. With a replication port that appears in
+     * peers, the server promotes itself when every peer ranked above it is unreachable.
+     */
+    public void follow(InetSocketAddress primary, List<InetSocketAddress> peers, int port, long failoverMillis) {
+        replicationPort = port;
+        int selfIndex = port > 0 ? ReplicationFollower.indexOfSelf(peers, port) : -1;
+        follower = new ReplicationFollower(primary, peers, selfIndex, new ReplicaApplier(), metrics, failoverMillis);
+    }
+
+    /**
+     * Stops publishing and following; to backups this looks like the primary going away.
+     */
+    public void stopReplication() throws IOException {
+        ReplicationFollower current = follower;
+        if (current != null) {
+            current.close();
+        }
+        replication.close();
+    }
+
+    private void promote(long epoch) {
+        // The new epoch is in place before writes are accepted, so none is stamped with the old one
+        replication.setEpoch(epoch);
+        if (replicationPort > 0) {
+            try {
+                replication.listen(replicationPort, epoch);
+            } catch (IOException e) {
+                System.err.println("Primary of epoch " + epoch + " cannot publish to backups: " + e.getMessage());
+            }
+        }
+        if (journalFile != null) {
+            try {
+                journalFile.snapshot(this::exportState);
+            } catch (IOException e) {
+                System.err.println("Snapshot at promotion to epoch " + epoch + " failed: " + e.getMessage());
+            }
+        }
+        // Items whose deadline passed while this was a backup are settled as soon as the wheel runs them
+        follower = null;
+        scheduleDeadlines();
+        System.out.println("Promoted to primary at epoch " + epoch);
+    }
+
+    /**
+     * Applies a primary's stream. Unlike recovery the server is live, so the search index and change
+     * log follow every item, sessions are installed and settlements are scheduled for purging.
+     */
+    private class ReplicaApplier extends StateApplier implements ReplicationFollower.Replica {
+        private BitSet unconfirmed;
+
+        @Override
+        public void newAuction(int itemID, int ownerID, String name, String description, int reservePrice) {
+            super.newAuction(itemID, ownerID, name, description, reservePrice);
+            added(itemID);
+        }
+
+        @Override
+        public void newTimedAuction(int itemID, int ownerID, String name, String description, int reservePrice,
+                                    long endTime, long softCloseMillis) {
+            super.newTimedAuction(itemID, ownerID, name, description, reservePrice, endTime, softCloseMillis);
+            added(itemID);
+        }
+
+        private void added(int itemID) {
+            if (unconfirmed != null) {
+                unconfirmed.clear(itemID);
+            }
+            UtilityClass.AuctionItem item = store.get(itemID);
+            if (item != null) {
+                searchIndex.add(item);
+                changeLog.record(itemID);
+            }
+        }
+
+        @Override
+        public void bidAt(int itemID, int bidderID, int price, long placedAt) {
+            int previousPrice = store.highestBid(itemID);
+            boolean raised = store.offerBidDisplacing(itemID, bidderID, price) >= 0;
+            store.replayBid(itemID, bidderID, price, placedAt);
+            if (raised) {
+                searchIndex.priceChanged(itemID, price, previousPrice);
+                changeLog.record(itemID);
+            }
+        }
+
+        @Override
+        public void extend(int itemID, long endTime) {
+            super.extend(itemID, endTime);
+            changeLog.record(itemID);
+        }
+
+        @Override
+        public void close(int itemID) {
+            UtilityClass.AuctionItem item = store.get(itemID);
+            retainHistory(itemID);
+            super.close(itemID);
+            if (item != null) {
+                searchIndex.remove(item);
+                changeLog.record(itemID);
+            }
+        }
+
+        @Override
+        public void settle(int itemID, int ownerID, String winningEmail, int winningPrice, long settledAt) {
+            super.settle(itemID, ownerID, winningEmail, winningPrice, settledAt);
+            deadlines.schedule(itemID, settledAt + SETTLEMENT_RETENTION_MILLIS);
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime) {
+            tokenManager.restore(userID, tokenHigh, tokenLow, expiryTime);
+        }
+
+        @Override
+        public void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil, long refreshes) {
+            tokenManager.restore(userID, tokenHigh, tokenLow, expiryTime, refreshableUntil, refreshes);
+        }
+
+        @Override
+        public void resyncStarted() {
+            unconfirmed = new BitSet();
+            store.forEachLive(unconfirmed::set);
+        }
+
+        @Override
+        public void resyncFinished() {
+            for (int itemID = unconfirmed.nextSetBit(0); itemID >= 0; itemID = unconfirmed.nextSetBit(itemID + 1)) {
+                close(itemID);
+            }
+            unconfirmed = null;
+        }
+
+        @Override
+        public void promote(long epoch) {
+            Server.this.promote(epoch);
+        }
+    }
+
+    /**
+     * The stored result of a timed auction, kept for its seller to fetch.
+     */
+    private static class Settlement {
+        final int ownerID;
+        final UtilityClass.AuctionResult result;
+        final long settledAt;
+
+        Settlement(int ownerID, UtilityClass.AuctionResult result, long settledAt) {
+            this.ownerID = ownerID;
+            this.result = result;
+            this.settledAt = settledAt;
+        }
     }
 
     public static void main(String[] args) {
@@ -120,17 +1150,101 @@ public class Server extends UnicastRemoteObject implements UtilityClass.Auction
             String privateKeyPath = args.length > 0 ? args[0] : "CryptoAuction/keys/server_private_key.pem";
             
             PrivateKey privateKey = UtilityClass.SecurityUtils.loadPrivateKey(privateKeyPath);
-            Server server = new Server(privateKey);
+
+            // Bound how long a notification callback to an unresponsive client can hold a dispatcher thread
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "5000");
+            }
+
+            // Persistence is enabled by pointing auction.journal.dir at a directory
+            String journalDir = System.getProperty("auction.journal.dir");
+            AuctionJournal.Durability durability = AuctionJournal.Durability.valueOf(
+                System.getProperty("auction.journal.durability", "SYNC").toUpperCase());
+            AuctionJournal journal = journalDir == null ? null : AuctionJournal.open(Paths.get(journalDir), durability);
+            // Sharded single-writer item updates are enabled by setting auction.engine.shards
+            int shards = Integer.getInteger("auction.engine.shards", 0);
+            Server server = new Server(privateKey, journal, shards);
+            // Each faster scheme's key pair sits next to the RSA key and is created on first start;
+            // servers of a replication group need the same key files
+            Path keyDir = Paths.get(privateKeyPath).toAbsolutePath().getParent();
+            for (UtilityClass.SignatureScheme scheme : UtilityClass.SignatureScheme.values()) {
+                if (scheme != UtilityClass.SignatureScheme.RSA) {
+                    String name = "server_" + scheme.name().toLowerCase(Locale.ROOT);
+                    server.setServerKey(scheme, UtilityClass.SecurityUtils.loadOrCreateKeyPair(
+                        keyDir.resolve(name + "_private_key.pem").toString(), keyDir.resolve(name + "_public_key.pem").toString(), scheme));
+                }
+            }
+            // Token lifetime and how long after login a session can be refreshed instead of logging in again
+            long expirySeconds = Long.getLong("auction.session.expiry.seconds",
+                TimeUnit.MILLISECONDS.toSeconds(UtilityClass.TokenManager.getTokenExpiryDuration()));
+            long refreshWindowSeconds = Long.getLong("auction.session.refresh.window.seconds", 3600);
+            server.setSessionWindows(TimeUnit.SECONDS.toMillis(expirySeconds), TimeUnit.SECONDS.toMillis(refreshWindowSeconds));
+            // Per-user rate limits (auction.limit.<operation>=rate[/burst]) and auction.limit.concurrency
+            AdmissionControl admission = AdmissionControl.fromProperties(server.getMetrics());
+            server.setAdmissionControl(admission);
+            if (journal != null) {
+                long interval = TimeUnit.SECONDS.toMillis(Long.getLong("auction.snapshot.interval.seconds", 300));
+                journal.scheduleSnapshots(server::exportState, interval);
+                System.out.println("Journal enabled in " + journalDir + " with " + durability + " durability");
+            }
             
+            // Replication: a primary publishes on auction.replication.port; a backup also names its primary in
+            // auction.replication.primary, and takes part in failover when its own endpoint is in auction.replication.peers
+            Integer replicationPort = Integer.getInteger("auction.replication.port");
+            String primary = System.getProperty("auction.replication.primary");
+            if (primary != null) {
+                List<InetSocketAddress> peers = new ArrayList<>();
+                for (String peer : System.getProperty("auction.replication.peers", primary).split(",")) {
+                    peers.add(parseAddress(peer));
+                }
+                long failoverMillis = Long.getLong("auction.replication.failover.millis", 3000);
+                server.follow(parseAddress(primary), peers, replicationPort == null ? 0 : replicationPort, failoverMillis);
+                System.out.println("Read-only backup of " + primary + ", failover order " + peers);
+            } else if (replicationPort != null) {
+                server.startReplication(replicationPort);
+                System.out.println("Publishing replication stream on port " + replicationPort);
+            }
+
             // Start the RMI registry
-            Registry registry = LocateRegistry.createRegistry(1099);
+            int registryPort = Integer.getInteger("auction.registry.port", 1099);
+            Registry registry = LocateRegistry.createRegistry(registryPort);
             registry.rebind("Auction", server);
+            // The admin interface has no authentication, so it is only reachable from this host
+            ServerMetrics.Admin.bind(server.getMetrics(), Integer.getInteger("auction.admin.port", registryPort + 100));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(server.getMetrics(), new ObjectName("cryptoauction:type=ServerMetrics"));
+
+            // The binary transport is enabled by setting auction.binary.port
+            Integer binaryPort = Integer.getInteger("auction.binary.port");
+            if (binaryPort != null) {
+                int ioThreads = Integer.getInteger("auction.binary.threads", Runtime.getRuntime().availableProcessors());
+                // auction.binary.executor=virtual runs each request on a virtual thread instead of the I/O thread
+                String executorName = System.getProperty("auction.binary.executor", "inline");
+                Executor executor = BinaryAuctionServer.executorFor(executorName);
+                BinaryAuctionServer binary = BinaryAuctionServer.start(server, binaryPort, ioThreads, executor);
+                System.out.println("Binary transport listening on port " + binary.getPort() + " with " + ioThreads
+                    + " I/O threads" + (executor == null ? "" : ", requests run on " + executorName + " threads"));
+            }
             
+            if (shards > 0) {
+                System.out.println("Item updates run on " + shards + " single-writer shards");
+            }
+            if (admission.isLimited()) {
+                System.out.println("Admission control enabled");
+            }
             System.out.println("Auction server is running...");
         } catch (Exception e) {
             System.err.println("Server initialization error: " + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    private static InetSocketAddress parseAddress(String hostAndPort) {
+        String value = hostAndPort.trim();
+        int colon = value.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port but got " + value);
+        }
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
     
 }
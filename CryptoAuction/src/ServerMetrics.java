@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-operation call and failure counters, latency histograms and state gauges for the Server.
+ *
+ * Counters are LongAdders and each operation's latency histogram is striped by thread, so recording
+ * on the request path never locks and, once warmed up, never allocates. Everything is exposed as a
+ * JMX MXBean and, through {@link Admin}, as the "AuctionAdmin" remote interface on a loopback-only registry.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    public enum Operation {
+        REGISTER, CHALLENGE, AUTHENTICATE, GET_SERVER_PUBLIC_KEY, GET_SPEC, NEW_AUCTION, LIST_ITEMS, CLOSE_AUCTION, BID,
+        GET_SPEC_BATCH, NEW_AUCTION_BATCH, BID_BATCH, LIST_ITEMS_PAGE, LIST_CHANGES, SUBSCRIBE, WATCH_ITEM, UNSUBSCRIBE,
+        GET_RESULT, SEARCH, REPLICATION_STATUS, BID_HISTORY, TOP_BIDDERS, REFRESH_SESSION
+    }
+
+    private static final int STRIPES = 4;
+
+    private final Map<Operation, LongAdder> calls = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram[]> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder tokenValidationFailures = new LongAdder();
+    private final LongAdder bidRejections = new LongAdder();
+    private final LongAdder authFailures = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private final LongAdder notificationsDelivered = new LongAdder();
+    private final LongAdder notificationsCoalesced = new LongAdder();
+    private final LongAdder notificationsDropped = new LongAdder();
+    private final LatencyHistogram autoCloseLagMillis = new LatencyHistogram();
+    private final LatencyHistogram replicationLagMillis = new LatencyHistogram();
+    private final IntSupplier registeredUsers;
+    private final IntSupplier liveAuctions;
+    private final IntSupplier activeSessions;
+    private final LongSupplier catalogueVersion;
+
+    public ServerMetrics(IntSupplier registeredUsers, IntSupplier liveAuctions, IntSupplier activeSessions, LongSupplier catalogueVersion) {
+        this.registeredUsers = registeredUsers;
+        this.liveAuctions = liveAuctions;
+        this.activeSessions = activeSessions;
+        this.catalogueVersion = catalogueVersion;
+        for (Operation op : Operation.values()) {
+            calls.put(op, new LongAdder());
+            failures.put(op, new LongAdder());
+            LatencyHistogram[] stripes = new LatencyHistogram[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new LatencyHistogram();
+            }
+            latencies.put(op, stripes);
+        }
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(Operation op, long startNanos) {
+        calls.get(op).increment();
+        latencies.get(op)[(int) Thread.currentThread().getId() & (STRIPES - 1)].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts a failed call and returns the exception so the caller can rethrow it.
+     */
+    public RemoteException failed(Operation op, RemoteException e) {
+        failures.get(op).increment();
+        return e;
+    }
+
+    public void tokenValidationFailed() { tokenValidationFailures.increment(); }
+    public void bidRejected() { bidRejections.increment(); }
+    public void bidsRejected(int count) { bidRejections.add(count); }
+    public void authFailed() { authFailures.increment(); }
+    public void rateLimited() { rateLimited.increment(); }
+    public void overloaded() { overloaded.increment(); }
+    public void notificationsDelivered(int count) { notificationsDelivered.add(count); }
+    public void notificationsCoalesced(int count) { notificationsCoalesced.add(count); }
+    public void notificationsDropped(int count) { notificationsDropped.add(count); }
+    public void auctionAutoClosed(long lagMillis) { autoCloseLagMillis.record(lagMillis); }
+    public void replicatedEventApplied(long lagMillis) { replicationLagMillis.record(lagMillis); }
+
+    // ---- Reading ----
+
+    public LatencyHistogram latency(Operation op) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram stripe : latencies.get(op)) {
+            merged.add(stripe);
+        }
+        return merged;
+    }
+
+    /**
+     * How late timed auctions were settled after their end time, in milliseconds.
+     */
+    public LatencyHistogram autoCloseLag() {
+        return autoCloseLagMillis;
+    }
+
+    /**
+     * On a backup, the time from the primary publishing an event to this server applying it, in milliseconds.
+     */
+    public LatencyHistogram replicationLag() {
+        return replicationLagMillis;
+    }
+
+    @Override public long getTotalCalls() { return calls.values().stream().mapToLong(LongAdder::sum).sum(); }
+    @Override public long getTotalFailures() { return failures.values().stream().mapToLong(LongAdder::sum).sum(); }
+    @Override public long getTokenValidationFailures() { return tokenValidationFailures.sum(); }
+    @Override public long getBidRejections() { return bidRejections.sum(); }
+    @Override public long getAuthFailures() { return authFailures.sum(); }
+    @Override public long getRateLimitedCalls() { return rateLimited.sum(); }
+    @Override public long getOverloadedCalls() { return overloaded.sum(); }
+    @Override public long getNotificationsDelivered() { return notificationsDelivered.sum(); }
+    @Override public long getNotificationsCoalesced() { return notificationsCoalesced.sum(); }
+    @Override public long getNotificationsDropped() { return notificationsDropped.sum(); }
+    @Override public long getAutoClosedAuctions() { return autoCloseLagMillis.getTotalCount(); }
+    @Override public long getAutoCloseLagP99Millis() { return autoCloseLagMillis.getValueAtPercentile(99); }
+    @Override public long getReplicatedEvents() { return replicationLagMillis.getTotalCount(); }
+    @Override public long getReplicationLagP99Millis() { return replicationLagMillis.getValueAtPercentile(99); }
+    @Override public int getRegisteredUsers() { return registeredUsers.getAsInt(); }
+    @Override public int getLiveAuctions() { return liveAuctions.getAsInt(); }
+    @Override public int getActiveSessions() { return activeSessions.getAsInt(); }
+    @Override public long getCatalogueVersion() { return catalogueVersion.getAsLong(); }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        calls.forEach((op, count) -> counts.put(op.name(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getFailureCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        failures.forEach((op, count) -> counts.put(op.name(), count.sum()));
+        return counts;
+    }
+
+    @Override public Map<String, Double> getLatencyP50Micros() { return percentiles(50); }
+    @Override public Map<String, Double> getLatencyP99Micros() { return percentiles(99); }
+    @Override public Map<String, Double> getLatencyP999Micros() { return percentiles(99.9); }
+
+    private Map<String, Double> percentiles(double percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Operation op : Operation.values()) {
+            values.put(op.name(), latency(op).getValueAtPercentile(percentile) / 1e3);
+        }
+        return values;
+    }
+
+    public UtilityClass.MetricsSnapshot snapshot() {
+        Operation[] ops = Operation.values();
+        String[] names = new String[ops.length];
+        long[] callCounts = new long[ops.length];
+        long[] failureCounts = new long[ops.length];
+        long[][] latencyNanos = new long[ops.length][];
+        for (int i = 0; i < ops.length; i++) {
+            LatencyHistogram histogram = latency(ops[i]);
+            names[i] = ops[i].name();
+            callCounts[i] = calls.get(ops[i]).sum();
+            failureCounts[i] = failures.get(ops[i]).sum();
+            latencyNanos[i] = new long[] {
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMax()
+            };
+        }
+        return new UtilityClass.MetricsSnapshot(names, callCounts, failureCounts, latencyNanos,
+            getTokenValidationFailures(), getBidRejections(), getAuthFailures(),
+            getRegisteredUsers(), getLiveAuctions(), getActiveSessions(), getCatalogueVersion());
+    }
+
+    /**
+     * The remote admin interface. It is not bound in the public registry: {@link #bind} creates a
+     * separate registry that, like the exported object, only accepts connections from this host.
+     */
+    public static class Admin extends UnicastRemoteObject implements UtilityClass.AuctionAdmin {
+        private static final long serialVersionUID = 1L;
+        private static final LoopbackSockets SOCKETS = new LoopbackSockets();
+
+        private final ServerMetrics metrics;
+
+        public Admin(ServerMetrics metrics, int port) throws RemoteException {
+            super(port, SOCKETS, SOCKETS);
+            this.metrics = metrics;
+        }
+
+        /**
+         * Creates the loopback registry on port and binds an Admin in it as "AuctionAdmin".
+         */
+        public static Registry bind(ServerMetrics metrics, int port) throws RemoteException {
+            Registry registry = LocateRegistry.createRegistry(port, SOCKETS, SOCKETS);
+            registry.rebind("AuctionAdmin", new Admin(metrics, port));
+            return registry;
+        }
+
+        @Override
+        public UtilityClass.MetricsSnapshot getMetrics() {
+            return metrics.snapshot();
+        }
+    }
+
+    /**
+     * Listens on and connects to the loopback address only. Sent to clients inside the Admin stub.
+     */
+    static final class LoopbackSockets implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return new Socket(InetAddress.getLoopbackAddress(), port);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof LoopbackSockets;
+        }
+
+        @Override
+        public int hashCode() {
+            return LoopbackSockets.class.hashCode();
+        }
+    }
+}
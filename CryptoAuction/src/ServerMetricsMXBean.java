@@ -0,0 +1,30 @@
+import java.util.Map;
+
+/**
+ * JMX view of {@link ServerMetrics}, registered as cryptoauction:type=ServerMetrics.
+ */
+public interface ServerMetricsMXBean {
+    long getTotalCalls();
+    long getTotalFailures();
+    long getTokenValidationFailures();
+    long getBidRejections();
+    long getAuthFailures();
+    long getRateLimitedCalls();
+    long getOverloadedCalls();
+    long getNotificationsDelivered();
+    long getNotificationsCoalesced();
+    long getNotificationsDropped();
+    long getAutoClosedAuctions();
+    long getAutoCloseLagP99Millis();
+    long getReplicatedEvents();
+    long getReplicationLagP99Millis();
+    int getRegisteredUsers();
+    int getLiveAuctions();
+    int getActiveSessions();
+    long getCatalogueVersion();
+    Map<String, Long> getCallCounts();
+    Map<String, Long> getFailureCounts();
+    Map<String, Double> getLatencyP50Micros();
+    Map<String, Double> getLatencyP99Micros();
+    Map<String, Double> getLatencyP999Micros();
+}
@@ -0,0 +1,268 @@
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs item mutations either inline on the calling thread or on single-writer shards.
+ *
+ * In sharded mode items are partitioned by itemID across N shard threads. Each shard drains a bounded
+ * lock-free ring buffer and applies its commands one at a time, so every item has a single total order
+ * of creation, bids and close, and a bid can no longer succeed on an item a concurrent close is removing.
+ * Callers submit a command and wait on the returned task; a batch can submit to many shards before waiting.
+ *
+ * After each command the engine records the executing thread's journal position, so the caller can wait
+ * for exactly those events to become durable even though another thread appended them.
+ */
+public class ShardedEngine {
+
+    /**
+     * A mutation of one item, executed on that item's shard.
+     */
+    public interface Command<T> {
+        T apply() throws RemoteException;
+    }
+
+    // Spinning only helps when the other side can run at the same time
+    private static final int SPINS_BEFORE_PARK = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    private final Shard[] shards;
+    private final LongSupplier journalPosition;
+
+    private ShardedEngine(int shardCount, int ringSize, LongSupplier journalPosition) {
+        this.journalPosition = journalPosition;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, ringSize);
+            shards[i].start();
+        }
+    }
+
+    /**
+     * An engine that runs every command on the calling thread, as the server always did.
+     */
+    public static ShardedEngine inline(LongSupplier journalPosition) {
+        return new ShardedEngine(0, 0, journalPosition);
+    }
+
+    /**
+     * Starts shardCount shard threads, each with a ring of ringSize slots (rounded up to a power of two).
+     */
+    public static ShardedEngine start(int shardCount, int ringSize, LongSupplier journalPosition) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        return new ShardedEngine(shardCount, ringSize, journalPosition);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public <T> Task<T> submit(int itemID, Command<T> command) {
+        Task<T> task = new Task<>(command, Thread.currentThread());
+        if (shards.length == 0) {
+            task.run(journalPosition);
+        } else {
+            shards[Math.floorMod(itemID, shards.length)].enqueue(task);
+        }
+        return task;
+    }
+
+    /**
+     * Stops the shards. Commands still queued, or submitted from now on, fail instead of running.
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard);
+        }
+    }
+
+    /**
+     * A submitted command. Only the submitting thread may wait on it.
+     */
+    public static final class Task<T> {
+        private final Command<T> command;
+        private final Thread waiter;
+        private volatile boolean done;
+        private T result;
+        private RemoteException failure;
+        private RuntimeException error;
+        private long position;
+
+        Task(Command<T> command, Thread waiter) {
+            this.command = command;
+            this.waiter = waiter;
+        }
+
+        void run(LongSupplier journalPosition) {
+            try {
+                result = command.apply();
+            } catch (RemoteException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            position = journalPosition.getAsLong();
+            done = true;
+        }
+
+        void fail(RemoteException e) {
+            failure = e;
+            done = true;
+        }
+
+        /**
+         * Waits for the command and returns its result or rethrows its exception.
+         */
+        public T await() throws RemoteException {
+            for (int spins = 0; !done; spins++) {
+                if (spins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+
+        /**
+         * The journal position after the command ran; valid once await has returned.
+         */
+        public long getJournalPosition() {
+            return position;
+        }
+    }
+
+    private final class Shard extends Thread {
+        private final RingBuffer ring;
+        private volatile boolean sleeping;
+        private volatile boolean running = true;
+        // Set once the shard has stopped taking tasks off its ring
+        private volatile boolean stopped;
+
+        Shard(int index, int ringSize) {
+            super("auction-shard-" + index);
+            setDaemon(true);
+            this.ring = new RingBuffer(ringSize);
+        }
+
+        void enqueue(Task<?> task) {
+            for (int spins = 0; !ring.offer(task); spins++) {
+                if (!running) {
+                    task.fail(new RemoteException("Server is shutting down"));
+                    return;
+                }
+                // Ring full: the shard is behind, so back off until it frees a slot
+                if (spins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            if (stopped) {
+                // The shard may have drained its ring before this task landed in it
+                abandon();
+            } else if (sleeping) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                Task<?> task = ring.poll();
+                if (task != null) {
+                    task.run(journalPosition);
+                    LockSupport.unpark(task.waiter);
+                    idle = 0;
+                } else if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    sleeping = true;
+                    if (ring.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    sleeping = false;
+                }
+            }
+            stopped = true;
+            abandon();
+        }
+
+        /**
+         * Fails every task left on the ring. Runs only once the shard has stopped, by the shard itself or
+         * by a producer that raced with it, so the ring still has one consumer at a time.
+         */
+        private synchronized void abandon() {
+            for (Task<?> task; (task = ring.poll()) != null; ) {
+                task.fail(new RemoteException("Server is shutting down"));
+                LockSupport.unpark(task.waiter);
+            }
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer ring. Producers claim a slot with one CAS on the tail; each
+     * slot's sequence number tells the consumer when the slot is published and producers when it is free.
+     */
+    static final class RingBuffer {
+        private final AtomicReferenceArray<Task<?>> slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private long head;
+
+        RingBuffer(int size) {
+            int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Task<?> task) {
+            for (;;) {
+                long position = tail.get();
+                int index = (int) (position & mask);
+                long available = sequences.get(index) - position;
+                if (available < 0) {
+                    return false;
+                }
+                if (available == 0 && tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, task);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            }
+        }
+
+        Task<?> poll() {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return null;
+            }
+            Task<?> task = slots.get(index);
+            slots.lazySet(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            return task;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) (head & mask)) != head + 1;
+        }
+    }
+}
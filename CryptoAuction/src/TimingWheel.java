@@ -0,0 +1,149 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hierarchical timing wheel for large numbers of deadlines keyed by an int ID.
+ *
+ * Four levels of 256 slots each cover 256^4 ticks; a deadline lives in the coarsest level it fits and
+ * is moved down a level each time that level's slot comes round, so scheduling and expiring are O(1)
+ * and a deadline costs one small node. Callers on any thread push new deadlines onto a lock-free inbox;
+ * only the ticker thread touches the wheel itself, and it invokes the callback for each expired ID.
+ * There is no cancellation: callbacks are expected to check whether the deadline still applies.
+ */
+public class TimingWheel {
+
+    /**
+     * Called on the ticker thread once deadline has passed.
+     */
+    public interface Expiry {
+        void expired(int id, long deadline);
+    }
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Expiry expiry;
+    private final Node[][] wheels = new Node[LEVELS][SLOTS];
+    private final AtomicReference<Node> inbox = new AtomicReference<>();
+    private final Thread ticker;
+    private long currentTick;
+    private volatile boolean running = true;
+
+    public TimingWheel(long tickMillis, Expiry expiry, String name) {
+        this.tickMillis = tickMillis;
+        this.expiry = expiry;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.ticker = new Thread(this::run, name);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Schedules a callback for id at deadline (epoch milliseconds). Safe to call from any thread.
+     */
+    public void schedule(int id, long deadline) {
+        Node node = new Node(id, deadline, Math.floorDiv(deadline + tickMillis - 1, tickMillis));
+        Node head;
+        do {
+            head = inbox.get();
+            node.next = head;
+        } while (!inbox.compareAndSet(head, node));
+    }
+
+    public void close() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nowTick = System.currentTimeMillis() / tickMillis;
+            drainInbox();
+            while (currentTick < nowTick) {
+                advance();
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(tickMillis - System.currentTimeMillis() % tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void drainInbox() {
+        Node node = inbox.getAndSet(null);
+        while (node != null) {
+            Node next = node.next;
+            place(node);
+            node = next;
+        }
+    }
+
+    /**
+     * Moves to the next tick: cascades any coarser slots that come due, then expires the level-0 slot.
+     */
+    private void advance() {
+        currentTick++;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            int slot = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+            Node node = wheels[level][slot];
+            wheels[level][slot] = null;
+            while (node != null) {
+                Node next = node.next;
+                place(node);
+                node = next;
+            }
+        }
+        int slot = (int) currentTick & (SLOTS - 1);
+        Node node = wheels[0][slot];
+        wheels[0][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            fire(node);
+            node = next;
+        }
+    }
+
+    private void place(Node node) {
+        long delta = node.tick - currentTick;
+        if (delta <= 0) {
+            fire(node);
+            return;
+        }
+        long tick = delta < MAX_SPAN ? node.tick : currentTick + MAX_SPAN - 1;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        node.next = wheels[level][slot];
+        wheels[level][slot] = node;
+    }
+
+    private void fire(Node node) {
+        try {
+            expiry.expired(node.id, node.deadline);
+        } catch (RuntimeException e) {
+            System.err.println("Deadline callback for ID " + node.id + " failed: " + e);
+        }
+    }
+
+    private static final class Node {
+        final int id;
+        final long deadline;
+        final long tick;
+        Node next;
+
+        Node(int id, long deadline, long tick) {
+            this.id = id;
+            this.deadline = deadline;
+            this.tick = tick;
+        }
+    }
+}
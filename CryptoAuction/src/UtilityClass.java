@@ -1,19 +1,43 @@
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.EdECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.NamedParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.Map;
-import java.util.Objects;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * UtilityClass serves as a container for shared interfaces and classes 
@@ -26,72 +50,646 @@ public class UtilityClass {
      */
     public interface Auction extends Remote {
         int register(String email, PublicKey pkey) throws RemoteException;
+        // Registers with an explicit signature scheme; pkey must be a key for that scheme.
+        int register(String email, PublicKey pkey, SignatureScheme scheme) throws RemoteException;
+        // Public half of the key the server signs challenge responses with for the given scheme.
+        PublicKey getServerPublicKey(SignatureScheme scheme) throws RemoteException;
         ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException;
         TokenInfo authenticate(int userID, byte[] signature) throws RemoteException;
+        // Extends a live session without a new handshake; see TokenManager.refresh for the proof.
+        TokenInfo refreshSession(int userID, String token, long sequence, byte[] proof) throws RemoteException;
         AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException;
         int newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException;
         AuctionItem[] listItems(int userID, String token) throws RemoteException;
         AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException;
         boolean bid(int userID, int itemID, int price, String token) throws RemoteException;
+
+        // Batch variants: the token is validated once and every entry is applied in one server-side pass.
+        // Individual failures are reported per entry instead of failing the whole batch.
+        AuctionItem[] getSpecBatch(int userID, int[] itemIDs, String token) throws RemoteException;
+        int[] newAuctionBatch(int userID, AuctionSaleItem[] items, String token) throws RemoteException;
+        boolean[] bidBatch(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException;
+
+        // Paged listing in itemID order: pass 0 for the first page, then the previous page's next cursor.
+        ItemPage listItemsPage(int userID, int afterItemID, int pageSize, String token) throws RemoteException;
+        // Items created, rebid or closed since the given catalogue version (0 for everything retained), up to
+        // 1000 distinct items per call; poll again from the returned version while hasMore() is set.
+        ItemDelta listChanges(int userID, long sinceVersion, String token) throws RemoteException;
+        // Live items matching every filter of the query, paged in itemID order like listItemsPage.
+        ItemPage search(int userID, SearchQuery query, int afterItemID, int pageSize, String token) throws RemoteException;
+
+        // Push notifications: one listener per user receives OUTBID and CLOSED events for items the user
+        // leads, plus PRICE_CHANGED and CLOSED events for every watched item. Subscribing again replaces the listener.
+        void subscribe(int userID, AuctionListener listener, String token) throws RemoteException;
+        void watchItem(int userID, int itemID, String token) throws RemoteException;
+        void unsubscribe(int userID, String token) throws RemoteException;
+
+        // Result of an auction that ended on its own, kept for its seller for an hour after it closed.
+        AuctionResult getResult(int userID, int itemID, String token) throws RemoteException;
+
+        // Every accepted bid on an item, oldest first, while it is live and for an hour after it closes:
+        // count bids from fromIndex, or the first count placed at or after fromTime and before toTime. A bid
+        // recorded just after a later-stamped one it raced is matched by that bid's time, not its own.
+        BidHistory getBidHistory(int userID, int itemID, int fromIndex, int count, String token) throws RemoteException;
+        BidHistory getBidHistoryBetween(int userID, int itemID, long fromTime, long toTime, int count, String token) throws RemoteException;
+        // The best bid of each of the k highest distinct bidders on an item, highest first.
+        BidHistory getTopBidders(int userID, int itemID, int k, String token) throws RemoteException;
+
+        // Whether this server is the primary or a read-only backup, and how far its replication has got.
+        ReplicationStatus getReplicationStatus() throws RemoteException;
     }
 
     /**
-     * Utility for signing, verifying, and loading private keys.
+     * Callback exported by a client to receive events. Events arrive in batches; events for the same
+     * item are coalesced while a delivery is pending, so a slow listener only sees the latest price.
      */
-    public static class SecurityUtils {
-        private static final String SIGNING_ALGORITHM = "SHA256withRSA";
+    public interface AuctionListener extends Remote {
+        void onEvents(AuctionEvent[] events) throws RemoteException;
+    }
 
-        public static byte[] sign(String data, PrivateKey privateKey) throws Exception {
-            Signature signature = Signature.getInstance(SIGNING_ALGORITHM);
-            signature.initSign(privateKey);
-            signature.update(data.getBytes());
+    /**
+     * Read-only operational interface, bound as "AuctionAdmin" in a registry reachable only from the server's host.
+     */
+    public interface AuctionAdmin extends Remote {
+        MetricsSnapshot getMetrics() throws RemoteException;
+    }
+
+    /**
+     * Signature schemes supported for challenge-response authentication.
+     * Each thread keeps one Signature object per scheme, so signing and verifying skip the provider
+     * lookup, and re-signing with the same key (the server's) also skips re-initialisation.
+     */
+    public enum SignatureScheme {
+        RSA("SHA256withRSA", "RSA"),
+        ECDSA_P256("SHA256withECDSA", "EC"),
+        ED25519("Ed25519", "Ed25519");
+
+        private final String signatureAlgorithm;
+        private final String keyAlgorithm;
+        private final ThreadLocal<CachedSignature> cache = ThreadLocal.withInitial(() -> new CachedSignature(this));
+        // Looked up once; only read by forKey, after the constants are built
+        private static final ECParameterSpec P256_PARAMS = p256Params();
+
+        SignatureScheme(String signatureAlgorithm, String keyAlgorithm) {
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.keyAlgorithm = keyAlgorithm;
+        }
+
+        public String getSignatureAlgorithm() { return signatureAlgorithm; }
+
+        public String getKeyAlgorithm() { return keyAlgorithm; }
+
+        /**
+         * The scheme for a key, checking the curve as well as the algorithm: "EC" and "EdDSA" keys can be
+         * on curves (P-384, Ed448) the schemes do not sign with.
+         */
+        public static SignatureScheme forKey(Key key) {
+            switch (key.getAlgorithm()) {
+                case "RSA":
+                    return RSA;
+                case "EC":
+                    if (key instanceof ECKey && isP256(((ECKey) key).getParams())) {
+                        return ECDSA_P256;
+                    }
+                    throw new IllegalArgumentException("Unsupported EC curve: only P-256 (secp256r1) keys are accepted");
+                case "EdDSA":
+                case "Ed25519":
+                    if (key instanceof EdECKey && NamedParameterSpec.ED25519.getName().equalsIgnoreCase(((EdECKey) key).getParams().getName())) {
+                        return ED25519;
+                    }
+                    throw new IllegalArgumentException("Unsupported EdDSA curve: only Ed25519 keys are accepted");
+                default:
+                    throw new IllegalArgumentException("Unsupported key algorithm: " + key.getAlgorithm());
+            }
+        }
+
+        private static boolean isP256(ECParameterSpec params) {
+            ECParameterSpec p256 = P256_PARAMS;
+            return params != null && params.getCurve().equals(p256.getCurve()) && params.getGenerator().equals(p256.getGenerator())
+                && params.getOrder().equals(p256.getOrder()) && params.getCofactor() == p256.getCofactor();
+        }
+
+        private static ECParameterSpec p256Params() {
+            try {
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec("secp256r1"));
+                return parameters.getParameterSpec(ECParameterSpec.class);
+            } catch (GeneralSecurityException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        public boolean accepts(Key key) {
+            try {
+                return forKey(key) == this;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        public KeyPair generateKeyPair() throws GeneralSecurityException {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+            if (this == RSA) {
+                generator.initialize(2048);
+            } else if (this == ECDSA_P256) {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            return generator.generateKeyPair();
+        }
+
+        public byte[] sign(byte[] data, PrivateKey privateKey) throws GeneralSecurityException {
+            Signature signature = cache.get().forSigning(privateKey);
+            signature.update(data);
             return signature.sign();
         }
 
+        public boolean verify(byte[] data, byte[] signatureBytes, PublicKey publicKey) throws GeneralSecurityException {
+            Signature signature = cache.get().forVerifying(publicKey);
+            signature.update(data);
+            try {
+                return signature.verify(signatureBytes);
+            } catch (SignatureException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A thread's Signature object for one scheme, remembering the key it was last initialised with.
+     * sign() and verify() reset the object to its initialised state, so the same key can be reused directly.
+     */
+    private static final class CachedSignature {
+        private final Signature signature;
+        private Key key;
+
+        CachedSignature(SignatureScheme scheme) {
+            try {
+                this.signature = Signature.getInstance(scheme.getSignatureAlgorithm());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(scheme.getSignatureAlgorithm() + " is not available", e);
+            }
+        }
+
+        Signature forSigning(PrivateKey privateKey) throws InvalidKeyException {
+            if (key != privateKey) {
+                key = null;
+                signature.initSign(privateKey);
+                key = privateKey;
+            }
+            return signature;
+        }
+
+        Signature forVerifying(PublicKey publicKey) throws InvalidKeyException {
+            if (key != publicKey) {
+                key = null;
+                signature.initVerify(publicKey);
+                key = publicKey;
+            }
+            return signature;
+        }
+    }
+
+    /**
+     * Utility for signing, verifying, and loading keys from PEM files.
+     * The signature scheme follows the key's algorithm.
+     */
+    public static class SecurityUtils {
+        public static byte[] sign(String data, PrivateKey privateKey) throws Exception {
+            return SignatureScheme.forKey(privateKey).sign(data.getBytes(), privateKey);
+        }
+
         public static boolean verify(String data, byte[] signatureBytes, PublicKey publicKey) throws Exception {
-            Signature signature = Signature.getInstance(SIGNING_ALGORITHM);
-            signature.initVerify(publicKey);
-            signature.update(data.getBytes());
-            return signature.verify(signatureBytes);
+            return SignatureScheme.forKey(publicKey).verify(data.getBytes(), signatureBytes, publicKey);
         }
 
         public static PrivateKey loadPrivateKey(String filePath) throws Exception {
+            return loadPrivateKey(filePath, "RSA");
+        }
+
+        public static PrivateKey loadPrivateKey(String filePath, String algorithm) throws Exception {
+            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(readPem(filePath, "PRIVATE KEY"));
+            return KeyFactory.getInstance(algorithm).generatePrivate(spec);
+        }
+
+        public static PublicKey loadPublicKey(String filePath, String algorithm) throws Exception {
+            X509EncodedKeySpec spec = new X509EncodedKeySpec(readPem(filePath, "PUBLIC KEY"));
+            return KeyFactory.getInstance(algorithm).generatePublic(spec);
+        }
+
+        /**
+         * Loads the scheme's key pair from the two PEM files, first generating and saving one if neither
+         * exists. Servers that should sign with the same key (a replication group) share the files.
+         */
+        public static KeyPair loadOrCreateKeyPair(String privatePath, String publicPath, SignatureScheme scheme) throws Exception {
+            if (!Files.exists(Paths.get(privatePath)) && !Files.exists(Paths.get(publicPath))) {
+                KeyPair created = scheme.generateKeyPair();
+                writePem(publicPath, "PUBLIC KEY", created.getPublic().getEncoded());
+                Path privateFile = Paths.get(privatePath);
+                try {
+                    // Readable by the server's user only, where the file system has permissions
+                    Files.createFile(privateFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+                } catch (UnsupportedOperationException e) {
+                    Files.createFile(privateFile);
+                }
+                writePem(privatePath, "PRIVATE KEY", created.getPrivate().getEncoded());
+            }
+            KeyPair keyPair = new KeyPair(loadPublicKey(publicPath, scheme.getKeyAlgorithm()),
+                loadPrivateKey(privatePath, scheme.getKeyAlgorithm()));
+            if (!scheme.accepts(keyPair.getPrivate())
+                    || !scheme.verify(publicPath.getBytes(), scheme.sign(publicPath.getBytes(), keyPair.getPrivate()), keyPair.getPublic())) {
+                throw new GeneralSecurityException(publicPath + " and " + privatePath + " are not a " + scheme + " key pair");
+            }
+            return keyPair;
+        }
+
+        private static byte[] readPem(String filePath, String type) throws IOException {
             String key = new String(Files.readAllBytes(Paths.get(filePath)))
-                    .replaceAll("-----\\w+ PRIVATE KEY-----", "")
+                    .replaceAll("-----\\w+ " + type + "-----", "")
                     .replaceAll("\\s", "");
-            byte[] keyBytes = Base64.getDecoder().decode(key);
-            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            return keyFactory.generatePrivate(spec);
+            return Base64.getDecoder().decode(key);
+        }
+
+        private static void writePem(String filePath, String type, byte[] encoded) throws IOException {
+            String pem = "-----BEGIN " + type + "-----\n"
+                    + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(encoded)
+                    + "\n-----END " + type + "-----\n";
+            Files.write(Paths.get(filePath), pem.getBytes());
         }
     }
 
     /**
      * Manages user tokens and enforces expiration.
+     *
+     * Tokens are 128-bit random values, sent as 32 hex characters. Sessions live in a table indexed
+     * directly by user ID, so validation is two array reads and two long comparisons without allocating.
+     * Expiry is checked against a coarse clock advanced by a background timing wheel, which also evicts
+     * expired sessions so abandoned tokens do not accumulate.
+     *
+     * A live session can be extended without another signature handshake. Each login also hands out a
+     * refresh key, an HMAC of the session (user, token and login time) under this manager's secret, so
+     * the key is tied to that one handshake and never has to be stored or sent again. A refresh proves
+     * possession of the key with an HMAC over the token and a sequence number that must go up by one
+     * each time, so a captured refresh cannot be replayed. Refreshes slide the expiry forward, but never
+     * past the refresh window measured from the login; after that a full handshake is needed.
      */
     public static class TokenManager {
-        private final Map<Integer, TokenInfo> tokens = new ConcurrentHashMap<>();
         private static final long TOKEN_EXPIRY_DURATION = TimeUnit.SECONDS.toMillis(10);
+        private static final long REFRESH_WINDOW = TimeUnit.HOURS.toMillis(1);
+        private static final String HMAC = "HmacSHA256";
+        private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+            try {
+                return Mac.getInstance(HMAC);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        private static final long TICK_MILLIS = 100;
+        private static final int WHEEL_SLOTS = 512;
+        private static final int CHUNK_BITS = 12;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] refreshSecret;
+        private volatile AtomicReferenceArray<Session>[] chunks = newChunkTable(16);
+        private final ExpiryWheel wheel = new ExpiryWheel();
+        private volatile long clock = System.currentTimeMillis();
+        private volatile long expiryMillis = TOKEN_EXPIRY_DURATION;
+        private volatile long refreshWindowMillis = REFRESH_WINDOW;
+
+        public TokenManager() {
+            this(null);
+        }
+
+        /**
+         * Servers that share refreshSecret accept each other's refreshes, so a session replicated to a
+         * backup can still be refreshed after a failover. Null picks a random secret.
+         */
+        public TokenManager(byte[] refreshSecret) {
+            if (refreshSecret == null) {
+                refreshSecret = new byte[32];
+                random.nextBytes(refreshSecret);
+            }
+            this.refreshSecret = refreshSecret.clone();
+            Thread ticker = new Thread(wheel, "token-expiry-wheel");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        /**
+         * Sets how long a token lives after login or refresh, and how long after login it can still be refreshed.
+         * Sessions already issued keep the refresh deadline they were given.
+         */
+        public void setWindows(long expiryMillis, long refreshWindowMillis) {
+            if (expiryMillis <= 0 || refreshWindowMillis < 0) {
+                throw new IllegalArgumentException("Invalid session windows " + expiryMillis + "/" + refreshWindowMillis);
+            }
+            this.expiryMillis = expiryMillis;
+            this.refreshWindowMillis = refreshWindowMillis;
+        }
+
+        public long getExpiryMillis() {
+            return expiryMillis;
+        }
+
+        public long getRefreshWindowMillis() {
+            return refreshWindowMillis;
+        }
 
         public boolean validate(int userID, String token) throws RemoteException {
-            TokenInfo tokenInfo = tokens.get(userID);
-            if (tokenInfo == null || !Objects.equals(tokenInfo.getToken(), token) || tokenInfo.isExpired()) {
-                tokens.remove(userID);
-                throw new RemoteException("Token validation failed: Invalid or expired token for user ID: " + userID);
+            if (token == null || token.length() != 32) {
+                throw invalid(userID);
+            }
+            return validate(userID, parseHex(token, 0), parseHex(token, 16));
+        }
+
+        /**
+         * Validates a token already in its binary form.
+         */
+        public boolean validate(int userID, long tokenHigh, long tokenLow) throws RemoteException {
+            Session session = lookup(userID);
+            if (session == null || session.high != tokenHigh || session.low != tokenLow || session.expiryTime <= clock) {
+                throw invalid(userID);
             }
             return true;
         }
 
         public TokenInfo generateToken(int userID) {
-            String token = UUID.randomUUID().toString();
-            TokenInfo tokenInfo = new TokenInfo(token, System.currentTimeMillis() + TOKEN_EXPIRY_DURATION);
-            tokens.put(userID, tokenInfo);
-            return tokenInfo;
+            long now = System.currentTimeMillis();
+            Session session = new Session(userID, random.nextLong(), random.nextLong(), now + expiryMillis,
+                now + refreshWindowMillis, 0);
+            chunkFor(userID).set(userID & (CHUNK_SIZE - 1), session);
+            wheel.schedule(session);
+            return new TokenInfo(session.toTokenString(), session.expiryTime, refreshKey(session),
+                session.refreshableUntil, 0);
+        }
+
+        /**
+         * Extends the user's live session by the expiry window, capped at its refresh deadline. proof must
+         * be {@link #refreshProof} under the key handed out at login, for the session's next sequence number.
+         * The returned TokenInfo carries the same token and no refresh key.
+         */
+        public TokenInfo refresh(int userID, String token, long sequence, byte[] proof) throws RemoteException {
+            Session session = lookup(userID);
+            if (token == null || token.length() != 32 || session == null || session.high != parseHex(token, 0)
+                    || session.low != parseHex(token, 16) || session.expiryTime <= clock) {
+                throw invalid(userID);
+            }
+            long now = System.currentTimeMillis();
+            if (now >= session.refreshableUntil) {
+                throw new RemoteException("Session refresh failed: the session for user ID " + userID
+                    + " can no longer be refreshed; authenticate again");
+            }
+            if (proof == null || !MessageDigest.isEqual(proof, hmac(refreshKey(session), userID, session.high, session.low, sequence))) {
+                throw new RemoteException("Session refresh failed: invalid proof for user ID: " + userID);
+            }
+            synchronized (session) {
+                if (sequence != session.refreshes + 1) {
+                    throw new RemoteException("Session refresh failed: expected sequence " + (session.refreshes + 1)
+                        + " for user ID: " + userID);
+                }
+                session.refreshes = sequence;
+                session.expiryTime = Math.min(Math.max(session.expiryTime, now + expiryMillis), session.refreshableUntil);
+                return new TokenInfo(token, session.expiryTime, null, session.refreshableUntil, sequence);
+            }
+        }
+
+        /**
+         * The proof a client sends with the sequence-th refresh of the session it got token and refreshKey for.
+         */
+        public static byte[] refreshProof(byte[] refreshKey, int userID, String token, long sequence) {
+            return hmac(refreshKey, userID, parseHex(token, 0), parseHex(token, 16), sequence);
+        }
+
+        /**
+         * Receives sessions for replication to another server.
+         */
+        public interface SessionSink {
+            void session(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil,
+                         long refreshes) throws IOException;
+        }
+
+        /**
+         * Installs a session issued by another server, replacing any the user has here.
+         */
+        public void restore(int userID, long tokenHigh, long tokenLow, long expiryTime) {
+            restore(userID, tokenHigh, tokenLow, expiryTime, expiryTime, 0);
+        }
+
+        /**
+         * As above, for a session that can be refreshed until refreshableUntil and has been refreshed refreshes times.
+         */
+        public void restore(int userID, long tokenHigh, long tokenLow, long expiryTime, long refreshableUntil, long refreshes) {
+            if (expiryTime <= System.currentTimeMillis()) {
+                return;
+            }
+            Session current = lookup(userID);
+            if (current != null && current.high == tokenHigh && current.low == tokenLow) {
+                // A refresh of a session this server already has
+                synchronized (current) {
+                    current.refreshes = Math.max(current.refreshes, refreshes);
+                    current.expiryTime = Math.max(current.expiryTime, expiryTime);
+                }
+                return;
+            }
+            Session session = new Session(userID, tokenHigh, tokenLow, expiryTime, refreshableUntil, refreshes);
+            chunkFor(userID).set(userID & (CHUNK_SIZE - 1), session);
+            wheel.schedule(session);
+        }
+
+        /**
+         * Passes the user's current session, if any, to sink.
+         */
+        public void exportSession(int userID, SessionSink sink) throws IOException {
+            Session session = lookup(userID);
+            if (session != null && session.expiryTime > clock) {
+                export(session, sink);
+            }
+        }
+
+        public void exportSessions(SessionSink sink) throws IOException {
+            for (AtomicReferenceArray<Session> chunk : chunks) {
+                for (int i = 0; chunk != null && i < chunk.length(); i++) {
+                    Session session = chunk.get(i);
+                    if (session != null && session.expiryTime > clock) {
+                        export(session, sink);
+                    }
+                }
+            }
+        }
+
+        private static void export(Session session, SessionSink sink) throws IOException {
+            long expiryTime;
+            long refreshes;
+            synchronized (session) {
+                expiryTime = session.expiryTime;
+                refreshes = session.refreshes;
+            }
+            sink.session(session.userID, session.high, session.low, expiryTime, session.refreshableUntil, refreshes);
+        }
+
+        public int getActiveSessionCount() {
+            int count = 0;
+            for (AtomicReferenceArray<Session> chunk : chunks) {
+                for (int i = 0; chunk != null && i < chunk.length(); i++) {
+                    if (chunk.get(i) != null) count++;
+                }
+            }
+            return count;
         }
 
         public static long getTokenExpiryDuration() {
             return TOKEN_EXPIRY_DURATION;
         }
+
+        private byte[] refreshKey(Session session) {
+            // The deadline stands in for the login time: both are fixed at login and replicated with the session
+            return hmac(refreshSecret, session.userID, session.high, session.low, session.refreshableUntil);
+        }
+
+        private static byte[] hmac(byte[] key, int userID, long tokenHigh, long tokenLow, long value) {
+            Mac mac = MACS.get();
+            try {
+                mac.init(new SecretKeySpec(key, HMAC));
+            } catch (InvalidKeyException e) {
+                throw new IllegalArgumentException("Invalid refresh key", e);
+            }
+            byte[] message = ByteBuffer.allocate(28).putInt(userID).putLong(tokenHigh).putLong(tokenLow).putLong(value).array();
+            return mac.doFinal(message);
+        }
+
+        private static RemoteException invalid(int userID) {
+            return new RemoteException("Token validation failed: Invalid or expired token for user ID: " + userID);
+        }
+
+        private Session lookup(int userID) {
+            if (userID < 0) {
+                return null;
+            }
+            AtomicReferenceArray<Session>[] table = chunks;
+            int chunkIndex = userID >>> CHUNK_BITS;
+            if (chunkIndex >= table.length || table[chunkIndex] == null) {
+                return null;
+            }
+            return table[chunkIndex].get(userID & (CHUNK_SIZE - 1));
+        }
+
+        private AtomicReferenceArray<Session> chunkFor(int userID) {
+            if (userID < 0) {
+                throw new IllegalArgumentException("Invalid user ID: " + userID);
+            }
+            int chunkIndex = userID >>> CHUNK_BITS;
+            AtomicReferenceArray<Session>[] table = chunks;
+            if (chunkIndex < table.length && table[chunkIndex] != null) {
+                return table[chunkIndex];
+            }
+            synchronized (this) {
+                table = chunks;
+                if (chunkIndex >= table.length) {
+                    table = Arrays.copyOf(table, Math.max(table.length * 2, chunkIndex + 1));
+                }
+                if (table[chunkIndex] == null) {
+                    table[chunkIndex] = new AtomicReferenceArray<>(CHUNK_SIZE);
+                }
+                chunks = table;
+                return table[chunkIndex];
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static AtomicReferenceArray<Session>[] newChunkTable(int size) {
+            return (AtomicReferenceArray<Session>[]) new AtomicReferenceArray[size];
+        }
+
+        /**
+         * Parses 16 hex characters. Malformed input maps to -1, which is no easier to match than any other value.
+         */
+        private static long parseHex(String token, int offset) {
+            long value = 0;
+            for (int i = offset; i < offset + 16; i++) {
+                int digit = Character.digit(token.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        private static final class Session {
+            final int userID;
+            final long high;
+            final long low;
+            final long refreshableUntil;
+            volatile long expiryTime;
+            // Guarded by the session's lock, as are changes to expiryTime
+            long refreshes;
+
+            Session(int userID, long high, long low, long expiryTime, long refreshableUntil, long refreshes) {
+                this.userID = userID;
+                this.high = high;
+                this.low = low;
+                this.expiryTime = expiryTime;
+                this.refreshableUntil = refreshableUntil;
+                this.refreshes = refreshes;
+            }
+
+            String toTokenString() {
+                return String.format("%016x%016x", high, low);
+            }
+        }
+
+        /**
+         * Single-level timing wheel of TICK_MILLIS slots. Sessions due beyond one revolution are simply
+         * re-queued when their slot comes round, so any expiry duration works.
+         */
+        private final class ExpiryWheel implements Runnable {
+            private final ConcurrentLinkedQueue<Session>[] slots = newSlots();
+            private volatile long processedTick = System.currentTimeMillis() / TICK_MILLIS;
+
+            void schedule(Session session) {
+                long tick = Math.max(session.expiryTime / TICK_MILLIS, processedTick + 1);
+                slots[(int) (tick & (WHEEL_SLOTS - 1))].add(session);
+            }
+
+            @Override
+            public void run() {
+                List<Session> deferred = new ArrayList<>();
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(TICK_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long now = System.currentTimeMillis();
+                    clock = now;
+                    for (long tick = processedTick + 1; tick <= now / TICK_MILLIS; tick++) {
+                        ConcurrentLinkedQueue<Session> slot = slots[(int) (tick & (WHEEL_SLOTS - 1))];
+                        for (Session session; (session = slot.poll()) != null; ) {
+                            if (lookup(session.userID) != session) {
+                                continue;
+                            }
+                            if (session.expiryTime <= now) {
+                                chunkFor(session.userID).compareAndSet(session.userID & (CHUNK_SIZE - 1), session, null);
+                            } else {
+                                deferred.add(session);
+                            }
+                        }
+                        processedTick = tick;
+                        deferred.forEach(this::schedule);
+                        deferred.clear();
+                    }
+                }
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private ConcurrentLinkedQueue<Session>[] newSlots() {
+                ConcurrentLinkedQueue<Session>[] wheel = new ConcurrentLinkedQueue[WHEEL_SLOTS];
+                for (int i = 0; i < WHEEL_SLOTS; i++) {
+                    wheel[i] = new ConcurrentLinkedQueue<>();
+                }
+                return wheel;
+            }
+        }
     }
 
     /**
@@ -101,14 +699,21 @@ public class UtilityClass {
         private static final long serialVersionUID = 1L;
         private final byte[] response; 
         private final String serverChallenge;
+        private final SignatureScheme scheme;
 
         public ChallengeInfo(byte[] response, String serverChallenge) {
+            this(response, serverChallenge, SignatureScheme.RSA);
+        }
+
+        public ChallengeInfo(byte[] response, String serverChallenge, SignatureScheme scheme) {
             this.response = response;
             this.serverChallenge = serverChallenge;
+            this.scheme = scheme;
         }
 
         public byte[] getResponse() { return response; }
         public String getServerChallenge() { return serverChallenge; }
+        public SignatureScheme getScheme() { return scheme; }
     }
 
     /**
@@ -118,13 +723,28 @@ public class UtilityClass {
         private static final long serialVersionUID = 1L;
         private final String token;
         private final long expiryTime;
+        private final byte[] refreshKey;
+        private final long refreshableUntil;
+        private final long refreshCount;
 
         public TokenInfo(String token, long expiryTime) {
+            this(token, expiryTime, null, expiryTime, 0);
+        }
+
+        public TokenInfo(String token, long expiryTime, byte[] refreshKey, long refreshableUntil, long refreshCount) {
             this.token = token;
             this.expiryTime = expiryTime;
+            this.refreshKey = refreshKey;
+            this.refreshableUntil = refreshableUntil;
+            this.refreshCount = refreshCount;
         }
 
         public String getToken() { return token; }
+        public long getExpiryTime() { return expiryTime; }
+        // Only set by authenticate; keep it for the session's later refreshes
+        public byte[] getRefreshKey() { return refreshKey; }
+        public long getRefreshableUntil() { return refreshableUntil; }
+        public long getRefreshCount() { return refreshCount; }
         public boolean isExpired() {
             return System.currentTimeMillis() > expiryTime;
         }
@@ -138,63 +758,440 @@ public class UtilityClass {
         private final int userID;
         private final String email;
         private final PublicKey publicKey;
+        private final SignatureScheme scheme;
         private String challenge;
 
         public User(int userID, String email, PublicKey publicKey) {
+            this(userID, email, publicKey, SignatureScheme.forKey(publicKey));
+        }
+
+        public User(int userID, String email, PublicKey publicKey, SignatureScheme scheme) {
             this.userID = userID;
             this.email = email;
             this.publicKey = publicKey;
+            this.scheme = scheme;
         }
 
         public int getUserID() { return userID; }
         public String getEmail() { return email; }
         public PublicKey getPublicKey() { return publicKey; }
+        public SignatureScheme getScheme() { return scheme; }
         public String getChallenge() { return challenge; }
         public void setChallenge(String challenge) { this.challenge = challenge; }
     }
 
     /**
      * Represents an item listed for auction.
+     * The highest bid and its bidder are packed into a single long so both change together in one CAS.
      */
     public static class AuctionItem implements Serializable {
-        private static final long serialVersionUID = 1L;
+        private static final long serialVersionUID = 3L;
         private final int itemID;
         private final String name;
         private final String description;
-        private int highestBid;
+        private final int reservePrice;
+        private final long softCloseMillis;
+        private final AtomicLong bidState = new AtomicLong();
+        private final AtomicLong endTime;
 
         public AuctionItem(int itemID, String name, String description) {
+            this(itemID, name, description, 0);
+        }
+
+        public AuctionItem(int itemID, String name, String description, int reservePrice) {
+            this(itemID, name, description, reservePrice, 0, 0);
+        }
+
+        public AuctionItem(int itemID, String name, String description, int reservePrice, long endTime, long softCloseMillis) {
             this.itemID = itemID;
             this.name = name;
             this.description = description;
-            this.highestBid = 0;
+            this.reservePrice = reservePrice;
+            this.endTime = new AtomicLong(endTime);
+            this.softCloseMillis = softCloseMillis;
         }
 
         public int getItemID() { return itemID; }
         public String getName() { return name; }
         public String getDescription() { return description; }
-        public int getHighestBid() { return highestBid; }
-        public void setHighestBid(int highestBid) { this.highestBid = highestBid; }
+        public int getReservePrice() { return reservePrice; }
+        // 0 for auctions that only close when the owner closes them
+        public long getEndTime() { return endTime.get(); }
+        public long getSoftCloseMillis() { return softCloseMillis; }
+        public boolean hasEnded(long now) {
+            long end = endTime.get();
+            return end > 0 && now >= end;
+        }
+
+        /**
+         * Applies the soft-close rule for a bid at time now and returns the new end time, or 0 if it did not move.
+         */
+        public long extendForBidAt(long now) {
+            if (softCloseMillis <= 0) {
+                return 0;
+            }
+            long extended = now + softCloseMillis;
+            for (;;) {
+                long end = endTime.get();
+                if (end == 0 || extended <= end) {
+                    return 0;
+                }
+                if (endTime.compareAndSet(end, extended)) {
+                    return extended;
+                }
+            }
+        }
+
+        /**
+         * Restores an end time recorded by the journal.
+         */
+        public void setEndTime(long end) {
+            endTime.set(end);
+        }
+        public int getHighestBid() { return priceOf(bidState.get()); }
+        public int getHighestBidderID() { return bidderOf(bidState.get()); }
+        public boolean isReserveMet() {
+            int highestBid = getHighestBid();
+            return highestBid > 0 && highestBid >= reservePrice;
+        }
+
+        /**
+         * Lock-free bid: succeeds only if price beats the current highest bid at the moment of the CAS.
+         */
+        public boolean offerBid(int bidderID, int price) {
+            return offerBidDisplacing(bidderID, price) >= 0;
+        }
+
+        /**
+         * Same as offerBid, but returns the ID of the bidder it displaced (0 if there was none),
+         * or -1 if the bid was too low.
+         */
+        public int offerBidDisplacing(int bidderID, int price) {
+            long next = pack(price, bidderID);
+            for (;;) {
+                long current = bidState.get();
+                if (price <= priceOf(current)) {
+                    return -1;
+                }
+                if (bidState.compareAndSet(current, next)) {
+                    return bidderOf(current);
+                }
+            }
+        }
+
+        private static long pack(int price, int bidderID) {
+            return ((long) price << 32) | (bidderID & 0xFFFFFFFFL);
+        }
+
+        private static int priceOf(long state) { return (int) (state >>> 32); }
+        private static int bidderOf(long state) { return (int) state; }
+    }
+
+    /**
+     * One page of auction items in ascending itemID order.
+     */
+    public static class ItemPage implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final AuctionItem[] items;
+        private final int nextCursor;
+        private final boolean hasMore;
+
+        public ItemPage(AuctionItem[] items, int nextCursor, boolean hasMore) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+
+        public AuctionItem[] getItems() { return items; }
+        public int getNextCursor() { return nextCursor; }
+        public boolean hasMore() { return hasMore; }
+    }
+
+    /**
+     * Catalogue changes since a client's last poll, up to a page of distinct items; hasMore means the
+     * client should poll again from getVersion() straight away. If resyncRequired is set the client fell
+     * behind the retained change window and must reload through listItemsPage before polling from getVersion().
+     */
+    public static class ItemDelta implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final AuctionItem[] changedItems;
+        private final int[] closedItemIDs;
+        private final long version;
+        private final boolean resyncRequired;
+        private final boolean hasMore;
+
+        public ItemDelta(AuctionItem[] changedItems, int[] closedItemIDs, long version, boolean resyncRequired) {
+            this(changedItems, closedItemIDs, version, resyncRequired, false);
+        }
+
+        public ItemDelta(AuctionItem[] changedItems, int[] closedItemIDs, long version, boolean resyncRequired, boolean hasMore) {
+            this.changedItems = changedItems;
+            this.closedItemIDs = closedItemIDs;
+            this.version = version;
+            this.resyncRequired = resyncRequired;
+            this.hasMore = hasMore;
+        }
+
+        public AuctionItem[] getChangedItems() { return changedItems; }
+        public int[] getClosedItemIDs() { return closedItemIDs; }
+        public long getVersion() { return version; }
+        public boolean isResyncRequired() { return resyncRequired; }
+        public boolean hasMore() { return hasMore; }
+    }
+
+    /**
+     * Thrown by a backup for any call that would change state; clients should retry on the primary.
+     */
+    public static class ReadOnlyReplicaException extends RemoteException {
+        private static final long serialVersionUID = 1L;
+
+        public ReadOnlyReplicaException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown when a caller has used up its allowance for an operation; the call did not run. Retrying
+     * after getRetryAfterMillis() will be admitted if nothing else is sent meanwhile.
+     */
+    public static class RateLimitedException extends RemoteException {
+        private static final long serialVersionUID = 1L;
+        private final long retryAfterMillis;
+
+        public RateLimitedException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+
+        // Refusals have to stay cheap under a flood, and the server's stack says nothing useful here
+        @Override
+        public synchronized Throwable fillInStackTrace() { return this; }
+    }
+
+    /**
+     * Thrown when the server is already running as many calls as it allows; the call did not run.
+     */
+    public static class ServerBusyException extends RemoteException {
+        private static final long serialVersionUID = 1L;
+
+        public ServerBusyException(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { return this; }
+    }
+
+    /**
+     * Bids on one item as parallel arrays, one entry per bid, each with the time it was actually placed.
+     * For a range, firstIndex is the position of the first entry in the item's whole history and
+     * totalBids the length of that history.
+     */
+    public static class BidHistory implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int itemID;
+        private final int[] bidderIDs;
+        private final int[] prices;
+        private final long[] placedAt;
+        private final int firstIndex;
+        private final int totalBids;
+
+        public BidHistory(int itemID, int[] bidderIDs, int[] prices, long[] placedAt, int firstIndex, int totalBids) {
+            this.itemID = itemID;
+            this.bidderIDs = bidderIDs;
+            this.prices = prices;
+            this.placedAt = placedAt;
+            this.firstIndex = firstIndex;
+            this.totalBids = totalBids;
+        }
+
+        public int getItemID() { return itemID; }
+        public int size() { return prices.length; }
+        public int getBidderID(int i) { return bidderIDs[i]; }
+        public int getPrice(int i) { return prices[i]; }
+        public long getPlacedAt(int i) { return placedAt[i]; }
+        public int getFirstIndex() { return firstIndex; }
+        public int getTotalBids() { return totalBids; }
+    }
+
+    /**
+     * A server's replication role. The epoch increases with every promotion, so when two servers both
+     * claim to be primary the one with the higher epoch is current. sequence counts events published
+     * by a primary or applied by a backup, and lagMillis is the time from the primary's change to the
+     * backup applying it (0 on a primary).
+     */
+    public static class ReplicationStatus implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public enum Role { PRIMARY, BACKUP }
+
+        private final Role role;
+        private final long epoch;
+        private final long sequence;
+        private final long lagMillis;
+        private final int backups;
+
+        public ReplicationStatus(Role role, long epoch, long sequence, long lagMillis, int backups) {
+            this.role = role;
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.lagMillis = lagMillis;
+            this.backups = backups;
+        }
+
+        public Role getRole() { return role; }
+        public long getEpoch() { return epoch; }
+        public long getSequence() { return sequence; }
+        public long getLagMillis() { return lagMillis; }
+        // Backups currently streaming from this primary
+        public int getBackups() { return backups; }
+    }
+
+    /**
+     * Search filters, all of which must match: every word of text must appear as a whole word in the name
+     * or description, some word there must start with prefix, and the current price (the highest bid, 0
+     * before the first bid) must lie within [minPrice, maxPrice]. Words are compared case-insensitively;
+     * null text or prefix matches everything.
+     */
+    public static class SearchQuery implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String text;
+        private final String prefix;
+        private final int minPrice;
+        private final int maxPrice;
+
+        public SearchQuery(String text) {
+            this(text, null, 0, Integer.MAX_VALUE);
+        }
+
+        public SearchQuery(String text, String prefix, int minPrice, int maxPrice) {
+            this.text = text;
+            this.prefix = prefix;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+        }
+
+        public String getText() { return text; }
+        public String getPrefix() { return prefix; }
+        public int getMinPrice() { return minPrice; }
+        public int getMaxPrice() { return maxPrice; }
+    }
+
+    /**
+     * A pushed notification. For CLOSED, winningEmail is null when the reserve was not met. RESYNC_REQUIRED
+     * means events were dropped for this listener and it should catch up through listChanges.
+     */
+    public static class AuctionEvent implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public enum Type { PRICE_CHANGED, OUTBID, CLOSED, RESYNC_REQUIRED }
+
+        private final Type type;
+        private final int itemID;
+        private final int price;
+        private final String winningEmail;
+
+        public AuctionEvent(Type type, int itemID, int price, String winningEmail) {
+            this.type = type;
+            this.itemID = itemID;
+            this.price = price;
+            this.winningEmail = winningEmail;
+        }
+
+        public Type getType() { return type; }
+        public int getItemID() { return itemID; }
+        public int getPrice() { return price; }
+        public String getWinningEmail() { return winningEmail; }
+    }
+
+    /**
+     * Point-in-time copy of the server metrics. Per-operation arrays share the index of getOperations();
+     * each latency row holds p50, p99, p99.9 and max in nanoseconds.
+     */
+    public static class MetricsSnapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] operations;
+        private final long[] calls;
+        private final long[] failures;
+        private final long[][] latencyNanos;
+        private final long tokenValidationFailures;
+        private final long bidRejections;
+        private final long authFailures;
+        private final int registeredUsers;
+        private final int liveAuctions;
+        private final int activeSessions;
+        private final long catalogueVersion;
+
+        public MetricsSnapshot(String[] operations, long[] calls, long[] failures, long[][] latencyNanos,
+                               long tokenValidationFailures, long bidRejections, long authFailures,
+                               int registeredUsers, int liveAuctions, int activeSessions, long catalogueVersion) {
+            this.operations = operations;
+            this.calls = calls;
+            this.failures = failures;
+            this.latencyNanos = latencyNanos;
+            this.tokenValidationFailures = tokenValidationFailures;
+            this.bidRejections = bidRejections;
+            this.authFailures = authFailures;
+            this.registeredUsers = registeredUsers;
+            this.liveAuctions = liveAuctions;
+            this.activeSessions = activeSessions;
+            this.catalogueVersion = catalogueVersion;
+        }
+
+        public String[] getOperations() { return operations; }
+        public long[] getCalls() { return calls; }
+        public long[] getFailures() { return failures; }
+        public long[][] getLatencyNanos() { return latencyNanos; }
+        public long getTokenValidationFailures() { return tokenValidationFailures; }
+        public long getBidRejections() { return bidRejections; }
+        public long getAuthFailures() { return authFailures; }
+        public int getRegisteredUsers() { return registeredUsers; }
+        public int getLiveAuctions() { return liveAuctions; }
+        public int getActiveSessions() { return activeSessions; }
+        public long getCatalogueVersion() { return catalogueVersion; }
+
+        public long getCalls(String operation) {
+            for (int i = 0; i < operations.length; i++) {
+                if (operations[i].equals(operation)) return calls[i];
+            }
+            return 0;
+        }
     }
 
     /**
      * Represents the details of an item to be put up for auction.
      */
     public static class AuctionSaleItem implements Serializable {
-        private static final long serialVersionUID = 1L;
+        private static final long serialVersionUID = 2L;
         private final String name;
         private final String description;
         private final int reservePrice;
+        private final long endTime;
+        private final long softCloseMillis;
 
         public AuctionSaleItem(String name, String description, int reservePrice) {
+            this(name, description, reservePrice, 0, 0);
+        }
+
+        /**
+         * A timed auction that closes itself at endTime (epoch milliseconds). A bid placed within the last
+         * softCloseMillis pushes the end out to softCloseMillis after that bid; 0 disables the extension.
+         */
+        public AuctionSaleItem(String name, String description, int reservePrice, long endTime, long softCloseMillis) {
             this.name = name;
             this.description = description;
             this.reservePrice = reservePrice;
+            this.endTime = endTime;
+            this.softCloseMillis = softCloseMillis;
         }
 
         public String getName() { return name; }
         public String getDescription() { return description; }
         public int getReservePrice() { return reservePrice; }
+        public long getEndTime() { return endTime; }
+        public long getSoftCloseMillis() { return softCloseMillis; }
     }
 
     /**
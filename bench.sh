@@ -0,0 +1,21 @@
+#!/bin/bash
+
+# Usage: sh bench.sh <BenchmarkClass> [args...]
+if [ -z "$1" ]; then
+  echo "Usage: sh bench.sh <BenchmarkClass> [args...]"
+  exit 1
+fi
+
+mkdir -p CryptoAuction/bin
+
+# Compile the server sources together with the benchmarks
+echo "Compiling benchmarks..."
+javac -d CryptoAuction/bin CryptoAuction/src/*.java CryptoAuction/bench/*.java
+if [ $? -ne 0 ]; then
+  echo "Compilation failed."
+  exit 1
+fi
+
+BENCHMARK=$1
+shift
+java -cp CryptoAuction/bin "$BENCHMARK" "$@"
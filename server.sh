@@ -5,4 +5,4 @@
 sleep 2
 
 # Run the Auction Server
-java -cp CryptoAuction/bin Server
+java -Dauction.binary.port=1100 -cp CryptoAuction/bin Server